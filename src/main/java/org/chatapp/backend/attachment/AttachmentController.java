@@ -0,0 +1,75 @@
+package org.chatapp.backend.attachment;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping(value = "${api.prefix}/attachments")
+@Tag(name = "Attachments", description = "Chunked, resumable uploads of image and file messages")
+public class AttachmentController {
+
+    private final AttachmentService attachmentService;
+
+
+
+    @PostMapping("/uploads")
+    @Operation(summary = "Start an upload", description = "Announces room, file name, content type, size and hex SHA-256. Returns the upload id and the suggested chunk size. At most app.attachments.max-uploads-per-user open uploads per user (429)")
+    public ResponseEntity<AttachmentUploadDTO> createUpload(@RequestBody final AttachmentUploadRequest request,
+                                                            final Principal principal) {
+        return ResponseEntity.ok(attachmentService.create(request, principal.getName()));
+    }
+
+
+
+    @GetMapping("/uploads/{uploadId}")
+    @Operation(summary = "Get upload status", description = "'received' is the offset to resume from after an interrupted chunk")
+    public ResponseEntity<AttachmentUploadDTO> getUpload(@PathVariable final UUID uploadId,
+                                                         final Principal principal) {
+        return ResponseEntity.ok(attachmentService.getStatus(uploadId, principal.getName()));
+    }
+
+
+
+    // The body is streamed to disk, never buffered
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Operation(summary = "Upload a chunk", description = "Raw bytes written at 'offset', which must equal the bytes received so far")
+    public ResponseEntity<AttachmentUploadDTO> uploadChunk(@PathVariable final UUID uploadId,
+                                                           @RequestParam final long offset,
+                                                           final HttpServletRequest request,
+                                                           final Principal principal) throws IOException {
+        try (InputStream body = request.getInputStream()) {
+            return ResponseEntity.ok(attachmentService.writeChunk(uploadId, offset, body, principal.getName()));
+        }
+    }
+
+
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    @Operation(summary = "Complete an upload", description = "Checks size and SHA-256, then posts an IMAGE or FILE message whose content is the file URL")
+    public ResponseEntity<AttachmentUploadDTO> completeUpload(@PathVariable final UUID uploadId,
+                                                              final Principal principal) {
+        return ResponseEntity.ok(attachmentService.complete(uploadId, principal.getName()));
+    }
+
+
+
+    @DeleteMapping("/uploads/{uploadId}")
+    @Operation(summary = "Cancel an upload")
+    public ResponseEntity<Void> cancelUpload(@PathVariable final UUID uploadId,
+                                             final Principal principal) {
+        attachmentService.cancel(uploadId, principal.getName());
+        return ResponseEntity.noContent().build();
+    }
+
+}
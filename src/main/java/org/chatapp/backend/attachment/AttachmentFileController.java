@@ -0,0 +1,58 @@
+package org.chatapp.backend.attachment;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.media.ImageService;
+import org.chatapp.backend.utils.FileUtils;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Set;
+
+/**
+ * Serves attachments at the URLs posted in messages, to members of the attachment's room only.
+ * Raster images are shown inline; anything else (HTML, SVG, ...) is a download sent as
+ * application/octet-stream, so a file can't run as a page on the API origin. Responses are never
+ * cached as immutable: every request, conditional ones included, passes the membership check.
+ */
+@RestController
+@RequiredArgsConstructor
+@Tag(name = "Attachments", description = "Chunked, resumable uploads of image and file messages")
+public class AttachmentFileController {
+
+    private static final String PRIVATE_REVALIDATE = "private, no-cache";
+    private static final Set<MediaType> INLINE = Set.of(MediaType.IMAGE_JPEG, MediaType.IMAGE_PNG, MediaType.IMAGE_GIF,
+            MediaType.parseMediaType("image/webp"));
+
+    private final AttachmentService attachmentService;
+    private final ImageService imageService;
+
+
+
+    @GetMapping("/images/" + FileUtils.FOLDER_ATTACHMENT + "/{fileName}")
+    @Operation(summary = "Download an attachment", description = "Members of the attachment's room only. Images are shown inline, other files are downloads. Supports conditional (304) and single Range requests (206)")
+    public void getAttachment(@PathVariable final String fileName,
+                              final Principal principal,
+                              final HttpServletRequest request,
+                              final HttpServletResponse response) throws IOException {
+        final ImageService.ImageFile file = attachmentService.findFile(fileName, principal.getName());
+        final boolean inline = INLINE.contains(file.mediaType());
+        if (!inline) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(AttachmentService.displayNameOf(fileName))
+                    .build()
+                    .toString());
+        }
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        imageService.serve(file, inline ? file.mediaType() : MediaType.APPLICATION_OCTET_STREAM, PRIVATE_REVALIDATE, request, response);
+    }
+}
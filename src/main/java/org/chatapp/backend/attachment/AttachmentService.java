@@ -0,0 +1,408 @@
+package org.chatapp.backend.attachment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.exception.TooManyRequestsException;
+import org.chatapp.backend.media.ImageService;
+import org.chatapp.backend.messagecontent.MessageContentDTO;
+import org.chatapp.backend.messagecontent.MessageSendService;
+import org.chatapp.backend.messagecontent.MessageType;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.utils.FileUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Chunked, resumable attachment uploads. A client announces the file (room, name, size, SHA-256),
+ * then PUTs chunks at the current offset; each chunk is streamed from the request into the partial
+ * file through a fixed-size buffer, so no file is ever held in memory. After a dropped connection
+ * the client asks for the upload's status and continues from the bytes actually stored.
+ * Completing verifies size and checksum, moves the file under /images/attachments and posts an
+ * IMAGE or FILE message with the file URL as its content. Stored files are served only to members
+ * of the upload's room (see {@link AttachmentFileController}).
+ *
+ * Partial files are on the local disk: on several nodes, uploads need sticky routing or shared storage.
+ */
+@Slf4j
+@Service
+public class AttachmentService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern UNSAFE_NAME_CHARS = Pattern.compile("[^A-Za-z0-9._-]");
+    private static final int MAX_NAME_LENGTH = 100;
+    private static final int UPLOAD_ID_LENGTH = 36;
+
+    private final AttachmentUploadRepository attachmentUploadRepository;
+    private final RoomRosterCache roomRosterCache;
+    private final MessageSendService messageSendService;
+    private final ImageService imageService;
+    private final Path directory;
+    private final Path partialDirectory;
+    private final long maxFileSize;
+    private final long chunkSize;
+    private final long maxChunkSize;
+    private final int maxUploadsPerUser;
+    private final Duration uploadTtl;
+    // Uploads with a chunk being written or being completed, so one file never has two writers
+    private final Set<UUID> busy = ConcurrentHashMap.newKeySet();
+
+    public AttachmentService(final AttachmentUploadRepository attachmentUploadRepository,
+                             final RoomRosterCache roomRosterCache,
+                             final MessageSendService messageSendService,
+                             final ImageService imageService,
+                             @Value("${app.attachments.dir:uploads/attachments}") final String directory,
+                             @Value("${app.attachments.partial-dir:data/attachment-parts}") final String partialDirectory,
+                             @Value("${app.attachments.max-file-size:100MB}") final DataSize maxFileSize,
+                             @Value("${app.attachments.chunk-size:4MB}") final DataSize chunkSize,
+                             @Value("${app.attachments.max-chunk-size:16MB}") final DataSize maxChunkSize,
+                             @Value("${app.attachments.max-uploads-per-user:3}") final int maxUploadsPerUser,
+                             @Value("${app.attachments.upload-ttl:PT24H}") final Duration uploadTtl) {
+        this.attachmentUploadRepository = attachmentUploadRepository;
+        this.roomRosterCache = roomRosterCache;
+        this.messageSendService = messageSendService;
+        this.imageService = imageService;
+        this.directory = Paths.get(directory);
+        this.partialDirectory = Paths.get(partialDirectory);
+        this.maxFileSize = maxFileSize.toBytes();
+        this.chunkSize = chunkSize.toBytes();
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.maxUploadsPerUser = maxUploadsPerUser;
+        this.uploadTtl = uploadTtl;
+    }
+
+
+
+    /**
+     * @throws IllegalArgumentException if the announced file is invalid or too large
+     * @throws jakarta.persistence.EntityNotFoundException if the caller is not a member of the room
+     * @throws TooManyRequestsException if the caller already has max-uploads-per-user uploads open
+     */
+    public AttachmentUploadDTO create(final AttachmentUploadRequest request, final String username) {
+        if (request.getMessageRoomId() == null) throw new IllegalArgumentException("Room is required");
+        if (request.getFileName() == null || request.getFileName().isBlank()) throw new IllegalArgumentException("File name is required");
+        if (request.getSize() == null || request.getSize() <= 0) throw new IllegalArgumentException("File size is required");
+        if (request.getSize() > maxFileSize) throw new IllegalArgumentException("File is larger than " + DataSize.ofBytes(maxFileSize).toMegabytes() + "MB");
+        if (request.getSha256() == null || !SHA256.matcher(request.getSha256().toLowerCase()).matches()) {
+            throw new IllegalArgumentException("A hex SHA-256 checksum is required");
+        }
+        roomRosterCache.get(request.getMessageRoomId()).member(username)
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("You are not a member of this room"));
+        if (attachmentUploadRepository.countByUsernameAndStatus(username, AttachmentUploadStatus.UPLOADING) >= maxUploadsPerUser) {
+            throw new TooManyRequestsException("Too many uploads in progress, complete or cancel one first");
+        }
+
+        final String fileName = request.getFileName().trim();
+        final AttachmentUpload upload = attachmentUploadRepository.save(AttachmentUpload.builder()
+                .id(UUID.randomUUID())
+                .username(username)
+                .messageRoomId(request.getMessageRoomId())
+                .fileName(fileName)
+                .contentType(contentTypeOf(request.getContentType(), fileName))
+                .size(request.getSize())
+                .sha256(request.getSha256().toLowerCase())
+                .status(AttachmentUploadStatus.UPLOADING)
+                .createdAt(LocalDateTime.now())
+                .build());
+        try {
+            Files.createDirectories(partialDirectory);
+            Files.createFile(partialOf(upload.getId()));
+        } catch (IOException e) {
+            attachmentUploadRepository.delete(upload);
+            throw new UncheckedIOException(e);
+        }
+        return toDTO(upload, 0);
+    }
+
+
+
+    public AttachmentUploadDTO getStatus(final UUID uploadId, final String username) {
+        final AttachmentUpload upload = find(uploadId, username);
+        return toDTO(upload, upload.getStatus() == AttachmentUploadStatus.UPLOADING ? received(upload) : upload.getSize());
+    }
+
+
+
+    /**
+     * Appends one chunk, which must start at the bytes received so far. If the request breaks off,
+     * what arrived is kept and the status reports where to resume.
+     *
+     * @throws IllegalArgumentException on a wrong offset, or a chunk past the file size or max-chunk-size
+     */
+    public AttachmentUploadDTO writeChunk(final UUID uploadId, final long offset, final InputStream body, final String username) {
+        final AttachmentUpload upload = findUploading(uploadId, username);
+        lock(uploadId);
+        try (FileChannel file = FileChannel.open(partialOf(uploadId), StandardOpenOption.WRITE)) {
+            final long received = file.size();
+            if (offset != received) throw new IllegalArgumentException("Chunk must start at offset " + received);
+
+            final long limit = Math.min(upload.getSize(), offset + maxChunkSize);
+            final ReadableByteChannel in = Channels.newChannel(body);
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = offset;
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                if (position + buffer.remaining() > limit) {
+                    file.truncate(offset);
+                    throw new IllegalArgumentException(limit == upload.getSize()
+                            ? "Chunk goes past the declared file size"
+                            : "Chunk is larger than " + DataSize.ofBytes(maxChunkSize).toMegabytes() + "MB");
+                }
+                while (buffer.hasRemaining()) {
+                    position += file.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            return toDTO(upload, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            busy.remove(uploadId);
+        }
+    }
+
+
+
+    /**
+     * Verifies the file and posts it to the room. On a checksum mismatch the stored bytes are
+     * discarded and the upload starts again from offset 0.
+     */
+    public AttachmentUploadDTO complete(final UUID uploadId, final String username) {
+        final AttachmentUpload upload = findUploading(uploadId, username);
+        lock(uploadId);
+        try {
+            final Path partial = partialOf(uploadId);
+            final long received = Files.size(partial);
+            if (received != upload.getSize()) {
+                throw new IllegalArgumentException("Upload is incomplete: " + received + " of " + upload.getSize() + " bytes received");
+            }
+            if (!sha256Of(partial).equals(upload.getSha256())) {
+                try (FileChannel file = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                    file.truncate(0);
+                }
+                throw new IllegalArgumentException("Checksum mismatch, upload the file again from offset 0");
+            }
+
+            final String storedName = storedNameOf(upload);
+            final Path stored = directory.resolve(storedName);
+            Files.createDirectories(directory);
+            move(partial, stored);
+
+            final MessageContentDTO message = new MessageContentDTO();
+            message.setMessageRoomId(upload.getMessageRoomId());
+            message.setSender(username);
+            message.setMessageType(upload.getContentType().startsWith("image/") ? MessageType.IMAGE : MessageType.FILE);
+            message.setContent(FileUtils.getAttachmentUrl(storedName));
+            try {
+                messageSendService.send(message);
+            } catch (RuntimeException e) {
+                // Still resumable: completing again retries the send
+                move(stored, partial);
+                throw e;
+            }
+            upload.setStatus(AttachmentUploadStatus.COMPLETED);
+            upload.setCompletedAt(LocalDateTime.now());
+            attachmentUploadRepository.save(upload);
+
+            final AttachmentUploadDTO dto = toDTO(upload, upload.getSize());
+            dto.setUrl(message.getContent());
+            return dto;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            busy.remove(uploadId);
+        }
+    }
+
+
+
+    /**
+     * A completed attachment by its stored name, for members of its room only.
+     *
+     * @throws jakarta.persistence.EntityNotFoundException if there is no such attachment or the caller is not a member of its room
+     */
+    public ImageService.ImageFile findFile(final String storedName, final String username) {
+        final AttachmentUpload upload = uploadIdOf(storedName)
+                .flatMap(attachmentUploadRepository::findById)
+                .filter(u -> u.getStatus() == AttachmentUploadStatus.COMPLETED && storedNameOf(u).equals(storedName))
+                .filter(u -> roomRosterCache.get(u.getMessageRoomId()).member(username).isPresent())
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("Attachment not found"));
+        return imageService.find(directory.resolve(storedNameOf(upload)));
+    }
+
+
+
+    public void cancel(final UUID uploadId, final String username) {
+        final AttachmentUpload upload = findUploading(uploadId, username);
+        lock(uploadId);
+        try {
+            deleteQuietly(partialOf(uploadId));
+            attachmentUploadRepository.delete(upload);
+        } finally {
+            busy.remove(uploadId);
+        }
+    }
+
+
+
+    // Abandoned uploads: partial file and row
+    @Scheduled(fixedDelayString = "${app.attachments.cleanup-interval:PT1H}")
+    public void purgeExpired() {
+        final List<AttachmentUpload> expired = attachmentUploadRepository.findAllByStatusAndCreatedAtBefore(
+                AttachmentUploadStatus.UPLOADING, LocalDateTime.now().minus(uploadTtl));
+        for (final AttachmentUpload upload : expired) {
+            if (!busy.add(upload.getId())) continue;
+            try {
+                deleteQuietly(partialOf(upload.getId()));
+                attachmentUploadRepository.delete(upload);
+            } finally {
+                busy.remove(upload.getId());
+            }
+        }
+        if (!expired.isEmpty()) log.info("Purged {} expired attachment uploads", expired.size());
+    }
+
+
+
+    private AttachmentUpload find(final UUID uploadId, final String username) {
+        return attachmentUploadRepository.findById(uploadId)
+                .filter(upload -> upload.getUsername().equals(username))
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("Upload not found"));
+    }
+
+    private AttachmentUpload findUploading(final UUID uploadId, final String username) {
+        final AttachmentUpload upload = find(uploadId, username);
+        if (upload.getStatus() != AttachmentUploadStatus.UPLOADING) throw new IllegalArgumentException("Upload is already completed");
+        return upload;
+    }
+
+    private void lock(final UUID uploadId) {
+        if (!busy.add(uploadId)) throw new IllegalArgumentException("Another request is writing this upload, retry when it has finished");
+    }
+
+    private long received(final AttachmentUpload upload) {
+        try {
+            return Files.size(partialOf(upload.getId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String storedNameOf(final AttachmentUpload upload) {
+        return upload.getId() + "-" + safeName(upload.getFileName());
+    }
+
+    // The client's file name as stored (plain ASCII, see safeName), without the upload id prefix
+    static String displayNameOf(final String storedName) {
+        return storedName.substring(UPLOAD_ID_LENGTH + 1);
+    }
+
+    // Stored names start with the upload id
+    private static Optional<UUID> uploadIdOf(final String storedName) {
+        if (storedName.length() <= UPLOAD_ID_LENGTH || storedName.charAt(UPLOAD_ID_LENGTH) != '-') return Optional.empty();
+        try {
+            return Optional.of(UUID.fromString(storedName.substring(0, UPLOAD_ID_LENGTH)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Path partialOf(final UUID uploadId) {
+        return partialDirectory.resolve(uploadId + ".part");
+    }
+
+    private AttachmentUploadDTO toDTO(final AttachmentUpload upload, final long received) {
+        final AttachmentUploadDTO dto = new AttachmentUploadDTO();
+        dto.setId(upload.getId());
+        dto.setMessageRoomId(upload.getMessageRoomId());
+        dto.setFileName(upload.getFileName());
+        dto.setContentType(upload.getContentType());
+        dto.setSize(upload.getSize());
+        dto.setReceived(received);
+        dto.setChunkSize(chunkSize);
+        dto.setStatus(upload.getStatus());
+        dto.setExpiresAt(upload.getCreatedAt().plus(uploadTtl));
+        return dto;
+    }
+
+    private static String contentTypeOf(final String declared, final String fileName) {
+        if (declared != null) {
+            try {
+                return MediaType.parseMediaType(declared).toString();
+            } catch (RuntimeException e) {
+                // Fall back to the file extension
+            }
+        }
+        return MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    // A plain stored name: letters, digits, dot, dash and underscore, not starting with a dot
+    static String safeName(final String fileName) {
+        String name = UNSAFE_NAME_CHARS.matcher(Paths.get(fileName).getFileName().toString()).replaceAll("_");
+        while (name.startsWith(".")) name = name.substring(1);
+        if (name.isEmpty()) return "file";
+        return name.length() <= MAX_NAME_LENGTH ? name : name.substring(name.length() - MAX_NAME_LENGTH);
+    }
+
+    private static String sha256Of(final Path path) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (file.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.chatapp.backend.attachment;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One resumable upload. The bytes received so far live in a partial file named after the id;
+ * its length is the resume offset, so an upload survives a restart of the node holding it.
+ */
+@Entity
+@Table(name = "attachment_upload", indexes = {
+        @Index(name = "idx_attachment_upload_user_status", columnList = "username, status"),
+        @Index(name = "idx_attachment_upload_status_created", columnList = "status, created_at")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AttachmentUpload {
+    @Id
+    private UUID id;
+
+    private String username;
+
+    private UUID messageRoomId;
+
+    private String fileName;
+
+    private String contentType;
+
+    private Long size;
+
+    // Hex SHA-256 announced by the client, checked when the upload is completed
+    @Column(length = 64)
+    private String sha256;
+
+    @Enumerated(EnumType.STRING)
+    private AttachmentUploadStatus status;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+}
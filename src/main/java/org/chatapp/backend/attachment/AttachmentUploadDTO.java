@@ -0,0 +1,23 @@
+package org.chatapp.backend.attachment;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+public class AttachmentUploadDTO {
+    private UUID id;
+    private UUID messageRoomId;
+    private String fileName;
+    private String contentType;
+    private Long size;
+    // Bytes stored so far: the offset of the next chunk
+    private Long received;
+    // Suggested chunk size; any size up to max-chunk-size is accepted
+    private Long chunkSize;
+    private AttachmentUploadStatus status;
+    private LocalDateTime expiresAt;
+    // Set once completed: where the file is served, also the attachment message's content
+    private String url;
+}
@@ -0,0 +1,14 @@
+package org.chatapp.backend.attachment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface AttachmentUploadRepository extends JpaRepository<AttachmentUpload, UUID> {
+    long countByUsernameAndStatus(String username, AttachmentUploadStatus status);
+    List<AttachmentUpload> findAllByStatusAndCreatedAtBefore(AttachmentUploadStatus status, LocalDateTime createdAt);
+}
@@ -0,0 +1,15 @@
+package org.chatapp.backend.attachment;
+
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+public class AttachmentUploadRequest {
+    private UUID messageRoomId;
+    private String fileName;
+    private String contentType;
+    private Long size;
+    // Hex SHA-256 of the whole file
+    private String sha256;
+}
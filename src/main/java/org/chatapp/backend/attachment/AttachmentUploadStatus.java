@@ -0,0 +1,6 @@
+package org.chatapp.backend.attachment;
+
+public enum AttachmentUploadStatus {
+    UPLOADING,
+    COMPLETED,
+}
@@ -2,10 +2,14 @@ package org.chatapp.backend.auth;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.Principal;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("${api.prefix}/auth")
@@ -13,16 +17,19 @@ import org.springframework.web.bind.annotation.*;
 public class AuthController {
 
     private final AuthService authService;
+    private final AuthRateLimiter authRateLimiter;
 
     @PostMapping("/register")
     @Operation(summary = "Register a new user", description = "Requires firstName, lastName, username, email and password. Sends a 6‑digit email verification code and returns JWT tokens (access to protected APIs requires verification).", security = {})
-    public ResponseEntity<AuthResponse> register(@RequestBody AuthRequest request) {
+    public ResponseEntity<AuthResponse> register(@RequestBody AuthRequest request, HttpServletRequest http) {
+        authRateLimiter.checkRegister(http.getRemoteAddr());
         return ResponseEntity.ok(authService.register(request));
     }
 
     @PostMapping("/login")
-    @Operation(summary = "Login", description = "Provide username (or email) and password only. Returns access and refresh tokens once the account is verified.", security = {})
-    public ResponseEntity<AuthResponse> login(@RequestBody @jakarta.validation.Valid LoginRequest request) {
+    @Operation(summary = "Login", description = "Provide username (or email) and password only. Returns access and refresh tokens once the account is verified. Rate limited per client IP and per account (429 with Retry-After).", security = {})
+    public ResponseEntity<AuthResponse> login(@RequestBody @jakarta.validation.Valid LoginRequest request, HttpServletRequest http) {
+        authRateLimiter.checkLogin(http.getRemoteAddr(), request.getUsername());
         return ResponseEntity.ok(authService.login(request));
     }
 
@@ -32,6 +39,21 @@ public class AuthController {
         return ResponseEntity.ok(authService.refresh(request.getRefreshToken()));
     }
 
+    @PostMapping("/logout")
+    @Operation(summary = "Log out this device", description = "Revokes the session the refresh token belongs to: the refresh token and every access token issued from it stop working.", security = {})
+    public ResponseEntity<Void> logout(@RequestBody RefreshRequest request) {
+        authService.logout(request.getRefreshToken());
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/logout-all")
+    @Operation(summary = "Log out everywhere", description = "Revokes every session of the authenticated user.")
+    public ResponseEntity<Void> logoutAll(Principal principal) {
+        if (principal == null) throw new BadCredentialsException("Authentication required");
+        authService.logoutAll(principal.getName());
+        return ResponseEntity.ok().build();
+    }
+
     @PostMapping("/verify")
     @Operation(summary = "Verify email", description = "Confirms a user's email using the 6‑digit code sent after registration.", security = {})
     public ResponseEntity<String> verify(@RequestBody VerifyResetRequest request) {
@@ -40,8 +62,9 @@ public class AuthController {
     }
 
     @PostMapping("/forgot-password")
-    @Operation(summary = "Request password reset", description = "Sends a 5-digit code to the user's email. Rate limited to avoid abuse.", security = {})
-    public ResponseEntity<Void> forgotPassword(@RequestBody ForgotPasswordRequest request) {
+    @Operation(summary = "Request password reset", description = "Sends a 5-digit code to the user's email. Rate limited per client IP and per account (429 with Retry-After).", security = {})
+    public ResponseEntity<Void> forgotPassword(@RequestBody ForgotPasswordRequest request, HttpServletRequest http) {
+        authRateLimiter.checkForgotPassword(http.getRemoteAddr(), request.getUsername());
         authService.forgotPassword(request.getUsername());
         return ResponseEntity.ok().build();
     }
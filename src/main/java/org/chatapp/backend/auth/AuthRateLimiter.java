@@ -0,0 +1,139 @@
+package org.chatapp.backend.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.chatapp.backend.exception.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Token buckets in front of the unauthenticated auth endpoints, per client IP and per account, so
+ * a credential-stuffing burst or reconnect storm is turned away before it reaches the database or
+ * BCrypt. Limits are "capacity/period" (e.g. 10/PT1M): up to capacity requests at once, refilled
+ * evenly over the period. Buckets are node-local and idle ones are evicted. The client IP is the
+ * request's remote address, which Tomcat takes from X-Forwarded-For only when the connection comes
+ * from a trusted proxy (server.tomcat.remoteip.internal-proxies).
+ */
+@Component
+public class AuthRateLimiter {
+
+    /** Up to capacity tokens, refilled continuously at capacity per period. */
+    record Limit(String name, long capacity, long periodNanos) {
+
+        static Limit parse(final String name, final String spec) {
+            final String[] parts = spec.split("/", 2);
+            if (parts.length != 2) throw new IllegalArgumentException("Rate limit " + name + " must be capacity/period, got " + spec);
+            final long capacity = Long.parseLong(parts[0].trim());
+            final Duration period = Duration.parse(parts[1].trim());
+            if (capacity <= 0 || period.isZero() || period.isNegative()) {
+                throw new IllegalArgumentException("Rate limit " + name + " must be positive, got " + spec);
+            }
+            return new Limit(name, capacity, period.toNanos());
+        }
+    }
+
+    static final class TokenBucket {
+        private final Limit limit;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(final Limit limit, final long now) {
+            this.limit = limit;
+            this.tokens = limit.capacity();
+            this.refilledAt = now;
+        }
+
+        // 0 when a token was taken, otherwise nanos until the next one
+        synchronized long tryAcquire(final long now) {
+            tokens = Math.min(limit.capacity(), tokens + (double) (now - refilledAt) * limit.capacity() / limit.periodNanos());
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * limit.periodNanos() / limit.capacity());
+        }
+    }
+
+    private final boolean enabled;
+    private final Limit loginPerIp;
+    private final Limit loginPerAccount;
+    private final Limit registerPerIp;
+    private final Limit forgotPasswordPerIp;
+    private final Limit forgotPasswordPerAccount;
+    private final Cache<String, TokenBucket> buckets;
+    private final LongSupplier nanoClock;
+    private final Counter limitedCounter;
+
+    @Autowired
+    public AuthRateLimiter(final MeterRegistry meterRegistry,
+                           @Value("${app.auth.rate-limit.enabled:true}") final boolean enabled,
+                           @Value("${app.auth.rate-limit.login-per-ip:60/PT1M}") final String loginPerIp,
+                           @Value("${app.auth.rate-limit.login-per-account:10/PT1M}") final String loginPerAccount,
+                           @Value("${app.auth.rate-limit.register-per-ip:10/PT10M}") final String registerPerIp,
+                           @Value("${app.auth.rate-limit.forgot-password-per-ip:10/PT10M}") final String forgotPasswordPerIp,
+                           @Value("${app.auth.rate-limit.forgot-password-per-account:3/PT10M}") final String forgotPasswordPerAccount,
+                           @Value("${app.auth.rate-limit.max-keys:100000}") final long maxKeys) {
+        this(meterRegistry, enabled, loginPerIp, loginPerAccount, registerPerIp, forgotPasswordPerIp, forgotPasswordPerAccount, maxKeys, System::nanoTime);
+    }
+
+    AuthRateLimiter(final MeterRegistry meterRegistry, final boolean enabled, final String loginPerIp, final String loginPerAccount,
+                    final String registerPerIp, final String forgotPasswordPerIp, final String forgotPasswordPerAccount,
+                    final long maxKeys, final LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.loginPerIp = Limit.parse("login-per-ip", loginPerIp);
+        this.loginPerAccount = Limit.parse("login-per-account", loginPerAccount);
+        this.registerPerIp = Limit.parse("register-per-ip", registerPerIp);
+        this.forgotPasswordPerIp = Limit.parse("forgot-password-per-ip", forgotPasswordPerIp);
+        this.forgotPasswordPerAccount = Limit.parse("forgot-password-per-account", forgotPasswordPerAccount);
+        // An idle bucket is full again after its period, so dropping it then loses nothing
+        final long longestPeriod = Stream.of(this.loginPerIp, this.loginPerAccount, this.registerPerIp,
+                this.forgotPasswordPerIp, this.forgotPasswordPerAccount).mapToLong(Limit::periodNanos).max().orElseThrow();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofNanos(longestPeriod))
+                .ticker(nanoClock::getAsLong)
+                .build();
+        this.nanoClock = nanoClock;
+        this.limitedCounter = Counter.builder("auth.rate_limited").description("Auth requests rejected by a rate limit").register(meterRegistry);
+    }
+
+    public void checkLogin(final String ip, final String account) {
+        acquire(loginPerIp, ip);
+        acquire(loginPerAccount, normalize(account));
+    }
+
+    public void checkRegister(final String ip) {
+        acquire(registerPerIp, ip);
+    }
+
+    public void checkForgotPassword(final String ip, final String account) {
+        acquire(forgotPasswordPerIp, ip);
+        acquire(forgotPasswordPerAccount, normalize(account));
+    }
+
+    private void acquire(final Limit limit, final String key) {
+        if (!enabled || key == null) return;
+        final long now = nanoClock.getAsLong();
+        final TokenBucket bucket = buckets.get(limit.name() + ':' + key, k -> new TokenBucket(limit, now));
+        final long waitNanos = bucket.tryAcquire(now);
+        if (waitNanos > 0) {
+            limitedCounter.increment();
+            throw new TooManyRequestsException("Too many requests, please try again later", Duration.ofNanos(waitNanos));
+        }
+    }
+
+    // Username and email logins for the same person share nothing, but case variants do
+    private static String normalize(final String account) {
+        if (account == null || account.isBlank()) return null;
+        return account.trim().toLowerCase(Locale.ROOT);
+    }
+}
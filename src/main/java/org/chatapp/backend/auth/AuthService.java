@@ -1,19 +1,24 @@
 package org.chatapp.backend.auth;
 
+import io.jsonwebtoken.JwtException;
 import lombok.RequiredArgsConstructor;
 import org.chatapp.backend.security.JwtService;
+import org.chatapp.backend.security.PrincipalCache;
+import org.chatapp.backend.security.TokenFamilyService;
+import org.chatapp.backend.security.VerifiedToken;
 import org.chatapp.backend.user.User;
 import org.chatapp.backend.user.UserRepository;
+import org.chatapp.backend.user.UserSearchIndex;
 import org.chatapp.backend.user.UserStatus;
 import org.chatapp.backend.utils.FileUtils;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Random;
 import java.util.UUID;
@@ -25,14 +30,17 @@ public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
-    private final AuthenticationManager authenticationManager;
-    private final VerificationTokenRepository verificationTokenRepository;
-    private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final OneTimeCodeStore oneTimeCodeStore;
     private final EmailService emailService;
+    private final PrincipalCache principalCache;
+    private final TokenFamilyService tokenFamilyService;
+    private final UserSearchIndex userSearchIndex;
 
     private static final int RESET_CODE_LENGTH = 5;
     private static final int MAX_ATTEMPTS = 5;
+    private static final Duration CODE_TTL = Duration.ofMinutes(10);
 
+    @Transactional
     public AuthResponse register(AuthRequest request) {
         // Basic validations
         if (request.getUsername() == null || request.getUsername().isBlank())
@@ -62,29 +70,20 @@ public class AuthService {
                 .verified(false)
                 .build();
         userRepository.save(user);
+        userSearchIndex.registered(user.getUsername());
 
         // Issue verification code and email to the provided email address
         String code = generateNumericCode(6);
-        VerificationToken vt = VerificationToken.builder()
-                .token(code)
-                .username(user.getUsername())
-                .expiresAt(LocalDateTime.now().plusMinutes(10))
-                .attempts(0)
-                .used(false)
-                .createdAt(LocalDateTime.now())
-                .build();
-        verificationTokenRepository.save(vt);
-        // Send email asynchronously to avoid blocking the request in case SMTP is slow/unavailable
-        emailService.sendHtmlAsync(
+        oneTimeCodeStore.issue(OneTimeCodePurpose.VERIFY_EMAIL, user.getUsername(), code, CODE_TTL);
+        // Queued with the user and token; delivered by the outbox dispatcher after commit
+        emailService.sendHtml(
                 user.getEmail(),
                 "Your MoChat verification code",
                 emailService.buildVerificationEmail(user.getUsername(), code)
         );
 
         // Return tokens optionally, but user won’t be allowed to access protected endpoints until verified
-        String access = jwtService.generateAccessToken(user.getUsername());
-        String refresh = jwtService.generateRefreshToken(user.getUsername());
-        return new AuthResponse(access, refresh);
+        return issue(tokenFamilyService.start(user.getUsername()));
     }
 
     public AuthResponse login(LoginRequest request) {
@@ -96,109 +95,105 @@ public class AuthService {
         if (Boolean.FALSE.equals(user.getVerified())) {
             throw new DisabledException("Account not verified. Please check your email for the verification code.");
         }
-        // Authenticate against the actual username stored
-        try {
-            authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(user.getUsername(), request.getPassword())
-            );
-        } catch (BadCredentialsException e) {
+        // Check the password against the user already loaded, rather than AuthenticationManager
+        // loading it again; the encoder runs BCrypt on its bounded pool
+        if (request.getPassword() == null || !passwordEncoder.matches(request.getPassword(), user.getPassword())) {
             // Migration fallback: if existing user has plaintext password stored, accept once and upgrade to encoded
             if (request.getPassword() != null && request.getPassword().equals(user.getPassword())) {
                 user.setPassword(passwordEncoder.encode(request.getPassword()));
                 userRepository.save(user);
+                principalCache.invalidate(user.getUsername());
             } else {
-                throw e;
+                throw new BadCredentialsException("Invalid credentials");
             }
         }
         // On success, issue tokens for the canonical username
-        String access = jwtService.generateAccessToken(user.getUsername());
-        String refresh = jwtService.generateRefreshToken(user.getUsername());
-        return new AuthResponse(access, refresh);
+        return issue(tokenFamilyService.start(user.getUsername()));
     }
 
     public AuthResponse refresh(String refreshToken) {
-        String username = jwtService.extractUsername(refreshToken);
-        if (!jwtService.isRefreshToken(refreshToken) || !jwtService.isTokenValid(refreshToken, username)) {
+        final VerifiedToken token = verifyRefreshToken(refreshToken);
+        // Ensure user is verified (from the principal cache rather than a query)
+        PrincipalCache.CachedPrincipal principal = principalCache.get(token.subject())
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+        if (!principal.verified()) {
+            throw new DisabledException("Account not verified");
+        }
+        // Rotates within the token's family; a token already rotated away revokes the family
+        return issue(tokenFamilyService.rotate(token));
+    }
+
+    // Ends the session (family) the refresh token belongs to; its access tokens stop working at once
+    public void logout(String refreshToken) {
+        tokenFamilyService.logout(verifyRefreshToken(refreshToken));
+    }
+
+    public void logoutAll(String username) {
+        tokenFamilyService.logoutAll(username);
+    }
+
+    private VerifiedToken verifyRefreshToken(String refreshToken) {
+        final VerifiedToken token;
+        try {
+            token = jwtService.verify(refreshToken);
+        } catch (JwtException | IllegalArgumentException e) {
             throw new BadCredentialsException("Invalid refresh token");
         }
-        // Ensure user is verified
-        User u = userRepository.findById(username).orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
-        if (Boolean.FALSE.equals(u.getVerified())) {
-            throw new DisabledException("Account not verified");
+        if (!token.isRefresh() || token.subject() == null) {
+            throw new BadCredentialsException("Invalid refresh token");
         }
-        String newAccess = jwtService.generateAccessToken(username);
-        String newRefresh = jwtService.generateRefreshToken(username);
-        return new AuthResponse(newAccess, newRefresh);
+        return token;
+    }
+
+    private static AuthResponse issue(TokenFamilyService.IssuedTokens tokens) {
+        return new AuthResponse(tokens.accessToken(), tokens.refreshToken());
     }
 
     public void verifyEmail(String username, String code) {
-        VerificationToken vt = verificationTokenRepository.findTopByUsernameOrderByCreatedAtDesc(username)
-                .orElseThrow(() -> new IllegalArgumentException("No verification request for this user"));
-        if (Boolean.TRUE.equals(vt.getUsed())) throw new IllegalStateException("Code already used");
-        if (vt.getExpiresAt().isBefore(LocalDateTime.now())) throw new IllegalStateException("Code expired");
-        if (vt.getAttempts() >= MAX_ATTEMPTS) throw new IllegalStateException("Too many attempts");
-        if (!vt.getToken().equals(code)) {
-            vt.setAttempts(vt.getAttempts() + 1);
-            verificationTokenRepository.save(vt);
-            throw new BadCredentialsException("Invalid code");
-        }
-        vt.setUsed(true);
-        verificationTokenRepository.save(vt);
-        User user = userRepository.findById(vt.getUsername()).orElseThrow();
+        checkCode(OneTimeCodePurpose.VERIFY_EMAIL, username, code, true, "No verification request for this user");
+        User user = userRepository.findById(username).orElseThrow();
         user.setVerified(true);
         userRepository.save(user);
-        // cleanup: remove other tokens for this user
-        verificationTokenRepository.deleteByUsername(user.getUsername());
+        principalCache.invalidate(user.getUsername());
+        // cleanup: the code is spent
+        oneTimeCodeStore.invalidate(OneTimeCodePurpose.VERIFY_EMAIL, username);
     }
 
+    @Transactional
     public void forgotPassword(String username) {
         // rate limiting: allow a new code only if last token older than 60 seconds
-        PasswordResetToken last = passwordResetTokenRepository.findTopByUsernameOrderByCreatedAtDesc(username).orElse(null);
-        if (last != null && last.getCreatedAt().isAfter(LocalDateTime.now().minusSeconds(60))) {
+        LocalDateTime lastIssued = oneTimeCodeStore.issuedAt(OneTimeCodePurpose.PASSWORD_RESET, username).orElse(null);
+        if (lastIssued != null && lastIssued.isAfter(LocalDateTime.now().minusSeconds(60))) {
             throw new IllegalStateException("Please wait before requesting another code");
         }
         String code = generateNumericCode(RESET_CODE_LENGTH);
-        PasswordResetToken t = PasswordResetToken.builder()
-                .username(username)
-                .code(code)
-                .expiresAt(LocalDateTime.now().plusMinutes(10))
-                .attempts(0)
-                .used(false)
-                .createdAt(LocalDateTime.now())
-                .build();
-        passwordResetTokenRepository.save(t);
+        oneTimeCodeStore.issue(OneTimeCodePurpose.PASSWORD_RESET, username, code, CODE_TTL);
         emailService.sendHtml(username, "Password reset code", emailService.buildResetCodeEmail(username, code));
     }
 
     public void verifyReset(String username, String code) {
-        PasswordResetToken t = passwordResetTokenRepository.findTopByUsernameOrderByCreatedAtDesc(username)
-                .orElseThrow(() -> new IllegalArgumentException("No reset request for this user"));
-        if (Boolean.TRUE.equals(t.getUsed())) throw new IllegalStateException("Code already used");
-        if (t.getExpiresAt().isBefore(LocalDateTime.now())) throw new IllegalStateException("Code expired");
-        if (t.getAttempts() >= MAX_ATTEMPTS) throw new IllegalStateException("Too many attempts");
-        if (!t.getCode().equals(code)) {
-            t.setAttempts(t.getAttempts() + 1);
-            passwordResetTokenRepository.save(t);
-            throw new BadCredentialsException("Invalid code");
-        }
+        checkCode(OneTimeCodePurpose.PASSWORD_RESET, username, code, false, "No reset request for this user");
     }
 
     public void resetPassword(String username, String code, String newPassword) {
-        PasswordResetToken t = passwordResetTokenRepository.findTopByUsernameOrderByCreatedAtDesc(username)
-                .orElseThrow(() -> new IllegalArgumentException("No reset request for this user"));
-        if (Boolean.TRUE.equals(t.getUsed())) throw new IllegalStateException("Code already used");
-        if (t.getExpiresAt().isBefore(LocalDateTime.now())) throw new IllegalStateException("Code expired");
-        if (t.getAttempts() >= MAX_ATTEMPTS) throw new IllegalStateException("Too many attempts");
-        if (!t.getCode().equals(code)) {
-            t.setAttempts(t.getAttempts() + 1);
-            passwordResetTokenRepository.save(t);
-            throw new BadCredentialsException("Invalid code");
-        }
-        t.setUsed(true);
-        passwordResetTokenRepository.save(t);
+        checkCode(OneTimeCodePurpose.PASSWORD_RESET, username, code, true, "No reset request for this user");
         User user = userRepository.findById(username).orElseThrow();
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        principalCache.invalidate(username);
+        // Sessions opened with the old password end with it
+        tokenFamilyService.logoutAll(username);
+    }
+
+    private void checkCode(OneTimeCodePurpose purpose, String subject, String code, boolean consume, String missingMessage) {
+        switch (oneTimeCodeStore.check(purpose, subject, code, MAX_ATTEMPTS, consume)) {
+            case OK -> { }
+            case MISSING -> throw new IllegalArgumentException(missingMessage);
+            case USED -> throw new IllegalStateException("Code already used");
+            case EXPIRED -> throw new IllegalStateException("Code expired");
+            case TOO_MANY_ATTEMPTS -> throw new IllegalStateException("Too many attempts");
+            case MISMATCH -> throw new BadCredentialsException("Invalid code");
+        }
     }
 
     private String generateNumericCode(int length) {
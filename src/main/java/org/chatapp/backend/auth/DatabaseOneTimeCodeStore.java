@@ -0,0 +1,127 @@
+package org.chatapp.backend.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Codes in the one_time_code table, shared by all nodes. Lookups go through the unique
+ * (purpose, subject) index; each guess takes an attempt with one conditional UPDATE, so the limit
+ * holds under concurrent guesses without a read-modify-write. Expired rows are deleted in batches.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.auth.codes.store", havingValue = "database", matchIfMissing = true)
+public class DatabaseOneTimeCodeStore implements OneTimeCodeStore {
+
+    private static final int MAX_ISSUE_ATTEMPTS = 3;
+
+    private final OneTimeCodeRepository oneTimeCodeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate issueTemplate;
+    private final int purgeBatchSize;
+
+    public DatabaseOneTimeCodeStore(final OneTimeCodeRepository oneTimeCodeRepository,
+                                    final TransactionTemplate transactionTemplate,
+                                    @Value("${app.auth.codes.purge-batch-size:1000}") final int purgeBatchSize) {
+        this.oneTimeCodeRepository = oneTimeCodeRepository;
+        this.transactionTemplate = transactionTemplate;
+        // Callers issue inside their own transaction, which a unique violation would abort before the retry.
+        // A code committed for a caller that then rolls back is never emailed and simply expires.
+        this.issueTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.issueTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    // Upsert: the update waits on the row lock of a concurrent issue instead of failing. Only when
+    // no row exists yet can two inserts collide on the unique index; the loser retries as an update.
+    @Override
+    public void issue(final OneTimeCodePurpose purpose, final String subject, final String code, final Duration ttl) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                issueTemplate.executeWithoutResult(status -> replaceOrInsert(purpose, subject, code, ttl));
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt == MAX_ISSUE_ATTEMPTS) throw e;
+                log.debug("Concurrent first issue of a {} code, retrying: {}", purpose, e.getMessage());
+            }
+        }
+    }
+
+    private void replaceOrInsert(final OneTimeCodePurpose purpose, final String subject, final String code, final Duration ttl) {
+        final LocalDateTime now = LocalDateTime.now();
+        if (oneTimeCodeRepository.replace(purpose, subject, UUID.randomUUID(), code, now.plus(ttl), now) > 0) return;
+        oneTimeCodeRepository.saveAndFlush(OneTimeCode.builder()
+                .id(UUID.randomUUID())
+                .purpose(purpose)
+                .subject(subject)
+                .code(code)
+                .expiresAt(now.plus(ttl))
+                .attempts(0)
+                .used(false)
+                .createdAt(now)
+                .build());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<LocalDateTime> issuedAt(final OneTimeCodePurpose purpose, final String subject) {
+        return oneTimeCodeRepository.findByPurposeAndSubject(purpose, subject).map(OneTimeCode::getCreatedAt);
+    }
+
+    @Override
+    @Transactional
+    public Result check(final OneTimeCodePurpose purpose, final String subject, final String code,
+                        final int maxAttempts, final boolean consume) {
+        final OneTimeCode stored = oneTimeCodeRepository.findByPurposeAndSubject(purpose, subject).orElse(null);
+        if (stored == null) return Result.MISSING;
+        final LocalDateTime now = LocalDateTime.now();
+        // Every guess, right or wrong, takes an attempt first; a correct one gives it back below
+        if (oneTimeCodeRepository.reserveAttempt(stored.getId(), maxAttempts, now) == 0) {
+            final Result precheck = Result.precheck(stored.getUsed(), stored.getExpiresAt(), stored.getAttempts(), maxAttempts, now);
+            // Otherwise concurrent guesses used up the attempts after our read
+            return precheck != null ? precheck : Result.TOO_MANY_ATTEMPTS;
+        }
+        if (!stored.getCode().equals(code)) return Result.MISMATCH;
+        oneTimeCodeRepository.accept(stored.getId(), consume);
+        return Result.OK;
+    }
+
+    @Override
+    @Transactional
+    public void invalidate(final OneTimeCodePurpose purpose, final String subject) {
+        oneTimeCodeRepository.deleteByPurposeAndSubject(purpose, subject);
+    }
+
+    // Batches of ids, each deleted in its own short transaction, so a large backlog never holds one long lock
+    @Override
+    @Scheduled(fixedDelayString = "${app.auth.codes.purge-interval:PT1M}")
+    public int purgeExpired() {
+        final LocalDateTime now = LocalDateTime.now();
+        int purged = 0;
+        while (true) {
+            final Integer deleted = transactionTemplate.execute(status -> {
+                final List<UUID> ids = oneTimeCodeRepository.findExpiredIds(now, PageRequest.of(0, purgeBatchSize));
+                oneTimeCodeRepository.deleteAllByIdInBatch(ids);
+                return ids.size();
+            });
+            purged += deleted == null ? 0 : deleted;
+            if (deleted == null || deleted < purgeBatchSize) break;
+        }
+        if (purged > 0) log.debug("Purged {} expired one-time codes", purged);
+        return purged;
+    }
+}
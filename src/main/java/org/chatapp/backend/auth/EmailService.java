@@ -1,23 +1,27 @@
 package org.chatapp.backend.auth;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.email.EmailOutbox;
+import org.chatapp.backend.email.EmailOutboxDispatcher;
+import org.chatapp.backend.email.EmailOutboxRepository;
+import org.chatapp.backend.email.EmailOutboxStatus;
+import org.chatapp.backend.email.EmailTemplate;
+import org.chatapp.backend.utils.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import jakarta.mail.internet.MimeMessage;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 public class EmailService {
-    private final JavaMailSender mailSender;
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailOutboxDispatcher emailOutboxDispatcher;
+
+    private EmailTemplate resetCodeTemplate;
 
     @Value("${app.mail.from.name}")
     private String fromName;
@@ -55,21 +59,46 @@ public class EmailService {
     @Value("${app.brand.color.accent}")
     private String colorAccent;
 
+    /**
+     * Queues an email in the outbox as part of the caller's transaction; it is sent by
+     * {@link EmailOutboxDispatcher} once that transaction commits, so a rolled-back registration
+     * sends nothing and the request never waits on the provider.
+     */
     public void sendHtml(String to, String subject, String html) {
         if (!mailEnabled) {
             System.out.println("[EmailService] Email sending is DISABLED via app.mail.enabled=false (env EMAIL_ENABLED). Skipping send to " + to);
             return;
         }
-        System.out.println("[EmailService] Provider=" + mailProvider + ", From=" + (fromName != null ? fromName : "") + " <" + fromAddress + ">, To=" + to);
-        if ("resend".equalsIgnoreCase(mailProvider)) {
-            boolean sent = sendWithResend(to, subject, html);
-            if (!sent) {
-                System.err.println("[EmailService] Resend failed or not configured; skipping send (SMTP disabled).");
-            }
+        if (!"resend".equalsIgnoreCase(mailProvider)) {
+            // If not using Resend, skip sending entirely per configuration
+            System.err.println("[EmailService] Email provider is not 'resend' (" + mailProvider + "); skipping send (SMTP disabled).");
+            return;
+        }
+        if (resendApiKey == null || resendApiKey.isBlank()) {
+            System.err.println("[EmailService] RESEND provider selected but app.mail.resend.api-key is missing. Skipping send.");
             return;
         }
-        // If not using Resend, skip sending entirely per configuration
-        System.err.println("[EmailService] Email provider is not 'resend' (" + mailProvider + "); skipping send (SMTP disabled).");
+        LocalDateTime now = LocalDateTime.now();
+        emailOutboxRepository.save(EmailOutbox.builder()
+                .id(UUID.randomUUID())
+                .recipient(to)
+                .subject(subject)
+                .html(html)
+                .text(stripHtml(html))
+                .category(category(subject))
+                .status(EmailOutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+        System.out.println("[EmailService] Queued email, Provider=" + mailProvider + ", From=" + (fromName != null ? fromName : "") + " <" + fromAddress + ">, To=" + to);
+        TransactionCallbacks.afterCommitOrNow(emailOutboxDispatcher::wakeUp);
+    }
+
+    // Simple tag derived from the subject to help the provider classify the message
+    private static String category(String subject) {
+        String lower = subject.toLowerCase();
+        return lower.contains("reset") ? "password_reset" : (lower.contains("verify") ? "verification" : "transactional");
     }
 
     private String stripHtml(String html) {
@@ -82,95 +111,32 @@ public class EmailService {
         return text.trim().replaceAll("\\s+", " ");
     }
 
-    private boolean sendWithResend(String to, String subject, String html) {
-        if (resendApiKey == null || resendApiKey.isBlank()) {
-            System.err.println("[EmailService] RESEND provider selected but app.mail.resend.api-key is missing. Skipping send.");
-            return false;
-        }
-        try {
-            String fromCombined = fromName != null && fromName.contains("<")
-                    ? fromName
-                    : (fromName + " <" + fromAddress + ">");
-
-            String text = stripHtml(html);
-
-            // Minimal JSON build (escape quotes and backslashes in HTML & TEXT)
-            String safeHtml = html
-                    .replace("\\", "\\\\")
-                    .replace("\"", "\\\"");
-            String safeText = text
-                    .replace("\\", "\\\\")
-                    .replace("\"", "\\\"");
-
-            // Build transactional headers to improve deliverability
-            String headersJson = "{" +
-                    "\"X-App\":\"MoChat\"," +
-                    "\"Auto-Submitted\":\"auto-generated\"" +
-                    (supportEmail != null && !supportEmail.isBlank() ? ",\"List-Unsubscribe\":\"mailto:" + supportEmail + "\"" : "") +
-                    "}";
-
-            // Derive a simple tag from subject to help provider classify the message
-            String tagValue = subject.toLowerCase().contains("reset") ? "password_reset" : (subject.toLowerCase().contains("verify") ? "verification" : "transactional");
-            String tagsJson = "[{\"name\":\"category\",\"value\":\"" + tagValue + "\"}]";
-
-            String json = "{" +
-                    "\"from\":\"" + fromCombined + "\"," +
-                    "\"to\":[\"" + to + "\"]," +
-                    "\"subject\":\"" + subject + "\"," +
-                    "\"html\":\"" + safeHtml + "\"," +
-                    "\"text\":\"" + safeText + "\"," +
-                    (supportEmail != null && !supportEmail.isBlank() ? "\"reply_to\":\"" + supportEmail + "\"," : "") +
-                    "\"headers\":" + headersJson + "," +
-                    "\"tags\":" + tagsJson +
-                    "}";
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://api.resend.com/emails"))
-                    .header("Authorization", "Bearer " + resendApiKey)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
-                    .build();
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                System.out.println("[EmailService] Resend email queued successfully: " + response.body());
-                return true;
-            } else {
-                System.err.println("[EmailService] Resend API error: HTTP " + response.statusCode() + " -> " + response.body());
-                return false;
-            }
-        } catch (Exception e) {
-            System.err.println("[EmailService] Failed to send email (Resend): " + e.getClass().getName() + ": " + e.getMessage());
-            if (e.getCause() != null) {
-                System.err.println("[EmailService] Caused by: " + e.getCause().getClass().getName() + ": " + e.getCause().getMessage());
-            }
-            return false;
-        }
-    }
-
-    @Async
-    public void sendHtmlAsync(String to, String subject, String html) {
-        sendHtml(to, subject, html);
-    }
-
     public String buildVerificationEmail(String username, String code) {
         // Per request: send only the verification code as the entire email body to reduce spam likelihood
         return code;
     }
 
-    public String buildResetCodeEmail(String username, String code) {
-        // Minimal transactional template (no images or social links)
-        return "<html><body style='margin:0;background:" + colorBg + ";color:" + colorText + ";font-family:system-ui,-apple-system,Segoe UI,Roboto,Arial,sans-serif'>" +
+    // Brand values are fixed for the life of the process, so they are baked in once; only the
+    // per-email values are substituted (and escaped) on each render
+    @PostConstruct
+    void compileTemplates() {
+        resetCodeTemplate = EmailTemplate.compile(
+                "<html><body style='margin:0;background:" + colorBg + ";color:" + colorText + ";font-family:system-ui,-apple-system,Segoe UI,Roboto,Arial,sans-serif'>" +
                 "<div style='max-width:600px;margin:0 auto;padding:24px'>" +
                 "<h2 style='margin:0 0 12px 0;color:" + colorPrimary + ";font-size:20px'>Your MoChat password reset code</h2>" +
-                "<p style='margin:0 0 12px 0'>Hello " + username + ",</p>" +
+                "<p style='margin:0 0 12px 0'>Hello {{username}},</p>" +
                 "<p style='margin:0 0 12px 0'>Use the code below to reset your password. This code expires in 10 minutes.</p>" +
-                "<div style='margin:16px 0;padding:12px 16px;border:1px solid " + colorAccent + ";border-radius:8px;font-size:26px;font-weight:700;letter-spacing:6px;color:" + colorAccent + ";text-align:center'>" + code + "</div>" +
+                "<div style='margin:16px 0;padding:12px 16px;border:1px solid " + colorAccent + ";border-radius:8px;font-size:26px;font-weight:700;letter-spacing:6px;color:" + colorAccent + ";text-align:center'>{{code}}</div>" +
                 "<p style='margin:0 0 12px 0;font-size:12px;opacity:.8'>If you didn’t request this, you can ignore this email.</p>" +
                 "<p style='margin:0 0 12px 0;font-size:12px;opacity:.8'>You received this email because a password reset was requested for a MoChat account with this address.</p>" +
                 "<hr style='border:none;border-top:1px solid #e5e7eb;margin:16px 0'/>" +
                 "<p style='margin:0;font-size:12px;opacity:.8'>MoChat • " + address + "</p>" +
                 (supportEmail != null && !supportEmail.isBlank() ? "<p style='margin:4px 0 0 0;font-size:12px;opacity:.8'>Questions? Email <a style='color:" + colorPrimary + ";text-decoration:none' href='mailto:" + supportEmail + "'>" + supportEmail + "</a></p>" : "") +
-                "</div></body></html>";
+                "</div></body></html>");
+    }
+
+    public String buildResetCodeEmail(String username, String code) {
+        // Minimal transactional template (no images or social links)
+        return resetCodeTemplate.render(Map.of("username", username, "code", code));
     }
 }
@@ -0,0 +1,107 @@
+package org.chatapp.backend.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Codes held in memory, for single-node deployments: every check is one atomic compute on a map
+ * entry. Codes are also indexed by expiry, so the purge only visits the ones that are due.
+ * Codes do not survive a restart and are not shared between nodes.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.auth.codes.store", havingValue = "memory")
+public class InMemoryOneTimeCodeStore implements OneTimeCodeStore {
+
+    private record Key(OneTimeCodePurpose purpose, String subject) {
+    }
+
+    private record Entry(long id, String code, LocalDateTime issuedAt, LocalDateTime expiresAt, int attempts, boolean used) {
+    }
+
+    private record Expiry(LocalDateTime expiresAt, long id, Key key) {
+    }
+
+    private final Map<Key, Entry> codes = new ConcurrentHashMap<>();
+    private final NavigableSet<Expiry> expiries = new ConcurrentSkipListSet<>(
+            Comparator.comparing(Expiry::expiresAt).thenComparingLong(Expiry::id));
+    private final AtomicLong ids = new AtomicLong();
+
+    @Override
+    public void issue(final OneTimeCodePurpose purpose, final String subject, final String code, final Duration ttl) {
+        final Key key = new Key(purpose, subject);
+        final LocalDateTime now = LocalDateTime.now();
+        final Entry entry = new Entry(ids.incrementAndGet(), code, now, now.plus(ttl), 0, false);
+        // Index first, so the purge can never miss a live entry; a replaced entry's index node is dropped when it expires
+        expiries.add(new Expiry(entry.expiresAt(), entry.id(), key));
+        codes.put(key, entry);
+    }
+
+    @Override
+    public Optional<LocalDateTime> issuedAt(final OneTimeCodePurpose purpose, final String subject) {
+        return Optional.ofNullable(codes.get(new Key(purpose, subject))).map(Entry::issuedAt);
+    }
+
+    @Override
+    public Result check(final OneTimeCodePurpose purpose, final String subject, final String code,
+                        final int maxAttempts, final boolean consume) {
+        final LocalDateTime now = LocalDateTime.now();
+        final Result[] result = {Result.MISSING};
+        codes.computeIfPresent(new Key(purpose, subject), (key, entry) -> {
+            final Result precheck = Result.precheck(entry.used(), entry.expiresAt(), entry.attempts(), maxAttempts, now);
+            if (precheck != null) {
+                result[0] = precheck;
+                return entry;
+            }
+            if (!entry.code().equals(code)) {
+                result[0] = Result.MISMATCH;
+                return new Entry(entry.id(), entry.code(), entry.issuedAt(), entry.expiresAt(), entry.attempts() + 1, false);
+            }
+            result[0] = Result.OK;
+            return consume ? new Entry(entry.id(), entry.code(), entry.issuedAt(), entry.expiresAt(), entry.attempts(), true) : entry;
+        });
+        return result[0];
+    }
+
+    @Override
+    public void invalidate(final OneTimeCodePurpose purpose, final String subject) {
+        codes.remove(new Key(purpose, subject));
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.auth.codes.purge-interval:PT1M}")
+    public int purgeExpired() {
+        final LocalDateTime now = LocalDateTime.now();
+        int purged = 0;
+        Expiry expiry;
+        while ((expiry = expiries.pollFirst()) != null) {
+            if (!expiry.expiresAt().isBefore(now)) {
+                expiries.add(expiry);
+                break;
+            }
+            final long id = expiry.id();
+            final boolean[] removed = {false};
+            // Only if the key still holds the entry this index node was created for
+            codes.computeIfPresent(expiry.key(), (key, entry) -> {
+                if (entry.id() != id) return entry;
+                removed[0] = true;
+                return null;
+            });
+            if (removed[0]) purged++;
+        }
+        if (purged > 0) log.debug("Purged {} expired one-time codes", purged);
+        return purged;
+    }
+}
@@ -0,0 +1,49 @@
+package org.chatapp.backend.auth;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The live one-time code for a purpose and subject, used by {@link DatabaseOneTimeCodeStore}.
+ */
+@Entity
+@Table(name = "one_time_code",
+        uniqueConstraints = @UniqueConstraint(name = "uk_one_time_code_purpose_subject", columnNames = {"purpose", "subject"}),
+        indexes = @Index(name = "idx_one_time_code_expires_at", columnList = "expires_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OneTimeCode {
+    @Id
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private OneTimeCodePurpose purpose;
+
+    // Username or email address, depending on the purpose
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false)
+    private String code;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(nullable = false)
+    private Boolean used;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,6 @@
+package org.chatapp.backend.auth;
+
+public enum OneTimeCodePurpose {
+    VERIFY_EMAIL,
+    PASSWORD_RESET,
+}
@@ -0,0 +1,49 @@
+package org.chatapp.backend.auth;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface OneTimeCodeRepository extends JpaRepository<OneTimeCode, UUID> {
+
+    Optional<OneTimeCode> findByPurposeAndSubject(OneTimeCodePurpose purpose, String subject);
+
+    @Modifying
+    @Query("DELETE FROM OneTimeCode c WHERE c.purpose = :purpose AND c.subject = :subject")
+    int deleteByPurposeAndSubject(@Param("purpose") OneTimeCodePurpose purpose, @Param("subject") String subject);
+
+    // Replaces the live code in place under a new id, so a guess still holding the old id cannot touch it
+    @Modifying
+    @Query("""
+        UPDATE OneTimeCode c
+        SET c.id = :id, c.code = :code, c.expiresAt = :expiresAt, c.attempts = 0, c.used = false, c.createdAt = :createdAt
+        WHERE c.purpose = :purpose AND c.subject = :subject
+        """)
+    int replace(@Param("purpose") OneTimeCodePurpose purpose, @Param("subject") String subject, @Param("id") UUID id,
+                @Param("code") String code, @Param("expiresAt") LocalDateTime expiresAt, @Param("createdAt") LocalDateTime createdAt);
+
+    // Takes one attempt in a single statement; 0 when the code is used, expired or out of attempts
+    @Modifying
+    @Query("""
+        UPDATE OneTimeCode c SET c.attempts = c.attempts + 1
+        WHERE c.id = :id AND c.used = false AND c.attempts < :maxAttempts AND c.expiresAt >= :now
+        """)
+    int reserveAttempt(@Param("id") UUID id, @Param("maxAttempts") int maxAttempts, @Param("now") LocalDateTime now);
+
+    // Gives back the attempt taken by a correct guess, optionally marking the code used
+    @Modifying
+    @Query("UPDATE OneTimeCode c SET c.attempts = c.attempts - 1, c.used = :used WHERE c.id = :id")
+    int accept(@Param("id") UUID id, @Param("used") boolean used);
+
+    @Query("SELECT c.id FROM OneTimeCode c WHERE c.expiresAt < :now")
+    List<UUID> findExpiredIds(@Param("now") LocalDateTime now, Pageable pageable);
+}
@@ -0,0 +1,49 @@
+package org.chatapp.backend.auth;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Short-lived codes (email verification, password reset), one live code per purpose and subject:
+ * issuing a new code replaces the previous one. Wrong guesses are counted atomically by the store,
+ * so concurrent guesses cannot exceed maxAttempts. Expired codes are purged in the background.
+ */
+public interface OneTimeCodeStore {
+
+    enum Result {
+        OK,
+        MISSING,
+        USED,
+        EXPIRED,
+        TOO_MANY_ATTEMPTS,
+        MISMATCH;
+
+        // Checks that apply before a guess is compared, in the order they are reported
+        static Result precheck(final boolean used, final LocalDateTime expiresAt, final int attempts,
+                               final int maxAttempts, final LocalDateTime now) {
+            if (used) return USED;
+            if (expiresAt.isBefore(now)) return EXPIRED;
+            if (attempts >= maxAttempts) return TOO_MANY_ATTEMPTS;
+            return null;
+        }
+    }
+
+    void issue(OneTimeCodePurpose purpose, String subject, String code, Duration ttl);
+
+    // When the live code for subject was issued, for resend throttling
+    Optional<LocalDateTime> issuedAt(OneTimeCodePurpose purpose, String subject);
+
+    /**
+     * Compares a guess against the live code. A wrong guess uses up an attempt; a correct one
+     * does not, and with consume marks the code used so it cannot be redeemed again.
+     */
+    Result check(OneTimeCodePurpose purpose, String subject, String code, int maxAttempts, boolean consume);
+
+    void invalidate(OneTimeCodePurpose purpose, String subject);
+
+    /**
+     * @return the number of expired codes removed
+     */
+    int purgeExpired();
+}
@@ -1,12 +0,0 @@
-package org.chatapp.backend.auth;
-
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
-
-import java.util.Optional;
-import java.util.UUID;
-
-@Repository
-public interface PasswordResetTokenRepository extends JpaRepository<PasswordResetToken, UUID> {
-    Optional<PasswordResetToken> findTopByUsernameOrderByCreatedAtDesc(String username);
-}
\ No newline at end of file
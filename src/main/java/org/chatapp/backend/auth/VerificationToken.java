@@ -1,40 +0,0 @@
-package org.chatapp.backend.auth;
-
-import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
-import java.time.LocalDateTime;
-import java.util.UUID;
-
-@Entity
-@Table(name = "verification_token")
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
-@Builder
-public class VerificationToken {
-    @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
-    private UUID id;
-
-    @Column(nullable = false)
-    private String token; // 5-6 digit verification code
-
-    @Column(nullable = false)
-    private String username;
-
-    @Column(nullable = false)
-    private LocalDateTime expiresAt;
-
-    @Column(nullable = false)
-    private Integer attempts = 0;
-
-    @Column(nullable = false)
-    private Boolean used = false;
-
-    @Column(nullable = false)
-    private LocalDateTime createdAt = LocalDateTime.now();
-}
@@ -1,14 +0,0 @@
-package org.chatapp.backend.auth;
-
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
-
-import java.util.Optional;
-import java.util.UUID;
-
-@Repository
-public interface VerificationTokenRepository extends JpaRepository<VerificationToken, UUID> {
-    Optional<VerificationToken> findByToken(String token);
-    Optional<VerificationToken> findTopByUsernameOrderByCreatedAtDesc(String username);
-    void deleteByUsername(String username);
-}
\ No newline at end of file
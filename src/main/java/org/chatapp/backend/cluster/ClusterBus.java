@@ -0,0 +1,25 @@
+package org.chatapp.backend.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Node-to-node messaging. Each node publishes what it sends to the other nodes and hands what it
+ * receives to its local listeners; envelopes are never re-published. Frames from one node are
+ * received in the order that node sent them.
+ */
+public interface ClusterBus {
+
+    String nodeId();
+
+    // Sends to every other node; must not block the caller on a slow or unreachable peer
+    void publish(ClusterEnvelope envelope);
+
+    /**
+     * Sends to one node.
+     *
+     * @return false if that node is not currently reachable, so the caller can fall back
+     */
+    boolean send(String nodeId, ClusterEnvelope envelope);
+
+    void subscribe(ClusterEnvelope.Kind kind, Consumer<ClusterEnvelope> listener);
+}
@@ -0,0 +1,72 @@
+package org.chatapp.backend.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cluster.mode", havingValue = "in-jvm", matchIfMissing = true)
+    public ClusterBus inJvmClusterBus(@Value("${app.cluster.node-id:}") final String nodeId,
+                                      @Value("${app.cluster.in-jvm.group:default}") final String group) {
+        return new InJvmClusterBus(nodeIdOrRandom(nodeId), group);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cluster.mode", havingValue = "tcp")
+    public TcpClusterBus tcpClusterBus(@Value("${app.cluster.node-id:}") final String nodeId,
+                                       @Value("${app.cluster.tcp.bind-address:127.0.0.1}") final String bindAddress,
+                                       @Value("${app.cluster.tcp.port:7600}") final int port,
+                                       @Value("${app.cluster.tcp.peers:}") final String peers,
+                                       @Value("${app.cluster.tcp.queue-capacity:10000}") final int queueCapacity,
+                                       @Value("${app.cluster.tcp.secret:}") final String secret) {
+        if (secret.getBytes(StandardCharsets.UTF_8).length < ClusterHandshake.MIN_SECRET_BYTES) {
+            throw new IllegalStateException("app.cluster.tcp.secret must be set to at least " + ClusterHandshake.MIN_SECRET_BYTES
+                    + " bytes shared by every node in tcp mode");
+        }
+        return new TcpClusterBus(nodeIdOrRandom(nodeId), new InetSocketAddress(bindAddress, port), parsePeers(peers), queueCapacity,
+                secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String nodeIdOrRandom(final String nodeId) {
+        return nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    @Bean
+    public ClusterMembership clusterMembership(final ClusterBus clusterBus,
+                                               @Value("${app.cluster.heartbeat-interval:PT1S}") final Duration heartbeatInterval,
+                                               @Value("${app.cluster.failure-detection-heartbeats:3}") final int failureDetectionHeartbeats,
+                                               @Value("${app.cluster.ring.virtual-nodes:128}") final int virtualNodes) {
+        return new ClusterMembership(clusterBus, heartbeatInterval, failureDetectionHeartbeats, virtualNodes);
+    }
+
+    // Runs sends for rooms this node owns (received here or forwarded), one thread per group of rooms
+    @Bean
+    public RoomAffinityExecutor roomSendExecutor(@Value("${app.cluster.forward.workers:8}") final int workers,
+                                                      @Value("${app.cluster.forward.queue-capacity:10000}") final int queueCapacity) {
+        return new RoomAffinityExecutor("room-send", workers, queueCapacity);
+    }
+
+    // "host1:7600,host2:7600"
+    static List<InetSocketAddress> parsePeers(final String peers) {
+        return Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .map(peer -> {
+                    final int colon = peer.lastIndexOf(':');
+                    if (colon <= 0) throw new IllegalArgumentException("Cluster peer must be host:port, got " + peer);
+                    return InetSocketAddress.createUnresolved(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1)));
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,185 @@
+package org.chatapp.backend.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One frame on the {@link ClusterBus}. For DELIVER it is an already-encoded payload for a set of
+ * users' queues (destination such as /queue/messages); the payload bytes are shared, not copied,
+ * between local delivery and peers. Other kinds only use the fields they need.
+ */
+public record ClusterEnvelope(Kind kind, String originNode, List<String> usernames, String destination, String contentType, byte[] payload) {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    public enum Kind {
+        // Fan-out of an encoded message to users' queues on every node
+        DELIVER,
+        // Liveness for ClusterMembership; LEAVE is sent on orderly shutdown
+        HEARTBEAT,
+        LEAVE,
+        // A send handed to the node owning the room (destination: room id; payload: request id, JSON MessageContentDTO)
+        FORWARD,
+        // Drop cached state for a room (destination: room id) or for users (usernames)
+        INVALIDATE,
+        // Users gaining (destination ONLINE) or losing (OFFLINE) their sessions on the origin node
+        PRESENCE,
+        // Newly registered usernames, for the search index
+        USER_REGISTERED,
+        // Revoked refresh-token family ids (payload: 16 bytes per id, see tokenFamilies())
+        TOKEN_FAMILY_REVOKED,
+        // The owner's answer to a FORWARD once handled (payload: request id, outcome, error message)
+        FORWARD_RESULT
+    }
+
+    // How the owner handled a forwarded send
+    public enum ForwardOutcome {
+        HANDLED,
+        // Invalid message (400)
+        REJECTED,
+        // Unknown room or sender not a member (404)
+        NOT_FOUND,
+        // Owner overloaded or failing; the send did not happen (500)
+        UNAVAILABLE
+    }
+
+    public ClusterEnvelope {
+        usernames = List.copyOf(usernames);
+        payload = payload == null ? EMPTY : payload;
+    }
+
+    public static ClusterEnvelope deliver(final String originNode, final List<String> usernames, final String destination,
+                                          final String contentType, final byte[] payload) {
+        return new ClusterEnvelope(Kind.DELIVER, originNode, usernames, destination, contentType, payload);
+    }
+
+    public static ClusterEnvelope control(final Kind kind, final String originNode) {
+        return new ClusterEnvelope(kind, originNode, List.of(), "", null, EMPTY);
+    }
+
+    public static ClusterEnvelope forward(final String originNode, final UUID requestId, final UUID roomId, final byte[] json) {
+        final ByteBuffer payload = ByteBuffer.allocate(16 + json.length)
+                .putLong(requestId.getMostSignificantBits()).putLong(requestId.getLeastSignificantBits())
+                .put(json);
+        return new ClusterEnvelope(Kind.FORWARD, originNode, List.of(), roomId.toString(), "application/json", payload.array());
+    }
+
+    public static ClusterEnvelope forwardResult(final String originNode, final UUID requestId, final ForwardOutcome outcome, final String error) {
+        final byte[] message = error == null ? EMPTY : error.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer payload = ByteBuffer.allocate(17 + message.length)
+                .putLong(requestId.getMostSignificantBits()).putLong(requestId.getLeastSignificantBits())
+                .put((byte) outcome.ordinal())
+                .put(message);
+        return new ClusterEnvelope(Kind.FORWARD_RESULT, originNode, List.of(), "", null, payload.array());
+    }
+
+    public static ClusterEnvelope invalidateRoom(final String originNode, final UUID roomId) {
+        return new ClusterEnvelope(Kind.INVALIDATE, originNode, List.of(), roomId.toString(), null, EMPTY);
+    }
+
+    public static ClusterEnvelope invalidateUser(final String originNode, final String username) {
+        return new ClusterEnvelope(Kind.INVALIDATE, originNode, List.of(username), "", null, EMPTY);
+    }
+
+    public static ClusterEnvelope tokenFamiliesRevoked(final String originNode, final Collection<UUID> families) {
+        final ByteBuffer ids = ByteBuffer.allocate(families.size() * 16);
+        families.forEach(family -> ids.putLong(family.getMostSignificantBits()).putLong(family.getLeastSignificantBits()));
+        return new ClusterEnvelope(Kind.TOKEN_FAMILY_REVOKED, originNode, List.of(), "", null, ids.array());
+    }
+
+    // Family ids carried by a TOKEN_FAMILY_REVOKED frame
+    public List<UUID> tokenFamilies() {
+        if (kind != Kind.TOKEN_FAMILY_REVOKED) {
+            throw new IllegalStateException("Not a token family revocation: " + kind);
+        }
+        final ByteBuffer ids = ByteBuffer.wrap(payload);
+        final List<UUID> families = new ArrayList<>(payload.length / 16);
+        while (ids.remaining() >= 16) {
+            families.add(new UUID(ids.getLong(), ids.getLong()));
+        }
+        return families;
+    }
+
+    // Request id shared by a FORWARD and its FORWARD_RESULT
+    public UUID forwardId() {
+        if (kind != Kind.FORWARD && kind != Kind.FORWARD_RESULT) {
+            throw new IllegalStateException("Not a forwarded send: " + kind);
+        }
+        final ByteBuffer id = ByteBuffer.wrap(payload);
+        return new UUID(id.getLong(), id.getLong());
+    }
+
+    // JSON MessageContentDTO carried by a FORWARD
+    public byte[] forwardedMessage() {
+        if (kind != Kind.FORWARD) {
+            throw new IllegalStateException("Not a forwarded send: " + kind);
+        }
+        return Arrays.copyOfRange(payload, 16, payload.length);
+    }
+
+    public ForwardOutcome forwardOutcome() {
+        if (kind != Kind.FORWARD_RESULT) {
+            throw new IllegalStateException("Not a forward result: " + kind);
+        }
+        final int outcome = payload[16];
+        // An outcome this node does not know yet still means the send did not happen
+        return outcome < ForwardOutcome.values().length ? ForwardOutcome.values()[outcome] : ForwardOutcome.UNAVAILABLE;
+    }
+
+    public String forwardError() {
+        if (kind != Kind.FORWARD_RESULT) {
+            throw new IllegalStateException("Not a forward result: " + kind);
+        }
+        return new String(payload, 17, payload.length - 17, StandardCharsets.UTF_8);
+    }
+
+    public byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 64 + usernames.size() * 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(kind.ordinal());
+            out.writeUTF(originNode);
+            out.writeUTF(destination);
+            out.writeUTF(contentType == null ? "" : contentType);
+            out.writeInt(usernames.size());
+            for (final String username : usernames) {
+                out.writeUTF(username);
+            }
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ClusterEnvelope decode(final byte[] frame) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame))) {
+            final int kind = in.readUnsignedByte();
+            if (kind >= Kind.values().length) {
+                throw new IOException("Unknown frame kind " + kind);
+            }
+            final String origin = in.readUTF();
+            final String destination = in.readUTF();
+            final String contentType = in.readUTF();
+            final int count = in.readInt();
+            final List<String> usernames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                usernames.add(in.readUTF());
+            }
+            final byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new ClusterEnvelope(Kind.values()[kind], origin, usernames, destination, contentType.isEmpty() ? null : contentType, payload);
+        }
+    }
+}
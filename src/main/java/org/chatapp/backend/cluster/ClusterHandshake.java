@@ -0,0 +1,127 @@
+package org.chatapp.backend.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Mutual challenge-response run on every cluster connection before any frame is sent. Each end
+ * proves it holds app.cluster.tcp.secret by returning an HMAC-SHA256 over the other end's fresh
+ * nonce, its own nonce and both node ids, tagged with its role so one side's proof cannot be
+ * reflected as the other's. The secret never crosses the wire; frames are not encrypted.
+ */
+final class ClusterHandshake {
+
+    static final int MIN_SECRET_BYTES = 32;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int NONCE_BYTES = 32;
+    private static final int PROOF_BYTES = 32;
+    private static final String CLIENT = "chat-cluster-client";
+    private static final String SERVER = "chat-cluster-server";
+
+    private final String nodeId;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    ClusterHandshake(final String nodeId, final byte[] secret) {
+        if (secret == null || secret.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("Cluster secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.nodeId = nodeId;
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    /**
+     * Connecting side: sends our id and a challenge, checks the server's proof, then proves ourselves.
+     *
+     * @return the authenticated id of the node we reached
+     * @throws RejectedException if the server's proof is wrong
+     * @throws IOException if the connection fails
+     */
+    String connect(final DataInputStream in, final DataOutputStream out) throws IOException {
+        final byte[] clientNonce = nonce();
+        out.writeUTF(nodeId);
+        out.write(clientNonce);
+        out.flush();
+
+        final String serverId = in.readUTF();
+        final byte[] serverNonce = read(in, NONCE_BYTES);
+        verify(read(in, PROOF_BYTES), proof(SERVER, clientNonce, serverNonce, serverId, nodeId), serverId);
+
+        out.write(proof(CLIENT, serverNonce, clientNonce, nodeId, serverId));
+        out.flush();
+        return serverId;
+    }
+
+    /**
+     * Accepting side: answers the client's challenge with our proof and our own challenge, then
+     * checks the client's proof.
+     *
+     * @return the authenticated id of the connecting node
+     * @throws RejectedException if the client's proof is wrong
+     * @throws IOException if the connection fails
+     */
+    String accept(final DataInputStream in, final DataOutputStream out) throws IOException {
+        final String clientId = in.readUTF();
+        final byte[] clientNonce = read(in, NONCE_BYTES);
+
+        final byte[] serverNonce = nonce();
+        out.writeUTF(nodeId);
+        out.write(serverNonce);
+        out.write(proof(SERVER, clientNonce, serverNonce, nodeId, clientId));
+        out.flush();
+
+        verify(read(in, PROOF_BYTES), proof(CLIENT, serverNonce, clientNonce, clientId, nodeId), clientId);
+        return clientId;
+    }
+
+    private byte[] nonce() {
+        final byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    // role | challenge | own nonce | prover id | verifier id, length-prefixed so fields cannot run together
+    private byte[] proof(final String role, final byte[] challenge, final byte[] ownNonce, final String prover, final String verifier) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream data = new DataOutputStream(bytes);
+            data.writeUTF(role);
+            data.write(challenge);
+            data.write(ownNonce);
+            data.writeUTF(prover);
+            data.writeUTF(verifier);
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(bytes.toByteArray());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute cluster handshake proof", e);
+        }
+    }
+
+    private static void verify(final byte[] received, final byte[] expected, final String claimedId) throws IOException {
+        if (!MessageDigest.isEqual(received, expected)) {
+            throw new RejectedException("Cluster handshake failed for node " + claimedId + ": wrong secret");
+        }
+    }
+
+    private static byte[] read(final DataInputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    // The other end answered but does not hold the secret (as opposed to a dropped connection)
+    static final class RejectedException extends IOException {
+        RejectedException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.chatapp.backend.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Live nodes and the room ownership ring built from them. Every node heartbeats on the bus; a
+ * node that misses failure-detection-heartbeats in a row, or says LEAVE on shutdown, drops out
+ * and the ring is rebuilt, moving only that node's rooms. Ownership is a routing hint, not a lock:
+ * during a rebalance two nodes may briefly both think they own a room.
+ */
+@Slf4j
+public class ClusterMembership implements SmartLifecycle {
+
+    private final ClusterBus clusterBus;
+    private final long expiryNanos;
+    private final int virtualNodes;
+    private final Map<String, Long> lastHeartbeat = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> joinListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<String>> leaveListeners = new CopyOnWriteArrayList<>();
+
+    private volatile ConsistentHashRing ring;
+    private volatile boolean running;
+
+    public ClusterMembership(final ClusterBus clusterBus, final Duration heartbeatInterval, final int failureDetectionHeartbeats, final int virtualNodes) {
+        this.clusterBus = clusterBus;
+        this.expiryNanos = heartbeatInterval.toNanos() * Math.max(failureDetectionHeartbeats, 1);
+        this.virtualNodes = virtualNodes;
+        this.ring = new ConsistentHashRing(Set.of(clusterBus.nodeId()), virtualNodes);
+        clusterBus.subscribe(ClusterEnvelope.Kind.HEARTBEAT, envelope -> {
+            if (lastHeartbeat.put(envelope.originNode(), System.nanoTime()) == null) {
+                rebuild();
+                notify(joinListeners, envelope.originNode());
+            }
+        });
+        clusterBus.subscribe(ClusterEnvelope.Kind.LEAVE, envelope -> {
+            if (lastHeartbeat.remove(envelope.originNode()) != null) {
+                rebuild();
+                notify(leaveListeners, envelope.originNode());
+            }
+        });
+    }
+
+    public String nodeId() {
+        return clusterBus.nodeId();
+    }
+
+    public String ownerOf(final UUID roomId) {
+        return ring.ownerOf(roomId);
+    }
+
+    public boolean isLocal(final UUID roomId) {
+        return ring.ownerOf(roomId).equals(clusterBus.nodeId());
+    }
+
+    public Set<String> liveNodes() {
+        return ring.nodes();
+    }
+
+    // Called with the node id when a node is first heard from
+    public void onJoin(final Consumer<String> listener) {
+        joinListeners.add(listener);
+    }
+
+    // Called with the node id when a node leaves or stops heartbeating
+    public void onLeave(final Consumer<String> listener) {
+        leaveListeners.add(listener);
+    }
+
+    @Scheduled(fixedDelayString = "${app.cluster.heartbeat-interval:PT1S}")
+    public void tick() {
+        if (!running) return;
+        clusterBus.publish(ClusterEnvelope.control(ClusterEnvelope.Kind.HEARTBEAT, clusterBus.nodeId()));
+        final long now = System.nanoTime();
+        final List<String> expired = new ArrayList<>();
+        lastHeartbeat.forEach((node, seen) -> {
+            if (now - seen > expiryNanos && lastHeartbeat.remove(node, seen)) expired.add(node);
+        });
+        if (expired.isEmpty()) return;
+        rebuild();
+        expired.forEach(node -> notify(leaveListeners, node));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        tick();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        clusterBus.publish(ClusterEnvelope.control(ClusterEnvelope.Kind.LEAVE, clusterBus.nodeId()));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static void notify(final List<Consumer<String>> listeners, final String node) {
+        for (final Consumer<String> listener : listeners) {
+            try {
+                listener.accept(node);
+            } catch (RuntimeException e) {
+                log.warn("Cluster membership listener failed for {}: {}", node, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void rebuild() {
+        final Set<String> nodes = new HashSet<>(lastHeartbeat.keySet());
+        nodes.add(clusterBus.nodeId());
+        if (nodes.equals(ring.nodes())) return;
+        ring = new ConsistentHashRing(nodes, virtualNodes);
+        log.info("Cluster ring rebuilt with {} nodes: {}", nodes.size(), nodes);
+    }
+}
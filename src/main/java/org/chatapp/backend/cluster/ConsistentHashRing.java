@@ -0,0 +1,65 @@
+package org.chatapp.backend.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Immutable consistent-hash ring of node ids. Each node is placed at virtualNodes points so rooms
+ * spread evenly, and adding or removing a node only moves the rooms adjacent to its points.
+ */
+public final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public ConsistentHashRing(final Collection<String> nodes, final int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one node");
+        }
+        this.nodes = Set.copyOf(new TreeSet<>(nodes));
+        final MessageDigest digest = sha256();
+        for (final String node : this.nodes) {
+            for (int i = 0; i < Math.max(virtualNodes, 1); i++) {
+                final byte[] hash = digest.digest((node + "#" + i).getBytes(StandardCharsets.UTF_8));
+                // Ties are practically impossible; resolve them by node id so every node builds the same ring
+                points.merge(ByteBuffer.wrap(hash).getLong(), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    public String ownerOf(final UUID key) {
+        final Map.Entry<Long, String> entry = points.ceilingEntry(mix(key));
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    // Random UUIDs are already uniform, but time-based or imported ids are not; mix the bits first
+    private static long mix(final UUID key) {
+        long h = key.getMostSignificantBits() ^ Long.rotateLeft(key.getLeastSignificantBits(), 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.chatapp.backend.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Bus between nodes living in the same JVM (same group name). With a single node it delivers
+ * nothing, which is the default single-instance deployment; several application contexts in one
+ * JVM (tests) see each other's messages. Delivery runs on the publishing thread.
+ */
+public class InJvmClusterBus implements ClusterBus {
+
+    private static final Map<String, Set<InJvmClusterBus>> GROUPS = new ConcurrentHashMap<>();
+
+    private final String nodeId;
+    private final String group;
+    private final Map<ClusterEnvelope.Kind, List<Consumer<ClusterEnvelope>>> listeners = new ConcurrentHashMap<>();
+
+    public InJvmClusterBus(final String nodeId, final String group) {
+        this.nodeId = nodeId;
+        this.group = group;
+        GROUPS.computeIfAbsent(group, g -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(final ClusterEnvelope envelope) {
+        GROUPS.getOrDefault(group, Set.of()).stream()
+                .filter(node -> node != this)
+                .forEach(node -> node.dispatch(envelope));
+    }
+
+    @Override
+    public boolean send(final String target, final ClusterEnvelope envelope) {
+        for (final InJvmClusterBus node : GROUPS.getOrDefault(group, Set.of())) {
+            if (node != this && node.nodeId.equals(target)) {
+                node.dispatch(envelope);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void subscribe(final ClusterEnvelope.Kind kind, final Consumer<ClusterEnvelope> listener) {
+        listeners.computeIfAbsent(kind, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void close() {
+        GROUPS.getOrDefault(group, Set.of()).remove(this);
+    }
+
+    private void dispatch(final ClusterEnvelope envelope) {
+        listeners.getOrDefault(envelope.kind(), List.of()).forEach(listener -> listener.accept(envelope));
+    }
+}
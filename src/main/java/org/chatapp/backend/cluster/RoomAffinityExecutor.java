@@ -0,0 +1,53 @@
+package org.chatapp.backend.cluster;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs work for a room on the single thread its id hashes to, so a room's tasks run one at a time
+ * in submission order while different rooms proceed in parallel.
+ */
+public class RoomAffinityExecutor {
+
+    private final List<ExecutorService> workers = new ArrayList<>();
+
+    public RoomAffinityExecutor(final String name, final int workerCount, final int queueCapacity) {
+        for (int i = 0; i < Math.max(workerCount, 1); i++) {
+            final String threadName = name + "-" + i;
+            workers.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                    task -> new Thread(task, threadName)));
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the room's worker queue is full
+     */
+    public void execute(final UUID roomId, final Runnable task) {
+        try {
+            workers.get(Math.floorMod(roomId.hashCode(), workers.size())).execute(task);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Room worker queue is full", e);
+        }
+    }
+
+    public void shutdown(final Duration timeout) {
+        workers.forEach(ExecutorService::shutdown);
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        for (final ExecutorService worker : workers) {
+            try {
+                worker.awaitTermination(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package org.chatapp.backend.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Full-mesh TCP bus (app.cluster.mode=tcp). Every node listens on app.cluster.tcp.port and keeps
+ * one outbound connection per configured peer; frames are a 4-byte length followed by an encoded
+ * {@link ClusterEnvelope}. Each peer has a bounded send queue drained by its own thread, so a slow
+ * or down peer only loses its own frames (once the queue is full) and never blocks a sender.
+ * Dropped connections are re-established with backoff.
+ *
+ * Inbound connections are accepted only from the addresses the configured peers resolve to, and
+ * both ends must pass a {@link ClusterHandshake} with the shared secret; after that, frames must
+ * carry the authenticated node id as their origin. Anything else is closed. Frames are not
+ * encrypted, so keep the cluster port on a private network.
+ */
+@Slf4j
+public class TcpClusterBus implements ClusterBus, SmartLifecycle {
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 2_000;
+
+    private final String nodeId;
+    private final InetSocketAddress bindAddress;
+    private final ClusterHandshake handshake;
+    private final List<PeerLink> peers = new ArrayList<>();
+    private final Map<ClusterEnvelope.Kind, List<Consumer<ClusterEnvelope>>> listeners = new ConcurrentHashMap<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public TcpClusterBus(final String nodeId, final InetSocketAddress bindAddress, final List<InetSocketAddress> peerAddresses,
+                         final int queueCapacity, final byte[] secret) {
+        this.nodeId = nodeId;
+        this.bindAddress = bindAddress;
+        this.handshake = new ClusterHandshake(nodeId, secret);
+        for (final InetSocketAddress address : peerAddresses) {
+            peers.add(new PeerLink(address, Math.max(queueCapacity, 1)));
+        }
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(final ClusterEnvelope envelope) {
+        if (peers.isEmpty()) return;
+        final byte[] frame = envelope.encode();
+        for (final PeerLink peer : peers) {
+            peer.offer(frame);
+        }
+    }
+
+    @Override
+    public boolean send(final String target, final ClusterEnvelope envelope) {
+        for (final PeerLink peer : peers) {
+            if (target.equals(peer.remoteNodeId)) {
+                return peer.offer(envelope.encode());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void subscribe(final ClusterEnvelope.Kind kind, final Consumer<ClusterEnvelope> listener) {
+        listeners.computeIfAbsent(kind, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void start() {
+        try {
+            final ServerSocket socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(bindAddress);
+            serverSocket = socket;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot listen for cluster peers on " + bindAddress, e);
+        }
+        running = true;
+        startThread(this::acceptLoop, "cluster-accept");
+        for (final PeerLink peer : peers) {
+            startThread(peer::run, "cluster-peer-" + peer.label);
+        }
+        log.info("Cluster node {} listening on {} with {} peers", nodeId, bindAddress, peers.size());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        inbound.forEach(TcpClusterBus::closeQuietly);
+        peers.forEach(PeerLink::close);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Up before membership starts heartbeating, down only after the web server stopped taking sends
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                startThread(() -> readLoop(socket), "cluster-in-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (running) log.warn("Accepting cluster connection failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void readLoop(final Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (!isPeerAddress(socket.getInetAddress())) {
+                log.warn("Refused cluster connection from {}: not a configured peer", socket.getRemoteSocketAddress());
+                return;
+            }
+            final String peerId;
+            try {
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+                peerId = handshake.accept(in, new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+                socket.setSoTimeout(0);
+            } catch (ClusterHandshake.RejectedException e) {
+                log.warn("Refused cluster connection from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                return;
+            }
+            while (running) {
+                final int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                final byte[] frame = new byte[length];
+                in.readFully(frame);
+                final ClusterEnvelope envelope = ClusterEnvelope.decode(frame);
+                if (!peerId.equals(envelope.originNode())) {
+                    log.warn("Closing cluster connection from {}: node {} sent a frame as {}", socket.getRemoteSocketAddress(), peerId, envelope.originNode());
+                    return;
+                }
+                dispatch(envelope);
+            }
+        } catch (IOException e) {
+            if (running) log.debug("Cluster connection from {} closed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    // Resolved on every connection, like outbound links, so a restarted peer with a new address is let in
+    private boolean isPeerAddress(final InetAddress remote) {
+        for (final PeerLink peer : peers) {
+            try {
+                for (final InetAddress address : InetAddress.getAllByName(peer.address.getHostString())) {
+                    if (address.equals(remote)) return true;
+                }
+            } catch (UnknownHostException e) {
+                log.debug("Cannot resolve cluster peer {}: {}", peer.label, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void dispatch(final ClusterEnvelope envelope) {
+        for (final Consumer<ClusterEnvelope> listener : listeners.getOrDefault(envelope.kind(), List.of())) {
+            try {
+                listener.accept(envelope);
+            } catch (RuntimeException e) {
+                log.warn("Cluster listener failed for {}: {}", envelope.destination(), e.getMessage());
+            }
+        }
+    }
+
+    private static void startThread(final Runnable task, final String name) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(final java.io.Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Already closing
+        }
+    }
+
+
+
+    private final class PeerLink {
+
+        private final InetSocketAddress address;
+        private final String label;
+        private final BlockingQueue<byte[]> queue;
+        private volatile Socket socket;
+        private volatile String remoteNodeId;
+        private long dropped;
+
+        PeerLink(final InetSocketAddress address, final int capacity) {
+            this.address = address;
+            this.label = address.getHostString() + ":" + address.getPort();
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        boolean offer(final byte[] frame) {
+            if (queue.offer(frame)) return true;
+            if ((++dropped % 1000) == 1) {
+                log.warn("Cluster peer {} is not keeping up, {} frames dropped so far", label, dropped);
+            }
+            return false;
+        }
+
+        void run() {
+            long backoff = 100;
+            while (running) {
+                try (Socket connection = new Socket()) {
+                    connection.setTcpNoDelay(true);
+                    // Resolved on every attempt so a restarted peer with a new address is picked up
+                    connection.connect(new InetSocketAddress(address.getHostString(), address.getPort()), 2_000);
+                    socket = connection;
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                    connection.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+                    remoteNodeId = handshake.connect(new DataInputStream(new BufferedInputStream(connection.getInputStream())), out);
+                    connection.setSoTimeout(0);
+                    backoff = 100;
+                    log.info("Connected to cluster peer {} ({})", label, remoteNodeId);
+                    while (running) {
+                        final byte[] frame = queue.poll(1, TimeUnit.SECONDS);
+                        if (frame == null) continue;
+                        write(out, frame);
+                        // Coalesce whatever else is queued into the same flush
+                        byte[] next;
+                        while ((next = queue.poll()) != null) {
+                            write(out, next);
+                        }
+                        out.flush();
+                    }
+                } catch (ClusterHandshake.RejectedException e) {
+                    log.warn("Cluster peer {} rejected: {}", label, e.getMessage());
+                } catch (IOException e) {
+                    if (running) log.debug("Cluster peer {} unavailable: {}", label, e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    remoteNodeId = null;
+                }
+                if (!running) return;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+
+        private void write(final DataOutputStream out, final byte[] frame) throws IOException {
+            out.writeInt(frame.length);
+            out.write(frame);
+        }
+    }
+}
@@ -1,16 +1,48 @@
 package org.chatapp.backend.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+@Slf4j
 @Configuration
 public class AsyncConfig {
 
+    /**
+     * True when spring.threads.virtual.enabled is set and the JVM supports virtual threads
+     * (Java 21+). Spring Boot then also runs Tomcat request handling and the task scheduler on
+     * virtual threads; on older JVMs the flag is ignored and the platform pools below are used.
+     */
+    public static boolean virtualThreads(final Environment environment) {
+        return Threading.VIRTUAL.isActive(environment);
+    }
+
+    /**
+     * A virtual thread per task, with a concurrency limit as back-pressure in place of a queue
+     * bound: callers block (cheaply) instead of being rejected.
+     */
+    public static SimpleAsyncTaskExecutor virtualThreadExecutor(final String threadNamePrefix, final int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        return executor;
+    }
+
     // Define the default TaskExecutor bean name expected by Spring (@Async)
     @Bean(name = "taskExecutor")
-    public TaskExecutor taskExecutor() {
+    public TaskExecutor taskExecutor(final Environment environment,
+                                     @Value("${app.threads.virtual.async-concurrency:1000}") final int virtualConcurrency) {
+        if (virtualThreads(environment)) {
+            log.info("Request handling, @Async and STOMP inbound processing run on virtual threads");
+            return virtualThreadExecutor("async-", virtualConcurrency);
+        }
+        log.info("Running on platform thread pools (virtual threads disabled or unsupported by Java {})", Runtime.version().feature());
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(8);
@@ -19,4 +51,32 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    // Avatar decoding and scaling; bounded so a burst of uploads is rejected instead of queued without limit
+    @Bean(name = "avatarExecutor")
+    public TaskExecutor avatarExecutor(@Value("${app.avatars.workers:2}") final int workers,
+                                       @Value("${app.avatars.queue-capacity:100}") final int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("avatar-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    // BCrypt is CPU-bound: at most one worker per core, and a short queue so overload is shed, not absorbed
+    @Bean(name = "passwordHashExecutor")
+    public ThreadPoolTaskExecutor passwordHashExecutor(@Value("${app.auth.bcrypt.workers:0}") final int workers,
+                                                       @Value("${app.auth.bcrypt.queue-capacity:64}") final int queueCapacity) {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("bcrypt-");
+        executor.initialize();
+        return executor;
+    }
 }
@@ -0,0 +1,87 @@
+package org.chatapp.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier (inside synchronized or a
+ * native frame), which silently turns them back into platform threads. Listens to the JFR
+ * jdk.VirtualThreadPinned event in-process: every occurrence is counted in
+ * jvm.threads.virtual.pinned, and each distinct call site is logged once with its stack.
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Counter pinnedCounter;
+    private final Duration threshold;
+    private final int stackDepth;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+
+    private volatile RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(final MeterRegistry meterRegistry,
+                                       @Value("${app.threads.virtual.pinned-threshold:PT0.02S}") final Duration threshold,
+                                       @Value("${app.threads.virtual.pinned-stack-depth:12}") final int stackDepth) {
+        this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to a carrier thread")
+                .register(meterRegistry);
+        this.threshold = threshold;
+        this.stackDepth = stackDepth;
+    }
+
+    @Override
+    public void start() {
+        final RecordingStream recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::pinned);
+        recording.startAsync();
+        stream = recording;
+        log.info("Watching for virtual threads pinned longer than {}", threshold);
+    }
+
+    @Override
+    public void stop() {
+        final RecordingStream recording = stream;
+        stream = null;
+        if (recording != null) recording.close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    private void pinned(final RecordedEvent event) {
+        pinnedCounter.increment();
+        if (event.getStackTrace() == null) return;
+        final List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        final String stack = frames.stream()
+                .limit(stackDepth)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n\tat "));
+        // One warning per call site; the counter keeps the rate
+        if (reportedSites.add(stack)) {
+            log.warn("Virtual thread pinned for {} ms on {}\n\tat {}",
+                    event.getDuration().toMillis(), event.getThread() != null ? event.getThread().getJavaName() : "?", stack);
+        }
+    }
+}
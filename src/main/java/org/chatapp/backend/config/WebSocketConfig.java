@@ -1,14 +1,41 @@
 package org.chatapp.backend.config;
 
+import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.presence.StompPresenceInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    private final StompPresenceInterceptor stompPresenceInterceptor;
+    private final Environment environment;
+
+    @Value("${app.threads.virtual.stomp-inbound-concurrency:2000}")
+    private int virtualInboundConcurrency;
+
+    @Value("${app.presence.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("messageBrokerTaskScheduler") final TaskScheduler taskScheduler) {
+        this.messageBrokerTaskScheduler = taskScheduler;
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/api/ws") // Clients connect to
@@ -18,8 +45,20 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/user"); // Clients subscribe to /topic/abc
+        registry.enableSimpleBroker("/topic", "/user") // Clients subscribe to /topic/abc
+                // Server and client heart-beats; the broker closes sessions whose client goes silent
+                .setHeartbeatValue(new long[]{heartbeatMillis, heartbeatMillis})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         registry.setApplicationDestinationPrefixes("/app"); // Clients send to /app/xyz
         registry.setUserDestinationPrefix("/user");
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompPresenceInterceptor); // JWT on CONNECT, session activity
+        if (AsyncConfig.virtualThreads(environment)) {
+            // Inbound handlers block on JDBC; a virtual thread each instead of the default CPU-sized pool
+            registration.executor(AsyncConfig.virtualThreadExecutor("ws-inbound-", virtualInboundConcurrency));
+        }
+    }
 }
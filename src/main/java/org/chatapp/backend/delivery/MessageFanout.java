@@ -0,0 +1,121 @@
+package org.chatapp.backend.delivery;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Delivers one payload to many users' queues. The payload is converted (JSON) once into an
+ * immutable message; each recipient only gets a copy of the headers with its own destination,
+ * the encoded bytes are shared.
+ *
+ * The same encoded bytes are published on the {@link ClusterBus}; a node receiving them from a
+ * peer delivers to its local broker only, which reaches just the sessions connected to it.
+ *
+ * Metrics: chat.fanout.encode (timer), chat.fanout.width (recipients per send),
+ * chat.fanout.dispatch (timer for handing the message to every recipient).
+ */
+@Slf4j
+@Component
+public class MessageFanout {
+
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final ClusterBus clusterBus;
+    private final Timer encodeTimer;
+    private final DistributionSummary widthSummary;
+    private final Timer dispatchTimer;
+
+    public MessageFanout(final SimpMessagingTemplate simpMessagingTemplate, final ClusterBus clusterBus, final MeterRegistry meterRegistry) {
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.clusterBus = clusterBus;
+        this.encodeTimer = Timer.builder("chat.fanout.encode")
+                .description("Time to serialize a fan-out payload (once per send)")
+                .register(meterRegistry);
+        this.widthSummary = DistributionSummary.builder("chat.fanout.width")
+                .description("Recipients per fan-out")
+                .baseUnit("recipients")
+                .register(meterRegistry);
+        this.dispatchTimer = Timer.builder("chat.fanout.dispatch")
+                .description("Time to dispatch an encoded payload to all recipients")
+                .register(meterRegistry);
+        clusterBus.subscribe(ClusterEnvelope.Kind.DELIVER, this::deliverFromPeer);
+    }
+
+    // Equivalent to convertAndSendToUser(username, destination, payload) for every username
+    public void sendToUsers(final Collection<String> usernames, final String destination, final Object payload) {
+        if (usernames.isEmpty()) return;
+        widthSummary.record(usernames.size());
+
+        final Message<?> encoded = encodeTimer.record(() -> encode(payload));
+
+        dispatchTimer.record(() -> deliverLocally(usernames, destination, encoded));
+        publishToPeers(usernames, destination, encoded);
+    }
+
+    private void deliverFromPeer(final ClusterEnvelope envelope) {
+        final SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        if (envelope.contentType() != null) {
+            accessor.setHeader(MessageHeaders.CONTENT_TYPE, MimeType.valueOf(envelope.contentType()));
+        }
+        deliverLocally(envelope.usernames(), envelope.destination(), MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
+    }
+
+    private void publishToPeers(final Collection<String> usernames, final String destination, final Message<?> encoded) {
+        final Object payload = encoded.getPayload();
+        final byte[] bytes = payload instanceof byte[] raw ? raw : payload.toString().getBytes(StandardCharsets.UTF_8);
+        final Object contentType = encoded.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        try {
+            clusterBus.publish(ClusterEnvelope.deliver(clusterBus.nodeId(), List.copyOf(usernames), destination,
+                    contentType == null ? null : contentType.toString(), bytes));
+        } catch (RuntimeException e) {
+            // Local recipients already have it; remote ones catch up on their next history fetch
+            log.warn("Publishing fan-out to cluster failed: {}", e.getMessage());
+        }
+    }
+
+    // The local broker only reaches sessions on this node; users connected elsewhere are a no-op here
+    private void deliverLocally(final Collection<String> usernames, final String destination, final Message<?> encoded) {
+        usernames.forEach(username -> {
+            try {
+                simpMessagingTemplate.send(userDestination(username, destination), encoded);
+            } catch (RuntimeException e) {
+                // One unreachable recipient must not stop delivery to the rest
+                log.warn("Fan-out to {} failed: {}", username, e.getMessage());
+            }
+        });
+    }
+
+    public Message<?> encode(final Object payload) {
+        final Message<?> converted = simpMessagingTemplate.getMessageConverter().toMessage(payload, null);
+        if (converted == null) {
+            throw new IllegalArgumentException("No converter for payload type " + payload.getClass().getName());
+        }
+        final SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        final Object contentType = converted.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            accessor.setHeader(MessageHeaders.CONTENT_TYPE, contentType);
+        }
+        // Immutable headers: the template copies them per recipient instead of mutating the shared message
+        return MessageBuilder.createMessage(converted.getPayload(), accessor.getMessageHeaders());
+    }
+
+    // Same destination convertAndSendToUser resolves to: /user/{username}/queue/...
+    private String userDestination(final String username, final String destination) {
+        return simpMessagingTemplate.getUserDestinationPrefix() + username.replace("/", "%2F") + destination;
+    }
+}
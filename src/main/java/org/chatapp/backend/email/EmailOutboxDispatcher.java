@@ -0,0 +1,221 @@
+package org.chatapp.backend.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drains the email outbox on its own thread, so slow provider calls never hold up request or
+ * scheduler threads. Rows are claimed in short transactions (SKIP LOCKED, with a lease so a
+ * crashed node's claims are picked up again), sent in batches of up to batch-size, and retried
+ * with exponential backoff and jitter on transient errors. When a batch is rejected its emails are
+ * sent one by one, so a single bad address fails alone.
+ */
+@Slf4j
+@Component
+public class EmailOutboxDispatcher implements SmartLifecycle {
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final ResendClient resendClient;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+    private final Duration retention;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Timer requestTimer;
+    private final AtomicBoolean wakeUpQueued = new AtomicBoolean();
+
+    private volatile ScheduledExecutorService executor;
+
+    public EmailOutboxDispatcher(final EmailOutboxRepository emailOutboxRepository,
+                                 final ResendClient resendClient,
+                                 final TransactionTemplate transactionTemplate,
+                                 final MeterRegistry meterRegistry,
+                                 @Value("${app.mail.outbox.batch-size:100}") final int batchSize,
+                                 @Value("${app.mail.outbox.poll-interval:PT5S}") final Duration pollInterval,
+                                 @Value("${app.mail.outbox.lease:PT2M}") final Duration lease,
+                                 @Value("${app.mail.outbox.max-attempts:8}") final int maxAttempts,
+                                 @Value("${app.mail.outbox.backoff-base:PT10S}") final Duration backoffBase,
+                                 @Value("${app.mail.outbox.backoff-max:PT1H}") final Duration backoffMax,
+                                 @Value("${app.mail.outbox.retention:P7D}") final Duration retention) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.resendClient = resendClient;
+        this.transactionTemplate = transactionTemplate;
+        // Resend accepts at most 100 emails per batch request
+        this.batchSize = Math.min(Math.max(batchSize, 1), 100);
+        this.pollInterval = pollInterval;
+        this.lease = lease;
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.backoffBase = backoffBase;
+        this.backoffMax = backoffMax;
+        this.retention = retention;
+        this.sentCounter = Counter.builder("email.outbox.sent").description("Emails accepted by the provider").register(meterRegistry);
+        this.retriedCounter = Counter.builder("email.outbox.retried").description("Email attempts rescheduled after a transient error").register(meterRegistry);
+        this.failedCounter = Counter.builder("email.outbox.failed").description("Emails given up on").register(meterRegistry);
+        this.requestTimer = Timer.builder("email.provider.request").description("Provider API calls").register(meterRegistry);
+    }
+
+    // Called after an enqueueing transaction commits, so new mail does not wait for the next poll
+    public void wakeUp() {
+        final ScheduledExecutorService current = executor;
+        if (current == null || !wakeUpQueued.compareAndSet(false, true)) return;
+        current.execute(() -> {
+            wakeUpQueued.set(false);
+            drain();
+        });
+    }
+
+    /**
+     * Claims and sends one batch of due emails.
+     *
+     * @return the number of emails claimed
+     */
+    public int dispatchOnce() {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<EmailOutbox> claimed = transactionTemplate.execute(status -> {
+            final List<EmailOutbox> due = emailOutboxRepository.findDueForUpdate(now, PageRequest.of(0, batchSize));
+            due.forEach(email -> {
+                email.setStatus(EmailOutboxStatus.SENDING);
+                email.setLockedUntil(now.plus(lease));
+            });
+            return emailOutboxRepository.saveAll(due);
+        });
+        if (claimed == null || claimed.isEmpty()) return 0;
+        deliver(claimed);
+        return claimed.size();
+    }
+
+    @Scheduled(cron = "${app.mail.outbox.purge-cron:0 15 4 * * *}")
+    public void purgeSent() {
+        final Integer deleted = transactionTemplate.execute(status -> emailOutboxRepository.deleteSentBefore(LocalDateTime.now().minus(retention)));
+        if (deleted != null && deleted > 0) log.info("Purged {} sent emails from the outbox", deleted);
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "email-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::drain, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        final ScheduledExecutorService current = executor;
+        executor = null;
+        if (current == null) return;
+        current.shutdown();
+        try {
+            // An in-flight batch finishes; anything left is claimed again after its lease
+            current.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    private void drain() {
+        if (!resendClient.isConfigured()) return;
+        try {
+            while (executor != null && dispatchOnce() == batchSize) {
+                // Full batch: there may be more due right now
+            }
+        } catch (RuntimeException e) {
+            log.warn("Email outbox dispatch failed: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(final List<EmailOutbox> emails) {
+        final ResendClient.Result result = requestTimer.record(() -> resendClient.send(emails));
+        switch (result.outcome()) {
+            case SENT -> {
+                final LocalDateTime now = LocalDateTime.now();
+                for (int i = 0; i < emails.size(); i++) {
+                    final EmailOutbox email = emails.get(i);
+                    email.setStatus(EmailOutboxStatus.SENT);
+                    email.setSentAt(now);
+                    email.setLockedUntil(null);
+                    email.setAttempts(email.getAttempts() + 1);
+                    email.setProviderId(i < result.providerIds().size() ? result.providerIds().get(i) : null);
+                }
+                sentCounter.increment(emails.size());
+                emailOutboxRepository.saveAll(emails);
+            }
+            case RETRY -> {
+                emails.forEach(email -> reschedule(email, result.error()));
+                emailOutboxRepository.saveAll(emails);
+            }
+            case REJECTED -> {
+                if (emails.size() > 1) {
+                    emails.forEach(email -> deliver(List.of(email)));
+                    return;
+                }
+                final EmailOutbox email = emails.get(0);
+                email.setAttempts(email.getAttempts() + 1);
+                fail(email, result.error());
+                emailOutboxRepository.save(email);
+            }
+        }
+    }
+
+    private void reschedule(final EmailOutbox email, final String error) {
+        email.setAttempts(email.getAttempts() + 1);
+        if (email.getAttempts() >= maxAttempts) {
+            fail(email, error);
+            return;
+        }
+        email.setStatus(EmailOutboxStatus.PENDING);
+        email.setLockedUntil(null);
+        email.setLastError(truncate(error));
+        email.setNextAttemptAt(LocalDateTime.now().plus(backoff(email.getAttempts())));
+        retriedCounter.increment();
+    }
+
+    private void fail(final EmailOutbox email, final String error) {
+        email.setStatus(EmailOutboxStatus.FAILED);
+        email.setLockedUntil(null);
+        email.setLastError(truncate(error));
+        failedCounter.increment();
+        log.warn("Giving up on email {} to {} after {} attempt(s): {}", email.getId(), email.getRecipient(), email.getAttempts(), error);
+    }
+
+    // base * 2^(attempt-1), capped, with up to 20% jitter so retries from a burst spread out
+    private Duration backoff(final int attempt) {
+        final long base = backoffBase.toMillis();
+        final long millis = Math.min(backoffMax.toMillis(), base << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(millis + ThreadLocalRandom.current().nextLong(millis / 5 + 1));
+    }
+
+    private static String truncate(final String error) {
+        if (error == null) return null;
+        return error.length() <= 1000 ? error : error.substring(0, 1000);
+    }
+}
@@ -0,0 +1,35 @@
+package org.chatapp.backend.email;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, UUID> {
+
+    // Due rows, plus claims whose dispatcher died; SKIP LOCKED (lock timeout -2) lets several nodes claim side by side
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("""
+        SELECT outbox FROM EmailOutbox outbox
+        WHERE (outbox.status = org.chatapp.backend.email.EmailOutboxStatus.PENDING AND outbox.nextAttemptAt <= :now)
+           OR (outbox.status = org.chatapp.backend.email.EmailOutboxStatus.SENDING AND outbox.lockedUntil < :now)
+        ORDER BY outbox.nextAttemptAt
+        """)
+    List<EmailOutbox> findDueForUpdate(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM EmailOutbox outbox WHERE outbox.status = org.chatapp.backend.email.EmailOutboxStatus.SENT AND outbox.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
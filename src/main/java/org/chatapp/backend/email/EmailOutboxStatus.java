@@ -0,0 +1,9 @@
+package org.chatapp.backend.email;
+
+public enum EmailOutboxStatus {
+    PENDING,
+    // Claimed by a dispatcher until lockedUntil; reclaimed after that if the node died mid-send
+    SENDING,
+    SENT,
+    FAILED,
+}
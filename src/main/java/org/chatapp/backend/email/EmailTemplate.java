@@ -0,0 +1,52 @@
+package org.chatapp.backend.email;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An HTML template parsed once into literal text and {{name}} slots. Rendering appends the parts
+ * into one builder; slot values are HTML-escaped.
+ */
+public final class EmailTemplate {
+
+    private static final Pattern SLOT = Pattern.compile("\\{\\{(\\w+)}}");
+
+    private final List<String> literals = new ArrayList<>();
+    private final List<String> slots = new ArrayList<>();
+    private final int estimatedLength;
+
+    private EmailTemplate(final String source) {
+        final Matcher matcher = SLOT.matcher(source);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(source.substring(last, matcher.start()));
+            slots.add(matcher.group(1));
+            last = matcher.end();
+        }
+        literals.add(source.substring(last));
+        estimatedLength = source.length() + 64;
+    }
+
+    public static EmailTemplate compile(final String source) {
+        return new EmailTemplate(source);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a slot has no value
+     */
+    public String render(final Map<String, String> values) {
+        final StringBuilder html = new StringBuilder(estimatedLength);
+        for (int i = 0; i < slots.size(); i++) {
+            html.append(literals.get(i));
+            final String value = values.get(slots.get(i));
+            if (value == null) throw new IllegalArgumentException("No value for template slot " + slots.get(i));
+            html.append(HtmlUtils.htmlEscape(value));
+        }
+        return html.append(literals.get(literals.size() - 1)).toString();
+    }
+}
@@ -0,0 +1,146 @@
+package org.chatapp.backend.email;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resend HTTP API. One {@link HttpClient} (and its connection pool) for the application; several
+ * emails go out as one /emails/batch request. Each request carries an Idempotency-Key derived
+ * from the outbox ids, so a retry after a lost response is not delivered twice.
+ */
+@Slf4j
+@Component
+public class ResendClient {
+
+    public enum Outcome {
+        SENT,
+        // Timeouts, connection errors, 429 and 5xx
+        RETRY,
+        // Any other 4xx: the request itself is wrong and would fail again
+        REJECTED,
+    }
+
+    public record Result(Outcome outcome, List<String> providerIds, String error) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Email(String from, List<String> to, String subject, String html, String text,
+                 @JsonProperty("reply_to") String replyTo, Map<String, String> headers, List<Tag> tags) {
+    }
+
+    record Tag(String name, String value) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final URI emailsUri;
+    private final URI batchUri;
+    private final String apiKey;
+    private final String from;
+    private final String supportEmail;
+    private final Duration requestTimeout;
+
+    public ResendClient(final ObjectMapper objectMapper,
+                        @Value("${app.mail.resend.base-url:https://api.resend.com}") final String baseUrl,
+                        @Value("${app.mail.resend.api-key:}") final String apiKey,
+                        @Value("${app.mail.from.name}") final String fromName,
+                        @Value("${app.mail.from.address}") final String fromAddress,
+                        @Value("${app.brand.support-email:}") final String supportEmail,
+                        @Value("${app.mail.resend.connect-timeout:PT5S}") final Duration connectTimeout,
+                        @Value("${app.mail.resend.request-timeout:PT15S}") final Duration requestTimeout) {
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+        final String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.emailsUri = URI.create(base + "/emails");
+        this.batchUri = URI.create(base + "/emails/batch");
+        this.apiKey = apiKey;
+        this.from = fromName != null && fromName.contains("<") ? fromName : fromName + " <" + fromAddress + ">";
+        this.supportEmail = supportEmail;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isBlank();
+    }
+
+    /**
+     * Sends one email, or up to 100 as a batch. A batch is accepted or rejected as a whole.
+     */
+    public Result send(final List<EmailOutbox> emails) {
+        final boolean batch = emails.size() > 1;
+        try {
+            final Object body = batch ? emails.stream().map(this::toEmail).toList() : toEmail(emails.get(0));
+            final HttpRequest request = HttpRequest.newBuilder(batch ? batchUri : emailsUri)
+                    .timeout(requestTimeout)
+                    .header("Authorization", "Bearer " + apiKey)
+                    .header("Content-Type", "application/json")
+                    .header("Idempotency-Key", idempotencyKey(emails))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+            final HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            final int status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                return new Result(Outcome.SENT, providerIds(response.body(), batch), null);
+            }
+            final String error = "HTTP " + status + ": " + response.body();
+            return new Result(status == 429 || status >= 500 ? Outcome.RETRY : Outcome.REJECTED, List.of(), error);
+        } catch (IOException e) {
+            return new Result(Outcome.RETRY, List.of(), e.getClass().getSimpleName() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(Outcome.RETRY, List.of(), "Interrupted");
+        }
+    }
+
+    private Email toEmail(final EmailOutbox outbox) {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("X-App", "MoChat");
+        headers.put("Auto-Submitted", "auto-generated");
+        final boolean hasSupport = supportEmail != null && !supportEmail.isBlank();
+        if (hasSupport) headers.put("List-Unsubscribe", "mailto:" + supportEmail);
+        return new Email(from, List.of(outbox.getRecipient()), outbox.getSubject(), outbox.getHtml(), outbox.getText(),
+                hasSupport ? supportEmail : null, headers, List.of(new Tag("category", outbox.getCategory())));
+    }
+
+    // Single: {"id": ...}; batch: {"data": [{"id": ...}, ...]} in request order
+    private List<String> providerIds(final String body, final boolean batch) {
+        try {
+            final JsonNode root = objectMapper.readTree(body);
+            final List<String> ids = new ArrayList<>();
+            if (batch) {
+                root.path("data").forEach(node -> ids.add(node.path("id").asText(null)));
+            } else {
+                ids.add(root.path("id").asText(null));
+            }
+            return ids;
+        } catch (IOException e) {
+            log.warn("Unreadable Resend response: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static String idempotencyKey(final List<EmailOutbox> emails) {
+        if (emails.size() == 1) return emails.get(0).getId().toString();
+        final StringBuilder ids = new StringBuilder();
+        emails.stream().map(email -> email.getId().toString()).sorted().forEach(ids::append);
+        return UUID.nameUUIDFromBytes(ids.toString().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -86,6 +86,17 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.FORBIDDEN).body(body);
     }
 
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ApiError> handleTooManyRequests(TooManyRequestsException ex, WebRequest req) {
+        ApiError body = build(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), req, null);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+        if (ex.getRetryAfter() != null) {
+            // Whole seconds, rounded up so clients never retry early
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf((ex.getRetryAfter().toMillis() + 999) / 1000));
+        }
+        return response.body(body);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiError> handleAll(Exception ex, WebRequest req) {
         ApiError body = build(HttpStatus.INTERNAL_SERVER_ERROR, "An unexpected error occurred", req, null);
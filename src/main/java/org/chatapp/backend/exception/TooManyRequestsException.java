@@ -0,0 +1,21 @@
+package org.chatapp.backend.exception;
+
+import java.time.Duration;
+
+// Mapped to 429 by GlobalExceptionHandler, with Retry-After when known
+public class TooManyRequestsException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public TooManyRequestsException(final String message) {
+        this(message, null);
+    }
+
+    public TooManyRequestsException(final String message, final Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,335 @@
+package org.chatapp.backend.media;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Avatar uploads, stored by content: the SHA-256 of the uploaded bytes is the avatar key, and each
+ * {@link AvatarSize} is written once as {key}-{pixels}.jpg, center-cropped and re-encoded (which
+ * also drops EXIF metadata). The same picture uploaded twice is stored once, and a key's files never change.
+ *
+ * The request thread only hashes the upload and checks the image header; decoding and scaling
+ * run on the avatar executor. The original is not kept.
+ *
+ * Since keys are shared, files are never deleted when one user moves away from them. An upload that
+ * finds its key already processed claims it by touching the files, and only keys left unclaimed for
+ * a grace period (and unreferenced, which the caller checks) are deleted by {@link #deleteIfIdleSince}.
+ */
+@Slf4j
+@Component
+public class AvatarProcessor {
+
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final Pattern THUMBNAIL = Pattern.compile("([0-9a-f]{64})-\\d+\\.jpg");
+
+    private final Path directory;
+    private final Executor executor;
+    private final long maxPixels;
+    // Held while an upload claims an existing key and while a key is deleted, so the two can't interleave
+    private final Object claims = new Object();
+
+    public AvatarProcessor(@Value("${app.avatars.dir:uploads/avatars}") final String directory,
+                           @Qualifier("avatarExecutor") final Executor executor,
+                           @Value("${app.avatars.max-pixels:40000000}") final long maxPixels) {
+        this.directory = Paths.get(directory);
+        this.executor = executor;
+        this.maxPixels = maxPixels;
+    }
+
+    /** A stored upload: its key, and a future completing once every thumbnail of that key exists. */
+    public record Upload(String key, CompletableFuture<Void> ready) {
+    }
+
+    /**
+     * Hashes and validates an upload, then generates its thumbnails in the background.
+     *
+     * @throws IllegalArgumentException if the file is empty, not a readable image or too large
+     * @throws IllegalStateException if the avatar executor is saturated
+     */
+    public Upload store(final MultipartFile file) {
+        if (file.isEmpty()) throw new IllegalArgumentException("File is empty");
+        final MessageDigest digest = sha256();
+        final Path upload = receive(file, digest);
+        final String key = HexFormat.of().formatHex(digest.digest());
+        try {
+            probe(upload);
+        } catch (RuntimeException e) {
+            deleteQuietly(upload);
+            throw e;
+        }
+
+        synchronized (claims) {
+            if (isProcessed(key)) {
+                touch(key);
+                deleteQuietly(upload);
+                return new Upload(key, CompletableFuture.completedFuture(null));
+            }
+        }
+        try {
+            return new Upload(key, CompletableFuture.runAsync(() -> {
+                try {
+                    writeThumbnails(upload, key);
+                } finally {
+                    deleteQuietly(upload);
+                }
+            }, executor));
+        } catch (TaskRejectedException e) {
+            deleteQuietly(upload);
+            throw new IllegalStateException("Avatar processing is busy, please retry", e);
+        }
+    }
+
+    public boolean isProcessed(final String key) {
+        for (final AvatarSize size : AvatarSize.values()) {
+            if (!Files.exists(directory.resolve(fileName(key, size)))) return false;
+        }
+        return true;
+    }
+
+    // Content keys whose files were neither written nor claimed by an upload since the cutoff
+    public Set<String> keysIdleSince(final Instant cutoff) {
+        final Map<String, Boolean> idle = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                final Matcher matcher = THUMBNAIL.matcher(file.getFileName().toString());
+                if (matcher.matches()) idle.merge(matcher.group(1), modifiedBefore(file, cutoff), Boolean::logicalAnd);
+            });
+        } catch (NoSuchFileException e) {
+            return Set.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return idle.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).collect(Collectors.toSet());
+    }
+
+    /**
+     * Removes every file of a key unless an upload claimed it after the cutoff.
+     * Callers check beforehand that no user references the key.
+     */
+    public boolean deleteIfIdleSince(final String key, final Instant cutoff) {
+        synchronized (claims) {
+            for (final AvatarSize size : AvatarSize.values()) {
+                if (!modifiedBefore(directory.resolve(fileName(key, size)), cutoff)) return false;
+            }
+            for (final AvatarSize size : AvatarSize.values()) {
+                deleteQuietly(directory.resolve(fileName(key, size)));
+            }
+            return true;
+        }
+    }
+
+    public static String fileName(final String key, final AvatarSize size) {
+        return key + "-" + size.pixels() + ".jpg";
+    }
+
+    // Keys written before content addressing are plain file names with an extension
+    public static boolean isContentKey(final String key) {
+        return key.indexOf('.') < 0;
+    }
+
+
+
+    // Copies the upload next to its final location while hashing it, so the bytes are read once
+    private Path receive(final MultipartFile file, final MessageDigest digest) {
+        try {
+            Files.createDirectories(directory);
+            final Path upload = Files.createTempFile(directory, "upload-", ".tmp");
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, upload, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                deleteQuietly(upload);
+                throw e;
+            }
+            return upload;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Reads only the header: format and dimensions, without decoding pixels
+    private void probe(final Path upload) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(upload.toFile())) {
+            final ImageReader reader = readerFor(in);
+            try {
+                reader.setInput(in, true, true);
+                final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) throw new IllegalArgumentException("Image is too large");
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("File is not a readable image");
+        }
+    }
+
+    private void writeThumbnails(final Path upload, final String key) {
+        final BufferedImage square;
+        try (ImageInputStream in = ImageIO.createImageInputStream(upload.toFile())) {
+            final ImageReader reader = readerFor(in);
+            try {
+                reader.setInput(in, true, true);
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                // Subsample large photos while decoding, keeping at least twice the largest thumbnail
+                final int step = Math.max(1, Math.min(width, height) / (AvatarSize.LARGE.pixels() * 2));
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                square = centerSquare(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        BufferedImage current = square;
+        // Largest first, each size scaled from the previous one
+        for (int i = AvatarSize.values().length - 1; i >= 0; i--) {
+            final AvatarSize size = AvatarSize.values()[i];
+            current = scale(current, size.pixels());
+            writeJpeg(current, directory.resolve(fileName(key, size)));
+        }
+        log.debug("Avatar {} processed", key);
+    }
+
+    private static ImageReader readerFor(final ImageInputStream in) {
+        if (in == null) throw new IllegalArgumentException("File is not a readable image");
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) throw new IllegalArgumentException("Unsupported image format");
+        return readers.next();
+    }
+
+    // Opaque RGB: transparent areas become white, as JPEG has no alpha
+    private static BufferedImage centerSquare(final BufferedImage image) {
+        final int side = Math.min(image.getWidth(), image.getHeight());
+        final BufferedImage square = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = square.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, side, side);
+            g.drawImage(image, -(image.getWidth() - side) / 2, -(image.getHeight() - side) / 2, null);
+        } finally {
+            g.dispose();
+        }
+        return square;
+    }
+
+    // Halves repeatedly before the final step, which bilinear alone does poorly on large ratios
+    private static BufferedImage scale(BufferedImage image, final int target) {
+        while (image.getWidth() / 2 >= target) {
+            image = resize(image, image.getWidth() / 2);
+        }
+        return image.getWidth() == target ? image : resize(image, target);
+    }
+
+    private static BufferedImage resize(final BufferedImage image, final int side) {
+        final BufferedImage resized = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, side, side, null);
+        } finally {
+            g.dispose();
+        }
+        return resized;
+    }
+
+    // Written to a temporary file and moved into place, so a key's file is either absent or complete
+    private void writeJpeg(final BufferedImage image, final Path target) {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            final Path temp = Files.createTempFile(directory, "thumb-", ".tmp");
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                final ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private void touch(final String key) {
+        final FileTime now = FileTime.from(Instant.now());
+        for (final AvatarSize size : AvatarSize.values()) {
+            try {
+                Files.setLastModifiedTime(directory.resolve(fileName(key, size)), now);
+            } catch (IOException e) {
+                log.warn("Could not touch avatar {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    // A missing file counts as idle
+    private static boolean modifiedBefore(final Path file, final Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+}
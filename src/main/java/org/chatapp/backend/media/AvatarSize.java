@@ -0,0 +1,20 @@
+package org.chatapp.backend.media;
+
+/**
+ * Fixed square thumbnail sizes generated for every avatar, in pixels.
+ */
+public enum AvatarSize {
+    SMALL(40),
+    MEDIUM(96),
+    LARGE(256);
+
+    private final int pixels;
+
+    AvatarSize(final int pixels) {
+        this.pixels = pixels;
+    }
+
+    public int pixels() {
+        return pixels;
+    }
+}
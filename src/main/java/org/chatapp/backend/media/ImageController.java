@@ -0,0 +1,45 @@
+package org.chatapp.backend.media;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.utils.FileUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Serves uploaded files (replaces the plain /images/** resource handler). Content-addressed files
+ * are cacheable forever; others are revalidated with their ETag. Conditional requests get a 304,
+ * and a single byte range gets a 206. Multiple ranges are answered with the whole file.
+ * Attachments are not served here: they need a room-membership check (see AttachmentFileController).
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/images")
+@Tag(name = "Images", description = "Uploaded images (avatars) with HTTP caching and range support")
+public class ImageController {
+
+    private static final String IMMUTABLE = "private, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    private final ImageService imageService;
+
+
+
+    @GetMapping("/{folder}/{fileName}")
+    @Operation(summary = "Get an uploaded image", description = "Supports If-None-Match / If-Modified-Since (304) and single Range requests (206)")
+    public void getImage(@PathVariable final String folder,
+                         @PathVariable final String fileName,
+                         final HttpServletRequest request,
+                         final HttpServletResponse response) throws IOException {
+        if (FileUtils.FOLDER_ATTACHMENT.equals(folder)) throw new jakarta.persistence.EntityNotFoundException("Image not found");
+        final ImageService.ImageFile file = imageService.find(folder, fileName);
+        imageService.serve(file, file.mediaType(), file.immutable() ? IMMUTABLE : REVALIDATE, request, response);
+    }
+}
@@ -0,0 +1,218 @@
+package org.chatapp.backend.media;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Uploaded images by folder and file name, with what the controller needs for caching headers.
+ * Files up to cache.max-file-size are kept in memory (bounded by cache.max-bytes); larger ones are
+ * streamed from disk, through Tomcat's sendfile when the connector supports it.
+ * Metrics are published as cache "images".
+ */
+@Service
+public class ImageService {
+
+    // Names written by AvatarProcessor: the content hash is the ETag and the file never changes
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("[0-9a-f]{64}(-\\d+)?\\.[a-z]+");
+    private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+
+    // Request attributes of Tomcat's NIO connector (org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Path root;
+    private final long maxCachedFileSize;
+    private final long sendfileMinSize;
+    private final Cache<Path, ImageFile> cache;
+
+    public ImageService(final MeterRegistry meterRegistry,
+                        @Value("${app.images.root:uploads}") final String root,
+                        @Value("${app.images.cache.max-bytes:32MB}") final DataSize maxCacheBytes,
+                        @Value("${app.images.cache.max-file-size:64KB}") final DataSize maxCachedFileSize,
+                        @Value("${app.images.cache.ttl:PT10M}") final Duration ttl,
+                        @Value("${app.images.sendfile-min-size:48KB}") final DataSize sendfileMinSize) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.maxCachedFileSize = maxCachedFileSize.toBytes();
+        this.sendfileMinSize = sendfileMinSize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCacheBytes.toBytes())
+                .weigher((Path path, ImageFile file) -> (int) Math.min(file.length(), Integer.MAX_VALUE))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "images");
+    }
+
+    /**
+     * One servable file. {@code bytes} is set when the whole file is held in memory.
+     */
+    public record ImageFile(Path path, long length, long lastModified, String etag, boolean immutable,
+                            MediaType mediaType, byte[] bytes) {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the folder or file name is not a plain name
+     * @throws jakarta.persistence.EntityNotFoundException if there is no such file
+     */
+    public ImageFile find(final String folder, final String fileName) {
+        if (!SAFE_NAME.matcher(folder).matches() || !SAFE_NAME.matcher(fileName).matches()) {
+            throw new IllegalArgumentException("Invalid image path");
+        }
+        return find(root.resolve(folder).resolve(fileName));
+    }
+
+    /**
+     * A file the caller has already resolved and authorized, e.g. an attachment in its own directory.
+     *
+     * @throws jakarta.persistence.EntityNotFoundException if there is no such file
+     */
+    public ImageFile find(final Path path) {
+        final ImageFile cached = cache.getIfPresent(path);
+        if (cached != null) return cached;
+
+        final ImageFile file = load(path, path.getFileName().toString());
+        if (file.bytes() != null) cache.put(path, file);
+        return file;
+    }
+
+    /**
+     * Sends a file with the given Content-Type and Cache-Control: a 304 when the client's copy is
+     * current, a 206 for a single byte range, the whole file otherwise (also for several ranges).
+     */
+    public void serve(final ImageFile file, final MediaType contentType, final String cacheControl,
+                      final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Sets ETag and Last-Modified, and the 304 status when the client's copy is current
+        if (new ServletWebRequest(request, response).checkNotModified(file.etag(), file.lastModified())) return;
+
+        response.setContentType(contentType.toString());
+        long start = 0;
+        long length = file.length();
+        final HttpRange range = singleRange(request, file);
+        if (range != null) {
+            if (file.length() == 0 || !satisfiable(range, file.length())) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.length());
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.getRangeStart(file.length());
+            length = range.getRangeEnd(file.length()) - start + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + file.length());
+        }
+        response.setContentLengthLong(length);
+        if (HttpMethod.HEAD.matches(request.getMethod())) return;
+        write(file, start, length, request, response);
+    }
+
+    /**
+     * Writes bytes [start, start + length) of the file as the response body. Headers, including
+     * Content-Length, must already be set.
+     */
+    public void write(final ImageFile file, final long start, final long length,
+                      final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        if (length == 0) return;
+        if (file.bytes() != null) {
+            response.getOutputStream().write(file.bytes(), (int) start, (int) length);
+            return;
+        }
+        // Zero-copy: the connector writes the file region itself once the request completes
+        if (length >= sendfileMinSize && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.path().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            final OutputStream out = response.getOutputStream();
+            final WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            final long end = start + length;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+    }
+
+    // A malformed header, several ranges or a stale If-Range all mean "send the whole file"
+    private static HttpRange singleRange(final HttpServletRequest request, final ImageFile file) {
+        final String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) return null;
+        final String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(file.etag())) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) return null;
+            try {
+                if (file.lastModified() / 1000 > request.getDateHeader(HttpHeaders.IF_RANGE) / 1000) return null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        try {
+            final List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Starts past the end, or a zero-length suffix ("bytes=-0")
+    private static boolean satisfiable(final HttpRange range, final long length) {
+        try {
+            return range.getRangeEnd(length) >= range.getRangeStart(length);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private ImageFile load(final Path path, final String fileName) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) throw new jakarta.persistence.EntityNotFoundException("Image not found");
+            final long length = attributes.size();
+            final long lastModified = attributes.lastModifiedTime().toMillis();
+            final boolean immutable = CONTENT_ADDRESSED.matcher(fileName).matches();
+            final String etag = immutable
+                    ? "\"" + fileName.substring(0, fileName.lastIndexOf('.')) + "\""
+                    : "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+            final MediaType mediaType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            final byte[] bytes = length <= maxCachedFileSize ? Files.readAllBytes(path) : null;
+            return new ImageFile(path, bytes == null ? length : bytes.length, lastModified, etag, immutable, mediaType, bytes);
+        } catch (NoSuchFileException e) {
+            throw new jakarta.persistence.EntityNotFoundException("Image not found");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
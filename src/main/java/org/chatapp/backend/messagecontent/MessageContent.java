@@ -14,7 +14,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "message_content")
+@Table(name = "message_content", indexes = {
+        // Keyset pagination over a room's history: (room, dateSent, id)
+        @Index(name = "idx_message_content_room_sent", columnList = "message_room_id, date_sent, id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -0,0 +1,82 @@
+package org.chatapp.backend.messagecontent;
+
+import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.messageroom.MessageRoomRepository;
+import org.chatapp.backend.messageroommember.MessageRoomMemberRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Persists already-delivered messages (id and dateSent assigned by the sender path) in one
+ * transaction: a JDBC batch insert, one activity-summary update per room and one unread update.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageContentBatchWriter {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO message_content (id, content, date_sent, message_type, message_room_id, username)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String DEAD_LETTER_SQL = """
+            INSERT INTO message_dead_letter (id, content, date_sent, message_type, message_room_id, username, error, failed_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageRoomRepository messageRoomRepository;
+    private final MessageRoomMemberRepository messageRoomMemberRepository;
+
+    @Transactional
+    public void write(final List<MessageContentDTO> messages) {
+        if (messages.isEmpty()) return;
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), (ps, m) -> {
+            ps.setObject(1, m.getId());
+            ps.setString(2, m.getContent());
+            ps.setObject(3, m.getDateSent());
+            ps.setString(4, m.getMessageType() == null ? null : m.getMessageType().name());
+            ps.setObject(5, m.getMessageRoomId());
+            ps.setString(6, m.getSender());
+        });
+
+        final Map<UUID, List<MessageContentDTO>> byRoom = messages.stream()
+                .collect(Collectors.groupingBy(MessageContentDTO::getMessageRoomId));
+        byRoom.forEach((roomId, roomMessages) -> {
+            final MessageContentDTO latest = roomMessages.stream()
+                    .max(Comparator.comparing(MessageContentDTO::getDateSent))
+                    .orElseThrow();
+            messageRoomRepository.recordActivity(roomId, latest.getId(), latest.getDateSent(), roomMessages.size());
+        });
+
+        messageRoomMemberRepository.incrementUnreadForMessages(byRoom.keySet(),
+                messages.stream().map(MessageContentDTO::getId).toList());
+    }
+
+    // Parks a message whose row is rejected; a repeat for the same id is ignored
+    public void deadLetter(final MessageContentDTO message, final String error) {
+        try {
+            jdbcTemplate.update(DEAD_LETTER_SQL,
+                    message.getId(),
+                    message.getContent(),
+                    message.getDateSent(),
+                    message.getMessageType() == null ? null : message.getMessageType().name(),
+                    message.getMessageRoomId(),
+                    message.getSender(),
+                    error == null || error.length() <= 1000 ? error : error.substring(0, 1000),
+                    LocalDateTime.now());
+        } catch (DuplicateKeyException e) {
+            // Already parked by an earlier attempt
+        }
+    }
+}
@@ -4,13 +4,10 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.chatapp.backend.messageroom.MessageRoomService;
-import org.chatapp.backend.messageroommember.MessageRoomMemberDTO;
-import org.chatapp.backend.messageroommember.MessageRoomMemberService;
 import org.chatapp.backend.user.UserDTO;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -23,31 +20,37 @@ import java.util.UUID;
 public class MessageContentController {
 
     private final MessageContentService messageContentService;
-    private final MessageRoomMemberService messageRoomMemberService;
-    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final MessageSendService messageSendService;
 
 
 
     @GetMapping("/{roomId}")
-    @Operation(summary = "List messages by room")
+    @Operation(summary = "List messages by room", description = "Legacy mode: returns only the latest messages (capped by app.messages.history.legacy-limit). Use /{roomId}/history to page through the full history")
     public ResponseEntity<List<MessageContentDTO>> getMessagesByRoomId(@PathVariable final UUID roomId) {
         return ResponseEntity.ok(messageContentService.getMessagesByRoomId(roomId));
     }
 
 
 
+    @GetMapping("/{roomId}/history")
+    @Operation(summary = "Page through messages by room", description = "Keyset pagination. Without a cursor returns the latest page; pass 'before' to load older or 'after' to load newer messages. Items are always oldest first")
+    public ResponseEntity<MessageContentPageDTO> getMessageHistory(@PathVariable final UUID roomId,
+                                                                   @RequestParam(required = false) final String before,
+                                                                   @RequestParam(required = false) final String after,
+                                                                   @RequestParam(required = false) final Integer limit) {
+        return ResponseEntity.ok(messageContentService.getMessageHistory(roomId, before, after, limit));
+    }
+
+
+
     @MessageMapping("/send-message")
-    @Operation(summary = "WebSocket: send a message", description = "Saves the message then sends it to each room member’s /user/queue/messages")
+    @Operation(summary = "WebSocket: send a message", description = "Saves the message then sends it to each room member’s /user/queue/messages. With app.messages.pipeline.enabled the message is delivered first and persisted in batches. On a multi-node deployment the send is handled by the node owning the room")
     public void sendMessage(@RequestBody MessageContentDTO messageContentDTO) {
-        final MessageContentDTO saved = messageContentService.save(messageContentDTO);
-        final List<MessageRoomMemberDTO> members = messageRoomMemberService.findByMessageRoomId(messageContentDTO.getMessageRoomId());
-        members.forEach(member -> {
-            simpMessagingTemplate.convertAndSendToUser(
-                    member.getUsername(),
-                    "/queue/messages",
-                    saved
-            );
-        });
+        // Attachment messages are posted by AttachmentService once the file is verified
+        if (messageContentDTO.getMessageType() == MessageType.IMAGE || messageContentDTO.getMessageType() == MessageType.FILE) {
+            throw new IllegalArgumentException("Send attachments through the attachments upload API");
+        }
+        messageSendService.send(messageContentDTO);
     }
 
 }
@@ -2,6 +2,7 @@ package org.chatapp.backend.messagecontent;
 
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.media.AvatarSize;
 import org.chatapp.backend.messageroom.MessageRoom;
 import org.chatapp.backend.messageroom.MessageRoomRepository;
 import org.chatapp.backend.user.User;
@@ -23,7 +24,7 @@ public class MessageContentMapper {
         messageContentDTO.setMessageType(messageContent.getMessageType());
         messageContentDTO.setMessageRoomId(messageContent.getMessageRoom().getId());
         messageContentDTO.setSender(messageContent.getUser().getUsername());
-        messageContentDTO.setAvatarUrl(messageContent.getUser().getAvatarUrl());
+        messageContentDTO.setAvatarUrl(messageContent.getUser().getAvatarUrl(AvatarSize.SMALL));
         return messageContentDTO;
     }
 
@@ -0,0 +1,17 @@
+package org.chatapp.backend.messagecontent;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MessageContentPageDTO {
+    // Messages in chronological order (oldest first)
+    private List<MessageContentDTO> items;
+    // Pass as ?before= to load older messages; null once the start of the room is reached
+    private String before;
+    // Pass as ?after= to load newer messages (also usable to poll for new ones)
+    private String after;
+    // Whether more messages exist in the requested direction
+    private boolean hasMore;
+}
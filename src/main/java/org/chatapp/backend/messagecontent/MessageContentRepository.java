@@ -1,9 +1,11 @@
 package org.chatapp.backend.messagecontent;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -11,17 +13,40 @@ import java.util.UUID;
 @Repository
 public interface MessageContentRepository extends JpaRepository<MessageContent, UUID> {
     Optional<MessageContent> findTopByMessageRoomIdOrderByDateSentDesc(final UUID messageRoomId);
-    List<MessageContent> findByMessageRoomIdOrderByDateSent(final UUID messageRoomId);
+
+    // Keyset pages over (dateSent, id), served by idx_message_content_room_sent
+
+    @Query("""
+        SELECT messageContent
+        FROM MessageContent messageContent
+        JOIN FETCH messageContent.user
+        JOIN FETCH messageContent.messageRoom
+        WHERE messageContent.messageRoom.id = :roomId
+        ORDER BY messageContent.dateSent DESC, messageContent.id DESC
+    """)
+    List<MessageContent> findLatestPage(final UUID roomId, final Limit limit);
+
+    @Query("""
+        SELECT messageContent
+        FROM MessageContent messageContent
+        JOIN FETCH messageContent.user
+        JOIN FETCH messageContent.messageRoom
+        WHERE messageContent.messageRoom.id = :roomId
+            AND (messageContent.dateSent < :dateSent
+                OR (messageContent.dateSent = :dateSent AND messageContent.id < :id))
+        ORDER BY messageContent.dateSent DESC, messageContent.id DESC
+    """)
+    List<MessageContent> findPageBefore(final UUID roomId, final LocalDateTime dateSent, final UUID id, final Limit limit);
 
     @Query("""
-        SELECT COUNT(*)
+        SELECT messageContent
         FROM MessageContent messageContent
-        JOIN MessageRoomMember messageRoomMember
-            ON messageContent.messageRoom = messageRoomMember.messageRoom
-        WHERE messageRoomMember.user.username = :username
-            AND messageContent.messageRoom.id = :roomId
-            AND messageContent.user.username <> :username
-            AND messageContent.dateSent > messageRoomMember.lastSeen
+        JOIN FETCH messageContent.user
+        JOIN FETCH messageContent.messageRoom
+        WHERE messageContent.messageRoom.id = :roomId
+            AND (messageContent.dateSent > :dateSent
+                OR (messageContent.dateSent = :dateSent AND messageContent.id > :id))
+        ORDER BY messageContent.dateSent ASC, messageContent.id ASC
     """)
-    Long countUnseenMessage(final UUID roomId, final String username);
+    List<MessageContent> findPageAfter(final UUID roomId, final LocalDateTime dateSent, final UUID id, final Limit limit);
 }
@@ -1,8 +1,15 @@
 package org.chatapp.backend.messagecontent;
 
 import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.messageroom.MessageRoomRepository;
+import org.chatapp.backend.messageroommember.MessageRoomMemberRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -13,6 +20,17 @@ public class MessageContentService {
 
     private final MessageContentRepository messageContentRepository;
     private final MessageContentMapper messageContentMapper;
+    private final MessageRoomRepository messageRoomRepository;
+    private final MessageRoomMemberRepository messageRoomMemberRepository;
+
+    @Value("${app.messages.history.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.messages.history.max-page-size:200}")
+    private int maxPageSize;
+
+    @Value("${app.messages.history.legacy-limit:1000}")
+    private int legacyLimit;
 
 
 
@@ -24,24 +42,73 @@ public class MessageContentService {
 
 
 
+    // Legacy full-history read: capped to the latest messages, oldest first
     public List<MessageContentDTO> getMessagesByRoomId(final UUID roomId) {
-        return messageContentRepository.findByMessageRoomIdOrderByDateSent(roomId)
-                .stream()
+        final List<MessageContent> latest = new ArrayList<>(messageContentRepository.findLatestPage(roomId, Limit.of(legacyLimit)));
+        Collections.reverse(latest);
+        return latest.stream()
                 .map(m -> messageContentMapper.toDTO(m, new MessageContentDTO()))
                 .toList();
     }
 
 
 
+    public MessageContentPageDTO getMessageHistory(final UUID roomId, final String before, final String after, final Integer limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Only one of 'before' or 'after' can be provided");
+        }
+        final int pageSize = limit == null ? defaultPageSize : Math.min(Math.max(limit, 1), maxPageSize);
+        // Fetch one extra row to learn whether another page exists in that direction
+        final Limit probe = Limit.of(pageSize + 1);
+
+        final List<MessageContent> rows;
+        if (after != null) {
+            final MessageCursor cursor = MessageCursor.decode(after);
+            rows = messageContentRepository.findPageAfter(roomId, cursor.dateSent(), cursor.id(), probe);
+        } else if (before != null) {
+            final MessageCursor cursor = MessageCursor.decode(before);
+            rows = messageContentRepository.findPageBefore(roomId, cursor.dateSent(), cursor.id(), probe);
+        } else {
+            rows = messageContentRepository.findLatestPage(roomId, probe);
+        }
+
+        final boolean hasMore = rows.size() > pageSize;
+        final List<MessageContentDTO> items = rows.stream()
+                .limit(pageSize)
+                .map(m -> messageContentMapper.toDTO(m, new MessageContentDTO()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (after == null) {
+            // Older pages are read newest-first; always hand them back in chronological order
+            Collections.reverse(items);
+        }
+
+        final MessageContentPageDTO page = new MessageContentPageDTO();
+        page.setItems(items);
+        page.setHasMore(hasMore);
+        if (items.isEmpty()) {
+            page.setAfter(after);
+            return page;
+        }
+        final boolean hasOlder = after != null || hasMore;
+        page.setBefore(hasOlder ? MessageCursor.of(items.get(0)).encode() : null);
+        page.setAfter(MessageCursor.of(items.get(items.size() - 1)).encode());
+        return page;
+    }
+
+
+
+    @Transactional
     public MessageContentDTO save(final MessageContentDTO messageContentDTO) {
         final MessageContent messageContent = messageContentRepository.save(messageContentMapper.toEntity(messageContentDTO, new MessageContent()));
+        messageRoomRepository.recordActivity(messageContent.getMessageRoom().getId(), messageContent.getId(), messageContent.getDateSent(), 1);
+        messageRoomMemberRepository.incrementUnread(messageContent.getMessageRoom().getId(), messageContent.getUser().getUsername(), 1);
         return messageContentMapper.toDTO(messageContent, new MessageContentDTO());
     }
 
 
 
     public Long countUnseenMessage(final UUID roomId, final String username) {
-        return messageContentRepository.countUnseenMessage(roomId, username);
+        return messageRoomMemberRepository.findUnreadCount(roomId, username).orElse(0L);
     }
 
 }
@@ -0,0 +1,36 @@
+package org.chatapp.backend.messagecontent;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque keyset cursor over a room's history. A message is identified by (dateSent, id),
+ * which is unique and matches the ordering of {@code idx_message_content_room_sent}.
+ */
+public record MessageCursor(LocalDateTime dateSent, UUID id) {
+
+    private static final char SEPARATOR = '|';
+
+    public static MessageCursor of(final MessageContentDTO message) {
+        return new MessageCursor(message.getDateSent(), message.getId());
+    }
+
+    public String encode() {
+        final String raw = dateSent.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(final String value) {
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            final int idx = raw.indexOf(SEPARATOR);
+            if (idx < 0) throw new IllegalArgumentException("Invalid cursor");
+            return new MessageCursor(LocalDateTime.parse(raw.substring(0, idx)), UUID.fromString(raw.substring(idx + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
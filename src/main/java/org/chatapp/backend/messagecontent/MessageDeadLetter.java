@@ -0,0 +1,46 @@
+package org.chatapp.backend.messagecontent;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A delivered message the write-behind pipeline could not store because the row itself is
+ * rejected (constraint violation), kept with the error for inspection and manual replay.
+ * Written by {@link MessageContentBatchWriter#deadLetter}; transient failures are retried instead.
+ */
+@Entity
+@Table(name = "message_dead_letter")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class MessageDeadLetter {
+    // Same id the message was delivered with
+    @Id
+    private UUID id;
+
+    @Column(columnDefinition = "TEXT")
+    private String content;
+
+    private LocalDateTime dateSent;
+
+    @Enumerated(EnumType.STRING)
+    private MessageType messageType;
+
+    // No foreign keys: the room or sender may be the reason the row was rejected
+    private UUID messageRoomId;
+
+    private String username;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(nullable = false)
+    private LocalDateTime failedAt;
+}
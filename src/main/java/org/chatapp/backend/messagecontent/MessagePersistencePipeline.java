@@ -0,0 +1,261 @@
+package org.chatapp.backend.messagecontent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for sent messages (app.messages.pipeline.enabled=true).
+ *
+ * Messages are hashed by room onto a fixed number of shards; each shard is a bounded queue with a
+ * single writer thread, so a room's messages are written in send order. A writer flushes when it
+ * has batch-size messages or flush-interval has passed since the first one. A full queue blocks
+ * the sender for up to offer-timeout, then the send fails. A failed write is retried with backoff
+ * (capped at retry-backoff-max) until it succeeds, so while the database is down the queues fill
+ * and push back on senders instead of messages being lost. Only rows the database rejects
+ * (constraint violations) are set aside, in message_dead_letter. On shutdown the queues are
+ * drained before the data source goes away (stops after the web server and broker).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.messages.pipeline.enabled", havingValue = "true")
+public class MessagePersistencePipeline implements SmartLifecycle {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    private final MessageContentBatchWriter batchWriter;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Duration offerTimeout;
+    private final Duration drainTimeout;
+    private final long maxBackoffMillis;
+    private final List<BlockingQueue<MessageContentDTO>> shards = new ArrayList<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+    private final Counter retriedCounter;
+    private final Counter deadLetterCounter;
+
+    private volatile boolean accepting;
+    private volatile boolean running;
+    private volatile long drainDeadline;
+
+    public MessagePersistencePipeline(final MessageContentBatchWriter batchWriter,
+                                      final MeterRegistry meterRegistry,
+                                      @Value("${app.messages.pipeline.shards:4}") final int shardCount,
+                                      @Value("${app.messages.pipeline.queue-capacity:10000}") final int queueCapacity,
+                                      @Value("${app.messages.pipeline.batch-size:200}") final int batchSize,
+                                      @Value("${app.messages.pipeline.flush-interval:PT0.05S}") final Duration flushInterval,
+                                      @Value("${app.messages.pipeline.offer-timeout:PT2S}") final Duration offerTimeout,
+                                      @Value("${app.messages.pipeline.drain-timeout:PT30S}") final Duration drainTimeout,
+                                      @Value("${app.messages.pipeline.retry-backoff-max:PT5S}") final Duration retryBackoffMax) {
+        this.batchWriter = batchWriter;
+        this.batchSize = Math.max(batchSize, 1);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeout = offerTimeout;
+        this.drainTimeout = drainTimeout;
+        this.maxBackoffMillis = Math.max(retryBackoffMax.toMillis(), INITIAL_BACKOFF_MILLIS);
+        for (int i = 0; i < Math.max(shardCount, 1); i++) {
+            shards.add(new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)));
+        }
+        Gauge.builder("chat.pipeline.queue.depth", shards, qs -> qs.stream().mapToInt(BlockingQueue::size).sum())
+                .description("Messages delivered but not yet persisted")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("chat.pipeline.batch.size")
+                .description("Messages per persisted batch")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.pipeline.flush")
+                .description("Time to persist one batch")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("chat.pipeline.retried")
+                .description("Writes retried after a transient failure")
+                .register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("chat.pipeline.dead.letters")
+                .description("Messages rejected by the database and parked in message_dead_letter")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a message for persistence, blocking while its shard is full.
+     *
+     * @throws IllegalStateException if the shard stays full for offer-timeout
+     */
+    public void enqueue(final MessageContentDTO message) {
+        if (!accepting) {
+            // Stopped (or not started yet): nothing will drain the queue, write through instead
+            batchWriter.write(List.of(message));
+            return;
+        }
+        final BlockingQueue<MessageContentDTO> shard = shards.get(Math.floorMod(message.getMessageRoomId().hashCode(), shards.size()));
+        try {
+            if (!shard.offer(message, offerTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Message queue is full, please retry");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing message", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        accepting = true;
+        running = true;
+        for (int i = 0; i < shards.size(); i++) {
+            final BlockingQueue<MessageContentDTO> shard = shards.get(i);
+            final Thread writer = new Thread(() -> runWriter(shard), "message-writer-" + i);
+            writer.setDaemon(false);
+            writer.start();
+            writers.add(writer);
+        }
+        log.info("Message persistence pipeline started with {} shards", shards.size());
+    }
+
+    @Override
+    public void stop() {
+        final long deadline = System.nanoTime() + drainTimeout.toNanos();
+        drainDeadline = deadline;
+        accepting = false;
+        running = false;
+        for (final Thread writer : writers) {
+            try {
+                writer.join(Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Sends that raced with stop() may have landed after their writer exited
+        if (writers.stream().noneMatch(Thread::isAlive)) {
+            for (final BlockingQueue<MessageContentDTO> shard : shards) {
+                final List<MessageContentDTO> leftover = new ArrayList<>();
+                shard.drainTo(leftover);
+                if (!leftover.isEmpty()) flush(leftover);
+            }
+        }
+        final int left = shards.stream().mapToInt(BlockingQueue::size).sum();
+        if (left > 0) {
+            log.error("Message pipeline stopped with {} unpersisted messages after {}", left, drainTimeout);
+        } else {
+            log.info("Message persistence pipeline drained");
+        }
+        writers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stops after the web server (graceful shutdown) and the STOMP broker, so no sends arrive mid-drain
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void runWriter(final BlockingQueue<MessageContentDTO> shard) {
+        final List<MessageContentDTO> batch = new ArrayList<>(batchSize);
+        while (running || !shard.isEmpty()) {
+            try {
+                final MessageContentDTO first = shard.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                final long flushAt = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    if (shard.drainTo(batch, batchSize - batch.size()) > 0) continue;
+                    final long wait = flushAt - System.nanoTime();
+                    if (wait <= 0 || !running) break;
+                    final MessageContentDTO next = shard.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Keep draining; stop() decides how long we get
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(final List<MessageContentDTO> batch) {
+        batchSizeSummary.record(batch.size());
+        try {
+            retry(() -> flushTimer.record(() -> batchWriter.write(batch)), batch);
+            return;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Batch of {} messages rejected, writing them one by one: {}", batch.size(), e.getMessage());
+        }
+        // Isolate the bad row(s) so one message cannot hold back the rest of the shard
+        for (final MessageContentDTO message : batch) {
+            try {
+                retry(() -> batchWriter.write(List.of(message)), List.of(message));
+            } catch (DuplicateKeyException e) {
+                // Stored by an earlier attempt whose commit we did not hear back from
+            } catch (DataIntegrityViolationException e) {
+                park(message, e);
+            }
+        }
+    }
+
+    private void park(final MessageContentDTO message, final DataIntegrityViolationException rejection) {
+        log.error("Parking message {} in room {} in message_dead_letter: {}", message.getId(), message.getMessageRoomId(), rejection.getMessage());
+        try {
+            retry(() -> batchWriter.deadLetter(message, rejection.getMostSpecificCause().getMessage()), List.of(message));
+            deadLetterCounter.increment();
+        } catch (DataIntegrityViolationException e) {
+            log.error("Dropping message {} in room {}: the dead letter was rejected too: {}", message.getId(), message.getMessageRoomId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a write until it succeeds, backing off between transient failures. Does not give up
+     * while the pipeline runs; after stop() only until the drain deadline.
+     *
+     * @throws DataIntegrityViolationException at once if the database rejects the rows
+     */
+    private void retry(final Runnable write, final List<MessageContentDTO> messages) {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write.run();
+                return;
+            } catch (DataIntegrityViolationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                if (!running && System.nanoTime() - drainDeadline > 0) {
+                    log.error("Giving up on {} messages at shutdown after {} attempts: {}", messages.size(), attempt, e.getMessage());
+                    return;
+                }
+                log.warn("Persisting {} messages failed (attempt {}), retrying in {} ms: {}", messages.size(), attempt, backoff, e.getMessage());
+                retriedCounter.increment();
+                sleepQuietly(backoff);
+                backoff = Math.min(backoff * 2, maxBackoffMillis);
+            }
+        }
+    }
+
+    private static void sleepQuietly(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // Keep retrying; stop() decides how long we get
+        }
+    }
+}
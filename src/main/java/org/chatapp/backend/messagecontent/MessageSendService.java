@@ -0,0 +1,237 @@
+package org.chatapp.backend.messagecontent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.chatapp.backend.cluster.ClusterMembership;
+import org.chatapp.backend.cluster.RoomAffinityExecutor;
+import org.chatapp.backend.delivery.MessageFanout;
+import org.chatapp.backend.media.AvatarSize;
+import org.chatapp.backend.messageroommember.RoomRoster;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.utils.FileUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Send path for /app/send-message. By default the message is saved, then delivered. With the
+ * persistence pipeline enabled it is delivered as soon as it is queued, and written in batches.
+ *
+ * With several nodes each room is owned by one of them (consistent hashing over live nodes). A
+ * send received elsewhere is forwarded to the owner, which persists and fans it out, so a room's
+ * roster, writes and ordering stay on one node. Every send a node handles runs on its room's
+ * worker, whether it arrived locally or was forwarded, so a room's sends are handled one at a
+ * time in arrival order. The caller waits for the outcome: a forwarded send is answered by the
+ * owner once handled, or with the reason it failed. If the owner cannot be reached the receiving
+ * node handles the send itself; if it was reached but does not answer within
+ * app.cluster.forward.timeout the send fails, as it may or may not have gone through.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageSendService {
+
+    private static final String MEMBER_QUEUE = "/queue/messages";
+    private static final Duration ROOM_SEND_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final MessageContentService messageContentService;
+    private final RoomRosterCache roomRosterCache;
+    private final MessageFanout messageFanout;
+    private final Optional<MessagePersistencePipeline> persistencePipeline;
+    private final ClusterBus clusterBus;
+    private final ClusterMembership clusterMembership;
+    private final RoomAffinityExecutor roomSendExecutor;
+    private final ObjectMapper objectMapper;
+    private final Map<UUID, CompletableFuture<ClusterEnvelope>> pendingForwards = new ConcurrentHashMap<>();
+
+    @Value("${app.cluster.forward.timeout:PT5S}")
+    private Duration forwardTimeout;
+
+
+
+    @PostConstruct
+    void subscribeForwardedSends() {
+        clusterBus.subscribe(ClusterEnvelope.Kind.FORWARD, this::acceptForwarded);
+        clusterBus.subscribe(ClusterEnvelope.Kind.FORWARD_RESULT, this::completeForward);
+    }
+
+
+
+    @PreDestroy
+    void drainRoomSends() {
+        roomSendExecutor.shutdown(ROOM_SEND_DRAIN_TIMEOUT);
+    }
+
+
+
+    /**
+     * Handles the send here or on the room's owner and returns once it is delivered.
+     *
+     * @throws IllegalArgumentException if the message is invalid
+     * @throws EntityNotFoundException if the sender is not a member of the room
+     * @throws IllegalStateException if the room's node is overloaded or did not answer in time
+     */
+    public void send(final MessageContentDTO messageContentDTO) {
+        final UUID roomId = messageContentDTO.getMessageRoomId();
+        if (roomId == null || messageContentDTO.getSender() == null) {
+            throw new IllegalArgumentException("Room and sender are required");
+        }
+        if (!clusterMembership.isLocal(roomId) && forward(clusterMembership.ownerOf(roomId), messageContentDTO)) {
+            return;
+        }
+        try {
+            sendOnRoomWorker(messageContentDTO).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+
+
+    // Hands the send to the owner and waits for its answer; false if the owner could not be reached
+    private boolean forward(final String owner, final MessageContentDTO messageContentDTO) {
+        final UUID requestId = UUID.randomUUID();
+        final CompletableFuture<ClusterEnvelope> answer = new CompletableFuture<>();
+        pendingForwards.put(requestId, answer);
+        try {
+            if (!clusterBus.send(owner, ClusterEnvelope.forward(clusterBus.nodeId(), requestId, messageContentDTO.getMessageRoomId(),
+                    objectMapper.writeValueAsBytes(messageContentDTO)))) {
+                return false;
+            }
+            final ClusterEnvelope result = answer.get(forwardTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            switch (result.forwardOutcome()) {
+                case HANDLED -> {
+                    return true;
+                }
+                case REJECTED -> throw new IllegalArgumentException(result.forwardError());
+                case NOT_FOUND -> throw new EntityNotFoundException(result.forwardError());
+                default -> throw new IllegalStateException(result.forwardError());
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Message cannot be serialized", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("The message was not confirmed in time, it may not have been sent");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending message", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Message could not be sent", e.getCause());
+        } finally {
+            pendingForwards.remove(requestId);
+        }
+    }
+
+
+
+    private void completeForward(final ClusterEnvelope result) {
+        // Nothing waits for an answer that arrives after its timeout
+        final CompletableFuture<ClusterEnvelope> answer = pendingForwards.get(result.forwardId());
+        if (answer != null) answer.complete(result);
+    }
+
+
+
+    private void acceptForwarded(final ClusterEnvelope envelope) {
+        final MessageContentDTO messageContentDTO;
+        try {
+            messageContentDTO = objectMapper.readValue(envelope.forwardedMessage(), MessageContentDTO.class);
+        } catch (IOException e) {
+            answer(envelope, ClusterEnvelope.ForwardOutcome.REJECTED, "Message cannot be read: " + e.getMessage());
+            return;
+        }
+        if (messageContentDTO.getMessageRoomId() == null || messageContentDTO.getSender() == null) {
+            answer(envelope, ClusterEnvelope.ForwardOutcome.REJECTED, "Room and sender are required");
+            return;
+        }
+        try {
+            sendOnRoomWorker(messageContentDTO).whenComplete((ignored, failure) -> {
+                if (failure == null) {
+                    answer(envelope, ClusterEnvelope.ForwardOutcome.HANDLED, null);
+                } else {
+                    final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    answer(envelope, outcomeOf(cause), cause.getMessage());
+                }
+            });
+        } catch (IllegalStateException e) {
+            answer(envelope, ClusterEnvelope.ForwardOutcome.UNAVAILABLE, e.getMessage());
+        }
+    }
+
+
+
+    private void answer(final ClusterEnvelope forward, final ClusterEnvelope.ForwardOutcome outcome, final String error) {
+        if (outcome != ClusterEnvelope.ForwardOutcome.HANDLED) {
+            log.debug("Message forwarded from {} to room {} not sent: {}", forward.originNode(), forward.destination(), error);
+        }
+        if (!clusterBus.send(forward.originNode(), ClusterEnvelope.forwardResult(clusterBus.nodeId(), forward.forwardId(), outcome, error))) {
+            log.warn("Cannot answer message forwarded from {} to room {}: node unreachable", forward.originNode(), forward.destination());
+        }
+    }
+
+
+
+    private static ClusterEnvelope.ForwardOutcome outcomeOf(final Throwable failure) {
+        if (failure instanceof EntityNotFoundException) return ClusterEnvelope.ForwardOutcome.NOT_FOUND;
+        if (failure instanceof IllegalArgumentException) return ClusterEnvelope.ForwardOutcome.REJECTED;
+        return ClusterEnvelope.ForwardOutcome.UNAVAILABLE;
+    }
+
+
+
+    /**
+     * Queues the send on its room's worker.
+     *
+     * @throws IllegalStateException if the room's worker queue is full
+     */
+    private CompletableFuture<Void> sendOnRoomWorker(final MessageContentDTO messageContentDTO) {
+        return CompletableFuture.runAsync(() -> sendLocal(messageContentDTO),
+                task -> roomSendExecutor.execute(messageContentDTO.getMessageRoomId(), task));
+    }
+
+
+
+    private void sendLocal(final MessageContentDTO messageContentDTO) {
+        if (persistencePipeline.isEmpty()) {
+            final MessageContentDTO saved = messageContentService.save(messageContentDTO);
+            messageFanout.sendToUsers(roomRosterCache.get(saved.getMessageRoomId()).usernames(), MEMBER_QUEUE, saved);
+            return;
+        }
+
+        // Membership from the roster replaces the room and user lookups, and guarantees the rows the batch insert references
+        final RoomRoster roster = roomRosterCache.get(messageContentDTO.getMessageRoomId());
+        final RoomRoster.Entry sender = roster.member(messageContentDTO.getSender())
+                .orElseThrow(() -> new EntityNotFoundException("Sender is not a member of this room"));
+
+        final MessageContentDTO accepted = new MessageContentDTO();
+        accepted.setId(UUID.randomUUID());
+        accepted.setContent(messageContentDTO.getContent());
+        accepted.setDateSent(LocalDateTime.now());
+        accepted.setMessageType(messageContentDTO.getMessageType());
+        accepted.setMessageRoomId(roster.roomId());
+        accepted.setSender(sender.username());
+        accepted.setAvatarUrl(sender.avatarKey() == null ? null : FileUtils.getAvatarUrl(sender.avatarKey(), AvatarSize.SMALL));
+
+        persistencePipeline.get().enqueue(accepted);
+        messageFanout.sendToUsers(roster.usernames(), MEMBER_QUEUE, accepted);
+    }
+
+}
@@ -2,6 +2,9 @@ package org.chatapp.backend.messagecontent;
 
 public enum MessageType {
     TEXT,
+    // Content is the attachment URL (see AttachmentService)
+    IMAGE,
+    FILE,
     NOTIFICATION_CREATE_ROOM,
     NOTIFICATION_ADD_MEMBER,
     NOTIFICATION_REMOVE_MEMBER,
@@ -0,0 +1,34 @@
+package org.chatapp.backend.messagecontent;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Hibernate's enum CHECK constraint is created once and never widened by ddl-auto=update, so
+// databases created before IMAGE/FILE existed would reject them; a no-op once dropped
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageTypeConstraintMigration implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        final String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) return;
+        final Integer stale = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM pg_constraint
+                WHERE conname = 'message_content_message_type_check'
+                  AND pg_get_constraintdef(oid) NOT LIKE '%IMAGE%'
+                """, Integer.class);
+        if (stale != null && stale > 0) {
+            jdbcTemplate.execute("ALTER TABLE message_content DROP CONSTRAINT message_content_message_type_check");
+            log.info("Dropped outdated message_type check constraint on message_content");
+        }
+    }
+}
@@ -16,7 +16,10 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "message_room")
+@Table(name = "message_room", indexes = {
+        @Index(name = "idx_message_room_last_activity", columnList = "last_activity_at"),
+        @Index(name = "uk_message_room_member_key", columnList = "member_key", unique = true)
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -31,6 +34,10 @@ public class MessageRoom {
 
     private Boolean isGroup;
 
+    // Canonical key of a direct room's member set (see MessageRoomKeys); null for groups
+    @Column(length = 64)
+    private String memberKey;
+
     @CreatedDate
     private LocalDateTime createdDate;
 
@@ -38,6 +45,13 @@ public class MessageRoom {
     @JoinColumn(name = "createdBy")
     private User createdBy;
 
+    // Activity summary, maintained by MessageContentService.save so the inbox never aggregates messages
+    private UUID lastMessageId;
+
+    private LocalDateTime lastActivityAt;
+
+    private Long messageCount;
+
     @OneToMany(mappedBy = "messageRoom", cascade = CascadeType.ALL)
     private List<MessageRoomMember> members;
 
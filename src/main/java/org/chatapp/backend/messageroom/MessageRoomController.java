@@ -3,9 +3,11 @@ package org.chatapp.backend.messageroom;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -37,9 +39,12 @@ public class MessageRoomController {
 
 
     @GetMapping("/find-chat-room-at-least-one-content/{username}")
-    @Operation(summary = "List rooms with messages for a user", description = "Rooms are ordered by last message time and include unseen counts")
-    public ResponseEntity<List<MessageRoomDTO>> findMessageRoomAtLeastOneContent(@PathVariable final String username) {
-        return ResponseEntity.ok(messageRoomService.findMessageRoomAtLeastOneContent(username));
+    @Operation(summary = "List rooms with messages for a user", description = "Rooms are ordered by last message time and include unseen counts. Keyset pagination: pass 'before' and 'beforeId' (the lastMessage.dateSent and id of the last room seen) with 'limit'")
+    public ResponseEntity<List<MessageRoomDTO>> findMessageRoomAtLeastOneContent(@PathVariable final String username,
+                                                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime before,
+                                                                                 @RequestParam(required = false) final UUID beforeId,
+                                                                                 @RequestParam(required = false) final Integer limit) {
+        return ResponseEntity.ok(messageRoomService.findMessageRoomAtLeastOneContent(username, before, beforeId, limit));
     }
 
 
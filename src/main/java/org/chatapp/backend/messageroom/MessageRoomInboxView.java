@@ -0,0 +1,20 @@
+package org.chatapp.backend.messageroom;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// One inbox row: a room together with its latest message and the caller's unseen count
+public interface MessageRoomInboxView {
+    UUID getRoomId();
+    String getName();
+    Boolean getIsGroup();
+    LocalDateTime getCreatedDate();
+    String getCreatedBy();
+    UUID getLastMessageId();
+    String getLastMessageContent();
+    LocalDateTime getLastMessageDateSent();
+    String getLastMessageType();
+    String getLastMessageSender();
+    String getLastMessageSenderAvatar();
+    Long getUnseenCount();
+}
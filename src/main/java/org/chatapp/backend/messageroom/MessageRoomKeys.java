@@ -0,0 +1,38 @@
+package org.chatapp.backend.messageroom;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Canonical member-set key of a direct (1-1) room: SHA-256 over the sorted, distinct usernames,
+ * each length-prefixed so no two member sets encode alike. Group rooms have no key.
+ */
+public final class MessageRoomKeys {
+
+    private MessageRoomKeys() {
+    }
+
+    public static boolean isDirect(final Collection<String> members) {
+        return members.stream().distinct().count() <= 2;
+    }
+
+    public static Optional<String> directKey(final Collection<String> members) {
+        final List<String> usernames = members.stream().distinct().sorted().toList();
+        if (usernames.isEmpty() || usernames.size() > 2) return Optional.empty();
+
+        final StringBuilder canonical = new StringBuilder();
+        usernames.forEach(u -> canonical.append(u.length()).append(':').append(u));
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return Optional.of(HexFormat.of().formatHex(digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.chatapp.backend.messageroom;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Keys direct rooms that predate the member key. Where duplicates already exist, the most recently
+// active room takes the key and the others stay reachable by id only.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageRoomMemberKeyBackfill implements ApplicationRunner {
+
+    private final MessageRoomRepository messageRoomRepository;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        final Map<UUID, List<String>> membersByRoom = new LinkedHashMap<>();
+        for (final Object[] row : messageRoomRepository.findUnkeyedDirectRoomMembers()) {
+            membersByRoom.computeIfAbsent((UUID) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        if (membersByRoom.isEmpty()) return;
+
+        final Map<UUID, String> keys = new HashMap<>();
+        membersByRoom.forEach((roomId, members) -> {
+            if (members.size() == 2) {
+                MessageRoomKeys.directKey(members).ifPresent(key -> keys.put(roomId, key));
+            }
+        });
+
+        final Set<String> taken = new HashSet<>(keys.isEmpty() ? List.of() : messageRoomRepository.findExistingMemberKeys(keys.values()));
+        int assigned = 0;
+        for (final UUID roomId : membersByRoom.keySet()) {
+            final String key = keys.get(roomId);
+            if (key != null && taken.add(key)) {
+                assigned += messageRoomRepository.assignMemberKey(roomId, key);
+            }
+        }
+        log.info("Assigned member keys to {} of {} unkeyed direct rooms", assigned, membersByRoom.size());
+    }
+}
@@ -1,9 +1,12 @@
 package org.chatapp.backend.messageroom;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -22,25 +25,89 @@ public interface MessageRoomRepository extends JpaRepository<MessageRoom, UUID>
     """)
     Optional<MessageRoom> findMessageRoomByMembers(final List<String> members, final int size);
 
+    Optional<MessageRoom> findByMemberKey(final String memberKey);
 
 
+
+    // Inbox in one round trip: rooms of the user that have messages, keyset-paged below
+    // (:before, :beforeId) so rooms sharing the boundary timestamp are not skipped, newest first, with the latest message (and sender avatar) and the user's unread counter.
+    // Ordering and filtering read the room's activity summary instead of aggregating messages.
+    // Ids are read as text so the projection maps them the same way on every driver.
+    @Query(value = """
+        SELECT CAST(r.id AS VARCHAR) AS "roomId", r.name AS "name", r.is_group AS "isGroup",
+               r.created_date AS "createdDate", r.created_by AS "createdBy",
+               CAST(c.id AS VARCHAR) AS "lastMessageId", c.content AS "lastMessageContent",
+               c.date_sent AS "lastMessageDateSent", c.message_type AS "lastMessageType",
+               c.username AS "lastMessageSender", u.avatar_url AS "lastMessageSenderAvatar",
+               COALESCE(me.unread_count, 0) AS "unseenCount"
+        FROM message_room_member me
+        JOIN message_room r ON r.id = me.message_room_id
+        LEFT JOIN message_content c ON c.id = r.last_message_id
+        LEFT JOIN app_user u ON u.username = c.username
+        WHERE me.username = :username
+          AND r.message_count > 0
+          AND (r.last_activity_at < :before OR (r.last_activity_at = :before AND r.id < :beforeId))
+        ORDER BY r.last_activity_at DESC, r.id DESC
+        LIMIT :limit
+    """, nativeQuery = true)
+    List<MessageRoomInboxView> findInbox(final String username, final LocalDateTime before, final UUID beforeId, final int limit);
+
+
+
+    // Applied in the same transaction as the message insert(s). The latest message only moves forward.
+    @Modifying
     @Query("""
-        SELECT messageRoom
-        FROM MessageRoom messageRoom
-        JOIN MessageRoomMember messageRoomMember
-            ON messageRoomMember.messageRoom = messageRoom
-        JOIN MessageContent messageContent
-            ON messageContent.messageRoom = messageRoom
-        WHERE messageRoomMember.user.username = :username
-        GROUP BY messageRoom.id
-        HAVING COUNT(messageContent) > 0
-        ORDER BY MAX(messageContent.dateSent) DESC
+        UPDATE MessageRoom messageRoom
+        SET messageRoom.messageCount = COALESCE(messageRoom.messageCount, 0) + :added,
+            messageRoom.lastMessageId = CASE
+                WHEN messageRoom.lastActivityAt IS NULL OR messageRoom.lastActivityAt <= :dateSent THEN :messageId
+                ELSE messageRoom.lastMessageId END,
+            messageRoom.lastActivityAt = CASE
+                WHEN messageRoom.lastActivityAt IS NULL OR messageRoom.lastActivityAt <= :dateSent THEN :dateSent
+                ELSE messageRoom.lastActivityAt END
+        WHERE messageRoom.id = :roomId
     """)
-    List<MessageRoom> findMessageRoomAtLeastOneContent(final String username);
+    int recordActivity(final UUID roomId, final UUID messageId, final LocalDateTime dateSent, final long added);
 
-}
 
 
+    // One-off fill for rooms created before the activity summary existed
+    @Modifying
+    @Query(value = """
+        UPDATE message_room r
+        SET message_count = (SELECT COUNT(*) FROM message_content c WHERE c.message_room_id = r.id),
+            last_activity_at = (SELECT MAX(c.date_sent) FROM message_content c WHERE c.message_room_id = r.id),
+            last_message_id = (SELECT c.id FROM message_content c WHERE c.message_room_id = r.id
+                               ORDER BY c.date_sent DESC, c.id DESC LIMIT 1)
+        WHERE r.message_count IS NULL
+    """, nativeQuery = true)
+    int backfillActivitySummary();
 
 
 
+    // Member key maintenance: backfill of direct rooms, and invalidation when a room's members change
+
+    @Query("""
+        SELECT messageRoomMember.messageRoom.id, messageRoomMember.user.username
+        FROM MessageRoomMember messageRoomMember
+        WHERE messageRoomMember.messageRoom.isGroup = false
+            AND messageRoomMember.messageRoom.memberKey IS NULL
+        ORDER BY messageRoomMember.messageRoom.lastActivityAt DESC NULLS LAST
+    """)
+    List<Object[]> findUnkeyedDirectRoomMembers();
+
+    @Query("SELECT messageRoom.memberKey FROM MessageRoom messageRoom WHERE messageRoom.memberKey IN :memberKeys")
+    List<String> findExistingMemberKeys(final Collection<String> memberKeys);
+
+    @Query("SELECT messageRoom.memberKey, messageRoom.id FROM MessageRoom messageRoom WHERE messageRoom.memberKey IN :memberKeys")
+    List<Object[]> findIdsByMemberKeyIn(final Collection<String> memberKeys);
+
+    @Modifying
+    @Query("UPDATE MessageRoom messageRoom SET messageRoom.memberKey = :memberKey WHERE messageRoom.id = :roomId")
+    int assignMemberKey(final UUID roomId, final String memberKey);
+
+    @Modifying
+    @Query("UPDATE MessageRoom messageRoom SET messageRoom.memberKey = NULL WHERE messageRoom.id = :roomId AND messageRoom.memberKey IS NOT NULL")
+    int clearMemberKey(final UUID roomId);
+
+}
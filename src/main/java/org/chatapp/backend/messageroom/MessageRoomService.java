@@ -2,15 +2,20 @@ package org.chatapp.backend.messageroom;
 
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.media.AvatarSize;
 import org.chatapp.backend.messagecontent.MessageContent;
 import org.chatapp.backend.messagecontent.MessageContentDTO;
-import org.chatapp.backend.messagecontent.MessageContentService;
+import org.chatapp.backend.messagecontent.MessageType;
 import org.chatapp.backend.messageroommember.MessageRoomMember;
 import org.chatapp.backend.messageroommember.MessageRoomMemberDTO;
 import org.chatapp.backend.messageroommember.MessageRoomMemberService;
+import org.chatapp.backend.messageroommember.ContactsCache;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
 import org.chatapp.backend.user.User;
 import org.chatapp.backend.user.UserDTO;
 import org.chatapp.backend.user.UserRepository;
+import org.chatapp.backend.utils.FileUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.crossstore.ChangeSetPersister;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,6 +23,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -27,84 +34,104 @@ public class MessageRoomService {
     private final MessageRoomRepository messageRoomRepository;
     private final MessageRoomMapper messageRoomMapper;
     private final UserRepository userRepository;
-    private final MessageContentService messageContentService;
     private final MessageRoomMemberService messageRoomMemberService;
+    private final RoomRosterCache roomRosterCache;
+    private final ContactsCache contactsCache;
 
+    // Upper bound used when the inbox is not paged (fits every database timestamp type)
+    private static final LocalDateTime NO_ACTIVITY_BOUND = LocalDateTime.of(9999, 12, 31, 0, 0);
 
+    // Tie-breaker when only 'before' is given: no room id sorts below it, so the bound stays strict
+    private static final UUID NO_ROOM_BOUND = new UUID(0L, 0L);
 
+
+
+    // Direct rooms are a single probe on the member key; groups still match on the member set
     public MessageRoomDTO findMessageRoomByMembers(final List<String> members) {
-        return messageRoomRepository.findMessageRoomByMembers(members, members.size())
-                .map(m -> {
-                    final MessageRoomDTO roomDTO = messageRoomMapper.toDTO(m, new MessageRoomDTO());
-                    final List<MessageRoomMemberDTO> roomMembers = messageRoomMemberService.findByMessageRoomId(roomDTO.getId());
-                    roomDTO.setMembers(roomMembers);
-                    return roomDTO;
-                })
+        return MessageRoomKeys.directKey(members)
+                .map(messageRoomRepository::findByMemberKey)
+                .orElseGet(() -> messageRoomRepository.findMessageRoomByMembers(members, members.size()))
+                .map(this::toDTOWithMembers)
                 .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("No chat room exists for the specified members"));
     }
 
 
 
-    @Transactional
+    // Create-or-get for direct rooms: the unique member key makes concurrent creates converge on
+    // one room. The insert runs in its own transaction (saveAndFlush) so a lost race can re-read.
+    // Key and room type come from the resolved users, so an unknown username is rejected up front.
     public MessageRoomDTO create(final List<String> members, String username) {
+        final List<User> users = userRepository.findAllByUsernameIn(members);
+        final List<String> usernames = users.stream().map(User::getUsername).toList();
+        final List<String> unknown = members.stream().distinct().filter(member -> !usernames.contains(member)).toList();
+        if (!unknown.isEmpty()) {
+            throw new EntityNotFoundException("Users not found: " + String.join(", ", unknown));
+        }
+
+        final Optional<String> memberKey = MessageRoomKeys.directKey(usernames);
+        if (memberKey.isPresent()) {
+            final Optional<MessageRoom> existing = messageRoomRepository.findByMemberKey(memberKey.get());
+            if (existing.isPresent()) return toDTOWithMembers(existing.get());
+        }
+
         final User user = userRepository.findById(username).orElseThrow();
 
         MessageRoom messageRoom = MessageRoom.builder()
-                                    .isGroup(members.size() > 2)
+                                    .isGroup(!MessageRoomKeys.isDirect(usernames))
+                                    .memberKey(memberKey.orElse(null))
                                     .createdBy(user)
+                                    .messageCount(0L)
                                     .members(new ArrayList<>())
                                     .build();
 
-        final List<User> users = userRepository.findAllByUsernameIn(members);
-
         users.forEach(u -> {
             final MessageRoomMember messageRoomMember = MessageRoomMember.builder()
                                                         .messageRoom(messageRoom)
                                                         .user(u)
                                                         .isAdmin(u.getUsername().equals(username))
                                                         .lastSeen(LocalDateTime.now())
+                                                        .unreadCount(0L)
                                                         .build();
             messageRoom.getMembers().add(messageRoomMember);
         });
 
-//        //temp
-//        MessageContent messageContent = MessageContent.builder()
-//                .content("Hi")
-//                .dateSent(LocalDateTime.now())
-//                .messageRoom(messageRoom)
-//                .user(user)
-//                .build();
-//
-//        if(messageRoom.getMessageContents() == null) {
-//            messageRoom.setMessageContents(new ArrayList<>());
-//        }
-//        messageRoom.getMessageContents().add(messageContent);
-
-        MessageRoom saved = messageRoomRepository.save(messageRoom);
-
-        final MessageRoomDTO roomDTO = messageRoomMapper.toDTO(saved, new MessageRoomDTO());
-        final List<MessageRoomMemberDTO> roomMembers = messageRoomMemberService.findByMessageRoomId(roomDTO.getId());
-        roomDTO.setMembers(roomMembers);
+        try {
+            final MessageRoom saved = messageRoomRepository.saveAndFlush(messageRoom);
+            roomRosterCache.invalidate(saved.getId());
+            contactsCache.invalidateUsers(users.stream().map(User::getUsername).toList());
+            return toDTOWithMembers(saved);
+        } catch (DataIntegrityViolationException e) {
+            if (memberKey.isEmpty()) throw e;
+            return messageRoomRepository.findByMemberKey(memberKey.get())
+                    .map(this::toDTOWithMembers)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+
+    private MessageRoomDTO toDTOWithMembers(final MessageRoom room) {
+        final MessageRoomDTO roomDTO = messageRoomMapper.toDTO(room, new MessageRoomDTO());
+        roomDTO.setMembers(messageRoomMemberService.findByMessageRoomId(roomDTO.getId()));
         return roomDTO;
     }
 
 
 
-    public List<MessageRoomDTO> findMessageRoomAtLeastOneContent(final String username) {
-        return messageRoomRepository.findMessageRoomAtLeastOneContent(username)
-                .stream()
-                .map(m -> {
-                    final MessageRoomDTO roomDTO = messageRoomMapper.toDTO(m, new MessageRoomDTO());
-                    roomDTO.setUnseenCount(messageContentService.countUnseenMessage(roomDTO.getId(), username));
-                    final MessageContentDTO lastMessage = messageContentService.getLastMessage(roomDTO.getId());
-                    roomDTO.setLastMessage(lastMessage);
-                    final List<MessageRoomMemberDTO> members = messageRoomMemberService.findByMessageRoomId(roomDTO.getId());
-                    members.forEach(member -> {
-                        final String avatarUrl = userRepository.findById(member.getUsername())
-                                .map(User::getAvatarUrl)
-                                .orElse("");
-                        member.setAvatarUrl(avatarUrl);
-                    });
+    // Inbox: one query for rooms, last messages and unseen counts, one for all members.
+    // Optionally keyset-paged by (activity time, room id): rooms after ('before', 'beforeId') in inbox order, at most 'limit'.
+    public List<MessageRoomDTO> findMessageRoomAtLeastOneContent(final String username, final LocalDateTime before,
+                                                                 final UUID beforeId, final Integer limit) {
+        final List<MessageRoomInboxView> rows = messageRoomRepository.findInbox(
+                username,
+                before == null ? NO_ACTIVITY_BOUND : before,
+                before == null || beforeId == null ? NO_ROOM_BOUND : beforeId,
+                limit == null ? Integer.MAX_VALUE : Math.max(limit, 1));
+        final Map<UUID, List<MessageRoomMemberDTO>> membersByRoom = messageRoomMemberService.findByMessageRoomIds(
+                rows.stream().map(MessageRoomInboxView::getRoomId).toList());
+        return rows.stream()
+                .map(row -> {
+                    final MessageRoomDTO roomDTO = toInboxDTO(row);
+                    final List<MessageRoomMemberDTO> members = membersByRoom.getOrDefault(row.getRoomId(), List.of());
                     roomDTO.setMembers(members);
                     if(!roomDTO.getIsGroup()) {
                         final String avatarUrl = members.stream()
@@ -120,15 +147,32 @@ public class MessageRoomService {
     }
 
 
+    private MessageRoomDTO toInboxDTO(final MessageRoomInboxView row) {
+        final MessageRoomDTO roomDTO = new MessageRoomDTO();
+        roomDTO.setId(row.getRoomId());
+        roomDTO.setName(row.getName());
+        roomDTO.setIsGroup(row.getIsGroup());
+        roomDTO.setCreatedDate(row.getCreatedDate());
+        roomDTO.setCreatedById(row.getCreatedBy());
+        roomDTO.setUnseenCount(row.getUnseenCount() == null ? 0L : row.getUnseenCount());
+
+        final MessageContentDTO lastMessage = new MessageContentDTO();
+        lastMessage.setId(row.getLastMessageId());
+        lastMessage.setContent(row.getLastMessageContent());
+        lastMessage.setDateSent(row.getLastMessageDateSent());
+        lastMessage.setMessageType(row.getLastMessageType() == null ? null : MessageType.valueOf(row.getLastMessageType()));
+        lastMessage.setMessageRoomId(row.getRoomId());
+        lastMessage.setSender(row.getLastMessageSender());
+        lastMessage.setAvatarUrl(row.getLastMessageSenderAvatar() == null ? null : FileUtils.getAvatarUrl(row.getLastMessageSenderAvatar(), AvatarSize.SMALL));
+        roomDTO.setLastMessage(lastMessage);
+        return roomDTO;
+    }
+
+
 
     public MessageRoomDTO findById(final UUID roomId) {
         return messageRoomRepository.findById(roomId)
-                .map(room -> {
-                    final MessageRoomDTO roomDTO = messageRoomMapper.toDTO(room, new MessageRoomDTO());
-                    final List<MessageRoomMemberDTO> roomMembers = messageRoomMemberService.findByMessageRoomId(roomDTO.getId());
-                    roomDTO.setMembers(roomMembers);
-                    return roomDTO;
-                })
+                .map(this::toDTOWithMembers)
                 .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("Message room not found"));
     }
 
@@ -0,0 +1,26 @@
+package org.chatapp.backend.messageroom;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+// Fills the activity summary of rooms that predate it; a no-op once every room has one
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageRoomSummaryBackfill implements ApplicationRunner {
+
+    private final MessageRoomRepository messageRoomRepository;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        final int updated = messageRoomRepository.backfillActivitySummary();
+        if (updated > 0) {
+            log.info("Backfilled activity summary for {} message rooms", updated);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.chatapp.backend.messageroommember;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.chatapp.backend.utils.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A user's contacts are everyone they share a room with. Only the user's room ids are cached here
+ * ("user.rooms"); members come from {@link RoomRosterCache}, which already tracks roster changes.
+ * Joining, leaving or creating a room invalidates the affected users, here and on other nodes.
+ */
+@Component
+public class ContactsCache {
+
+    private final MessageRoomMemberRepository messageRoomMemberRepository;
+    private final RoomRosterCache roomRosterCache;
+    private final Optional<ClusterBus> clusterBus;
+    private final Cache<String, List<UUID>> roomsByUser;
+
+    public ContactsCache(final MessageRoomMemberRepository messageRoomMemberRepository,
+                         final RoomRosterCache roomRosterCache,
+                         final Optional<ClusterBus> clusterBus,
+                         final MeterRegistry meterRegistry,
+                         @Value("${app.contacts.cache.ttl:PT10M}") final Duration ttl,
+                         @Value("${app.contacts.cache.max-size:100000}") final long maxSize) {
+        this.messageRoomMemberRepository = messageRoomMemberRepository;
+        this.roomRosterCache = roomRosterCache;
+        this.clusterBus = clusterBus;
+        this.roomsByUser = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, roomsByUser, "user.rooms");
+        clusterBus.ifPresent(bus -> bus.subscribe(ClusterEnvelope.Kind.INVALIDATE, envelope -> roomsByUser.invalidateAll(envelope.usernames())));
+    }
+
+    public Set<String> contactsOf(final String username) {
+        final List<UUID> roomIds = roomsByUser.get(username, messageRoomMemberRepository::findRoomIdsByUsername);
+        final Set<String> contacts = new HashSet<>();
+        roomRosterCache.getAll(roomIds).values().forEach(roster -> contacts.addAll(roster.usernames()));
+        contacts.remove(username);
+        return contacts;
+    }
+
+    // Users whose room list changed; evicted again after commit so a concurrent load cannot keep the old list
+    public void invalidateUsers(final Collection<String> usernames) {
+        final List<String> users = List.copyOf(usernames);
+        roomsByUser.invalidateAll(users);
+        final Runnable evict = () -> {
+            roomsByUser.invalidateAll(users);
+            clusterBus.ifPresent(bus -> bus.publish(new ClusterEnvelope(ClusterEnvelope.Kind.INVALIDATE, bus.nodeId(), users, "", null, null)));
+        };
+        TransactionCallbacks.afterCommitOrNow(evict);
+    }
+}
@@ -12,7 +12,9 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "message_room_member")
+@Table(name = "message_room_member", indexes = {
+        @Index(name = "idx_message_room_member_username", columnList = "username")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -32,4 +34,7 @@ public class MessageRoomMember {
     private Boolean isAdmin;
 
     private LocalDateTime lastSeen;
+
+    // Messages from others since lastSeen; incremented on send, recomputed by markRead
+    private Long unreadCount;
 }
@@ -28,6 +28,14 @@ public class MessageRoomMemberController {
 
 
 
+    @GetMapping("/unread-total/{username}")
+    @Operation(summary = "Total unread messages for a user", description = "Sum of the user's per-room unread counters, for badges")
+    public ResponseEntity<Long> countUnreadTotal(@PathVariable final String username) {
+        return ResponseEntity.ok(messageRoomMemberService.countUnreadTotal(username));
+    }
+
+
+
     @PostMapping("/add-members/{roomId}")
     @Operation(summary = "Add members to a room")
     public ResponseEntity<List<MessageRoomMemberDTO>> addMembers(@PathVariable final UUID roomId,
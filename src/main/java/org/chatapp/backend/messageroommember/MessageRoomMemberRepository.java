@@ -1,9 +1,16 @@
 package org.chatapp.backend.messageroommember;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -11,4 +18,114 @@ public interface MessageRoomMemberRepository extends JpaRepository<MessageRoomMe
     List<MessageRoomMember> findByMessageRoomId(final UUID messageRoomId);
 
     MessageRoomMember findByMessageRoomIdAndUserUsername(final UUID roomId, final String username);
+
+    @Query("SELECT messageRoomMember.messageRoom.id FROM MessageRoomMember messageRoomMember WHERE messageRoomMember.user.username = :username")
+    List<UUID> findRoomIdsByUsername(final String username);
+
+    @Query("""
+        SELECT messageRoomMember.messageRoom.id AS messageRoomId,
+               appUser.username AS username,
+               appUser.avatarUrl AS avatarUrl,
+               messageRoomMember.isAdmin AS isAdmin,
+               messageRoomMember.lastSeen AS lastSeen,
+               appUser.lastLogin AS lastLogin
+        FROM MessageRoomMember messageRoomMember
+        JOIN messageRoomMember.user appUser
+        WHERE messageRoomMember.messageRoom.id IN :roomIds
+    """)
+    List<MessageRoomMemberView> findViewsByMessageRoomIdIn(final Collection<UUID> roomIds);
+
+
+
+    @Modifying
+    @Query("""
+        UPDATE MessageRoomMember messageRoomMember
+        SET messageRoomMember.unreadCount = COALESCE(messageRoomMember.unreadCount, 0) + :count
+        WHERE messageRoomMember.messageRoom.id = :roomId
+            AND messageRoomMember.user.username <> :sender
+    """)
+    int incrementUnread(final UUID roomId, final String sender, final long count);
+
+    // Batched variant for write-behind inserts: counts only messages newer than each member's
+    // lastSeen, so a batch landing after the reader caught up does not inflate the counter
+    @Modifying
+    @Query(value = """
+        UPDATE message_room_member me
+        SET unread_count = COALESCE(me.unread_count, 0) + (SELECT COUNT(*) FROM message_content c
+                                                          WHERE c.id IN (:messageIds)
+                                                            AND c.message_room_id = me.message_room_id
+                                                            AND c.username <> me.username
+                                                            AND c.date_sent > me.last_seen)
+        WHERE me.message_room_id IN (:roomIds)
+    """, nativeQuery = true)
+    int incrementUnreadForMessages(final Collection<UUID> roomIds, final Collection<UUID> messageIds);
+
+    // Taken before markRead: unread increments already running commit first, and later ones wait
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+        SELECT messageRoomMember FROM MessageRoomMember messageRoomMember
+        WHERE messageRoomMember.messageRoom.id = :roomId
+            AND messageRoomMember.user.username = :username
+    """)
+    Optional<MessageRoomMember> findForUpdate(final UUID roomId, final String username);
+
+    // Recounts unread from messages sent after :now instead of zeroing, so an increment for such a
+    // message is never overwritten; a mark older than the stored lastSeen leaves the row alone
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+        UPDATE message_room_member me
+        SET last_seen = :now,
+            unread_count = (SELECT COUNT(*) FROM message_content c
+                            WHERE c.message_room_id = me.message_room_id
+                              AND c.username <> me.username
+                              AND c.date_sent > :now)
+        WHERE me.message_room_id = :roomId
+            AND me.username = :username
+            AND (me.last_seen IS NULL OR me.last_seen <= :now)
+    """, nativeQuery = true)
+    int markRead(final UUID roomId, final String username, final LocalDateTime now);
+
+    @Query("""
+        SELECT COALESCE(messageRoomMember.unreadCount, 0)
+        FROM MessageRoomMember messageRoomMember
+        WHERE messageRoomMember.messageRoom.id = :roomId
+            AND messageRoomMember.user.username = :username
+    """)
+    Optional<Long> findUnreadCount(final UUID roomId, final String username);
+
+    @Query("""
+        SELECT COALESCE(SUM(messageRoomMember.unreadCount), 0)
+        FROM MessageRoomMember messageRoomMember
+        WHERE messageRoomMember.user.username = :username
+    """)
+    Long sumUnreadByUsername(final String username);
+
+
+
+    // Rebuilds counters from the raw tables; only rows that drifted are written
+    @Modifying
+    @Query(value = """
+        UPDATE message_room_member me
+        SET unread_count = (SELECT COUNT(*) FROM message_content c
+                            WHERE c.message_room_id = me.message_room_id
+                              AND c.username <> me.username
+                              AND c.date_sent > me.last_seen)
+        WHERE me.unread_count IS DISTINCT FROM (SELECT COUNT(*) FROM message_content c
+                                                WHERE c.message_room_id = me.message_room_id
+                                                  AND c.username <> me.username
+                                                  AND c.date_sent > me.last_seen)
+    """, nativeQuery = true)
+    int reconcileUnreadCounts();
+
+    // Same computation, limited to members that predate the counters
+    @Modifying
+    @Query(value = """
+        UPDATE message_room_member me
+        SET unread_count = (SELECT COUNT(*) FROM message_content c
+                            WHERE c.message_room_id = me.message_room_id
+                              AND c.username <> me.username
+                              AND c.date_sent > me.last_seen)
+        WHERE me.unread_count IS NULL
+    """, nativeQuery = true)
+    int backfillUnreadCounts();
 }
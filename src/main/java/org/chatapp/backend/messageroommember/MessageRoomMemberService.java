@@ -1,13 +1,19 @@
 package org.chatapp.backend.messageroommember;
 
 import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.media.AvatarSize;
 import org.chatapp.backend.messagecontent.MessageContentDTO;
 import org.chatapp.backend.messagecontent.MessageContentMapper;
 import org.chatapp.backend.messagecontent.MessageContentRepository;
+import org.chatapp.backend.messageroom.MessageRoomRepository;
+import org.chatapp.backend.utils.FileUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -17,37 +23,87 @@ public class MessageRoomMemberService {
 
     private final MessageRoomMemberRepository messageRoomMemberRepository;
     private final MessageRoomMemberMapper messageRoomMemberMapper;
+    private final MessageRoomRepository messageRoomRepository;
+    private final RoomRosterCache roomRosterCache;
+    private final ContactsCache contactsCache;
 
 
 
     public List<MessageRoomMemberDTO> findByMessageRoomId(final UUID messageRoomId) {
-        return messageRoomMemberRepository.findByMessageRoomId(messageRoomId)
+        return toDTOs(roomRosterCache.get(messageRoomId));
+    }
+
+
+
+    // Delivery targets of a room, straight from the roster cache
+    public List<String> findUsernamesByMessageRoomId(final UUID messageRoomId) {
+        return roomRosterCache.get(messageRoomId).usernames();
+    }
+
+
+
+    // Members of several rooms, grouped by room id; rosters not yet cached are loaded in one query
+    public Map<UUID, List<MessageRoomMemberDTO>> findByMessageRoomIds(final Collection<UUID> messageRoomIds) {
+        if (messageRoomIds.isEmpty()) return Map.of();
+        return roomRosterCache.getAll(messageRoomIds)
+                .values()
+                .stream()
+                .collect(Collectors.toMap(RoomRoster::roomId, this::toDTOs));
+    }
+
+
+    private List<MessageRoomMemberDTO> toDTOs(final RoomRoster roster) {
+        return roster.members()
                 .stream()
-                .map(m -> messageRoomMemberMapper.toDTO(m, new MessageRoomMemberDTO()))
+                .map(member -> {
+                    final MessageRoomMemberDTO dto = new MessageRoomMemberDTO();
+                    dto.setMessageRoomId(roster.roomId());
+                    dto.setUsername(member.username());
+                    dto.setAvatarUrl(member.avatarKey() == null ? "" : FileUtils.getAvatarUrl(member.avatarKey(), AvatarSize.SMALL));
+                    dto.setIsAdmin(member.admin());
+                    dto.setLastSeen(member.lastSeen());
+                    dto.setLastLogin(member.lastLogin());
+                    return dto;
+                })
                 .toList();
     }
 
 
 
+    @Transactional
     public MessageRoomMemberDTO updateLastSeen(final UUID roomId, final String username) {
+        // The recount is a separate statement after the lock, so it sees sends that held the row before us
+        messageRoomMemberRepository.findForUpdate(roomId, username)
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("Member not found in this room"));
+        messageRoomMemberRepository.markRead(roomId, username, LocalDateTime.now());
         final MessageRoomMember member = messageRoomMemberRepository.findByMessageRoomIdAndUserUsername(roomId, username);
-        if (member == null) {
-            throw new jakarta.persistence.EntityNotFoundException("Member not found in this room");
-        }
-        member.setLastSeen(LocalDateTime.now());
-        return messageRoomMemberMapper.toDTO(messageRoomMemberRepository.save(member), new MessageRoomMemberDTO());
+        roomRosterCache.updateLastSeen(roomId, username, member.getLastSeen());
+        return messageRoomMemberMapper.toDTO(member, new MessageRoomMemberDTO());
+    }
+
+
+
+    public Long countUnreadTotal(final String username) {
+        return messageRoomMemberRepository.sumUnreadByUsername(username);
     }
 
 
 
+    // A room whose members change no longer matches its member key
+    @Transactional
     public List<MessageRoomMemberDTO> addMembers(final UUID roomId, final List<MessageRoomMemberDTO> memberDTOS) {
         final List<MessageRoomMember> members = memberDTOS.stream()
                 .map(dto -> {
                     dto.setMessageRoomId(roomId);
-                    return messageRoomMemberMapper.toEntity(dto, new MessageRoomMember());
+                    final MessageRoomMember member = messageRoomMemberMapper.toEntity(dto, new MessageRoomMember());
+                    member.setUnreadCount(0L);
+                    return member;
                 }).toList();
 
         messageRoomMemberRepository.saveAll(members);
+        messageRoomRepository.clearMemberKey(roomId);
+        roomRosterCache.invalidate(roomId);
+        contactsCache.invalidateUsers(memberDTOS.stream().map(MessageRoomMemberDTO::getUsername).toList());
 
         return members.stream()
                 .map(member -> messageRoomMemberMapper.toDTO(member, new MessageRoomMemberDTO()))
@@ -56,12 +112,16 @@ public class MessageRoomMemberService {
 
 
 
+    @Transactional
     public Boolean removeMember(final UUID roomId, final String memberId) {
         final MessageRoomMember messageRoomMember = messageRoomMemberRepository.findByMessageRoomIdAndUserUsername(roomId, memberId);
         if (messageRoomMember == null) {
             throw new jakarta.persistence.EntityNotFoundException("Member not found in this room");
         }
         messageRoomMemberRepository.delete(messageRoomMember);
+        messageRoomRepository.clearMemberKey(roomId);
+        roomRosterCache.invalidate(roomId);
+        contactsCache.invalidateUsers(List.of(memberId));
         return true;
     }
 
@@ -74,6 +134,7 @@ public class MessageRoomMemberService {
         }
         messageRoomMember.setIsAdmin(idAdmin);
         messageRoomMemberRepository.save(messageRoomMember);
+        roomRosterCache.invalidate(roomId);
         return messageRoomMemberMapper.toDTO(messageRoomMember, new MessageRoomMemberDTO());
     }
 
@@ -0,0 +1,14 @@
+package org.chatapp.backend.messageroommember;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Flat member row used when assembling several rooms at once
+public interface MessageRoomMemberView {
+    UUID getMessageRoomId();
+    String getUsername();
+    String getAvatarUrl();
+    Boolean getIsAdmin();
+    LocalDateTime getLastSeen();
+    LocalDateTime getLastLogin();
+}
@@ -0,0 +1,35 @@
+package org.chatapp.backend.messageroommember;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Immutable member list of a room, as held by {@link RoomRosterCache}. Updates produce a new roster.
+ */
+public record RoomRoster(UUID roomId, List<Entry> members) {
+
+    public record Entry(String username, boolean admin, String avatarKey, LocalDateTime lastSeen, LocalDateTime lastLogin) {
+    }
+
+    public RoomRoster {
+        members = List.copyOf(members);
+    }
+
+    public List<String> usernames() {
+        return members.stream().map(Entry::username).toList();
+    }
+
+    public Optional<Entry> member(final String username) {
+        return members.stream().filter(m -> m.username().equals(username)).findFirst();
+    }
+
+    public RoomRoster withLastSeen(final String username, final LocalDateTime lastSeen) {
+        return new RoomRoster(roomId, members.stream()
+                .map(m -> m.username().equals(username)
+                        ? new Entry(m.username(), m.admin(), m.avatarKey(), lastSeen, m.lastLogin())
+                        : m)
+                .toList());
+    }
+}
@@ -0,0 +1,137 @@
+package org.chatapp.backend.messageroommember;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.chatapp.backend.utils.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Room id to roster, so delivery and room/inbox responses don't reload members and users.
+ * Membership changes invalidate their room; avatar changes invalidate the user's rooms, found through
+ * a user to room ids index kept alongside the cache instead of scanning every roster. Presence changes
+ * do not invalidate: lastLogin is as of the roster's load and refreshes with the TTL.
+ * Invalidations are also published on the cluster bus so other nodes drop their copy.
+ * Bounded by size, with a TTL as a safety net. Metrics are published as cache "room.rosters".
+ */
+@Component
+public class RoomRosterCache {
+
+    private final MessageRoomMemberRepository messageRoomMemberRepository;
+    private final Optional<ClusterBus> clusterBus;
+    private final Cache<UUID, RoomRoster> cache;
+    // Rooms each user appears in among loaded rosters. May hold rooms no longer cached (harmless to
+    // invalidate) but never misses a cached one: entries are added before a roster is cached and
+    // removed only when that roster is evicted or the user's rooms are invalidated.
+    private final Map<String, Set<UUID>> roomsByUser = new ConcurrentHashMap<>();
+
+    public RoomRosterCache(final MessageRoomMemberRepository messageRoomMemberRepository,
+                           final Optional<ClusterBus> clusterBus,
+                           final MeterRegistry meterRegistry,
+                           @Value("${app.rosters.cache.ttl:PT10M}") final Duration ttl,
+                           @Value("${app.rosters.cache.max-size:50000}") final long maxSize) {
+        this.messageRoomMemberRepository = messageRoomMemberRepository;
+        this.clusterBus = clusterBus;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .evictionListener((UUID roomId, RoomRoster roster, RemovalCause cause) -> {
+                    if (roster != null) unindex(roster);
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "room.rosters");
+        clusterBus.ifPresent(bus -> bus.subscribe(ClusterEnvelope.Kind.INVALIDATE, this::onPeerInvalidate));
+    }
+
+    public RoomRoster get(final UUID roomId) {
+        return cache.get(roomId, id -> load(List.of(id)).get(id));
+    }
+
+    // Missing rosters are loaded together in one query
+    public Map<UUID, RoomRoster> getAll(final Collection<UUID> roomIds) {
+        return cache.getAll(roomIds, this::load);
+    }
+
+    public void updateLastSeen(final UUID roomId, final String username, final LocalDateTime lastSeen) {
+        cache.asMap().computeIfPresent(roomId, (id, roster) -> roster.withLastSeen(username, lastSeen));
+    }
+
+    public void invalidate(final UUID roomId) {
+        cache.invalidate(roomId);
+        // A concurrent reader may reload the old roster before the change commits; drop it again after commit
+        TransactionCallbacks.afterCommit(() -> cache.invalidate(roomId));
+        TransactionCallbacks.afterCommitOrNow(() -> clusterBus.ifPresent(bus -> bus.publish(ClusterEnvelope.invalidateRoom(bus.nodeId(), roomId))));
+    }
+
+    public void invalidateUser(final String username) {
+        final Runnable evict = () -> evictRoomsOf(List.of(username));
+        evict.run();
+        TransactionCallbacks.afterCommit(evict);
+        TransactionCallbacks.afterCommitOrNow(() -> clusterBus.ifPresent(bus -> bus.publish(ClusterEnvelope.invalidateUser(bus.nodeId(), username))));
+    }
+
+    private void onPeerInvalidate(final ClusterEnvelope envelope) {
+        if (!envelope.destination().isEmpty()) {
+            cache.invalidate(UUID.fromString(envelope.destination()));
+        }
+        evictRoomsOf(envelope.usernames());
+    }
+
+    // Only the rooms the users appear in; their index entries come back when those rosters reload
+    private void evictRoomsOf(final Collection<String> usernames) {
+        for (final String username : usernames) {
+            final Set<UUID> rooms = roomsByUser.remove(username);
+            if (rooms != null) cache.invalidateAll(rooms);
+        }
+    }
+
+    private void index(final RoomRoster roster) {
+        roster.members().forEach(member -> roomsByUser
+                .computeIfAbsent(member.username(), username -> ConcurrentHashMap.newKeySet())
+                .add(roster.roomId()));
+    }
+
+    private void unindex(final RoomRoster roster) {
+        roster.members().forEach(member -> roomsByUser.computeIfPresent(member.username(), (username, rooms) -> {
+            rooms.remove(roster.roomId());
+            return rooms.isEmpty() ? null : rooms;
+        }));
+    }
+
+    private Map<UUID, RoomRoster> load(final Iterable<? extends UUID> roomIds) {
+        final Set<UUID> ids = new HashSet<>();
+        roomIds.forEach(ids::add);
+        final Map<UUID, List<RoomRoster.Entry>> entries = messageRoomMemberRepository.findViewsByMessageRoomIdIn(ids)
+                .stream()
+                .collect(Collectors.groupingBy(MessageRoomMemberView::getMessageRoomId,
+                        Collectors.mapping(view -> new RoomRoster.Entry(
+                                view.getUsername(),
+                                Boolean.TRUE.equals(view.getIsAdmin()),
+                                view.getAvatarUrl(),
+                                view.getLastSeen(),
+                                view.getLastLogin()), Collectors.toList())));
+        final Map<UUID, RoomRoster> rosters = new HashMap<>();
+        ids.forEach(id -> rosters.put(id, new RoomRoster(id, entries.getOrDefault(id, List.of()))));
+        rosters.values().forEach(this::index);
+        return rosters;
+    }
+}
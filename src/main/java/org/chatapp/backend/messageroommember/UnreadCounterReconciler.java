@@ -0,0 +1,38 @@
+package org.chatapp.backend.messageroommember;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps the materialized unread counters honest. At startup it fills counters for members
+ * that predate them; on a schedule it rebuilds every counter from message_content and last_seen.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UnreadCounterReconciler implements ApplicationRunner {
+
+    private final MessageRoomMemberRepository messageRoomMemberRepository;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        final int updated = messageRoomMemberRepository.backfillUnreadCounts();
+        if (updated > 0) {
+            log.info("Backfilled unread counters for {} room members", updated);
+        }
+    }
+
+    @Transactional
+    @Scheduled(cron = "${app.messages.unread.reconcile-cron:0 30 3 * * *}")
+    public void reconcile() {
+        final long start = System.currentTimeMillis();
+        final int updated = messageRoomMemberRepository.reconcileUnreadCounts();
+        log.info("Unread counter reconciliation corrected {} room members in {} ms", updated, System.currentTimeMillis() - start);
+    }
+}
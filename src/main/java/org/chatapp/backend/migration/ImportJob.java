@@ -0,0 +1,62 @@
+package org.chatapp.backend.migration;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Live counters of one running import, readable from other requests while the stream is processed
+class ImportJob {
+
+    private static final int MAX_ERRORS = 50;
+
+    final UUID id = UUID.randomUUID();
+    final LocalDateTime startedAt = LocalDateTime.now();
+    final AtomicLong lines = new AtomicLong();
+    final AtomicLong rooms = new AtomicLong();
+    final AtomicLong messages = new AtomicLong();
+    final AtomicLong skipped = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private final List<String> errors = new ArrayList<>();
+    private volatile String status = "RUNNING";
+    private volatile LocalDateTime finishedAt;
+    private volatile long elapsedNanos = -1;
+
+    void skip(final String reason) {
+        skipped.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) errors.add("line " + lines.get() + ": " + reason);
+        }
+    }
+
+    void finish(final String finalStatus) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        finishedAt = LocalDateTime.now();
+        status = finalStatus;
+    }
+
+    boolean isRunning() {
+        return finishedAt == null;
+    }
+
+    ImportProgress snapshot() {
+        final long nanos = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - startNanos;
+        final double seconds = Math.max(Duration.ofNanos(nanos).toMillis(), 1) / 1000.0;
+        final ImportProgress progress = new ImportProgress();
+        progress.setJobId(id);
+        progress.setStatus(status);
+        progress.setStartedAt(startedAt);
+        progress.setFinishedAt(finishedAt);
+        progress.setLines(lines.get());
+        progress.setRoomsImported(rooms.get());
+        progress.setMessagesImported(messages.get());
+        progress.setSkipped(skipped.get());
+        progress.setRowsPerSecond(Math.round((rooms.get() + messages.get()) / seconds * 10) / 10.0);
+        synchronized (errors) {
+            progress.setErrors(List.copyOf(errors));
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,21 @@
+package org.chatapp.backend.migration;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+public class ImportProgress {
+    private UUID jobId;
+    private String status;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long lines;
+    private long roomsImported;
+    private long messagesImported;
+    private long skipped;
+    private double rowsPerSecond;
+    private List<String> errors;
+}
@@ -0,0 +1,38 @@
+package org.chatapp.backend.migration;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import org.chatapp.backend.messagecontent.MessageType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One NDJSON line of a message import. "type" selects the record kind:
+ * <pre>
+ * {"type":"room","id":"…","name":"…","isGroup":false,"createdBy":"alice","createdDate":"…","members":["alice","bob"]}
+ * {"type":"message","id":"…","roomId":"…","sender":"alice","content":"…","dateSent":"…","messageType":"TEXT"}
+ * </pre>
+ * Rooms must appear before their messages. Message ids are optional; when present, re-importing is idempotent.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImportRecord {
+    private String type;
+    private UUID id;
+
+    // room
+    private String name;
+    private Boolean isGroup;
+    private String createdBy;
+    private LocalDateTime createdDate;
+    private List<String> members;
+
+    // message
+    private UUID roomId;
+    private String sender;
+    private String content;
+    private LocalDateTime dateSent;
+    private MessageType messageType;
+}
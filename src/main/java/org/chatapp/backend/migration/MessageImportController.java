@@ -0,0 +1,54 @@
+package org.chatapp.backend.migration;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping(value = "${api.prefix}/admin/import")
+@Tag(name = "Admin import", description = "Bulk import of rooms and messages from the previous chat system (ROLE_ADMIN)")
+public class MessageImportController {
+
+    private final MessageImportService messageImportService;
+
+
+
+    // The body is read as a stream, never buffered; gzip bodies are decoded on the fly
+    @PostMapping("/messages")
+    @Operation(summary = "Import rooms and messages", description = "Streams an NDJSON body (one room or message per line, rooms before their messages). Returns the final counts; follow progress with GET /admin/import")
+    public ResponseEntity<ImportProgress> importMessages(final HttpServletRequest request) throws IOException {
+        try (InputStream body = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))
+                ? new GZIPInputStream(request.getInputStream(), 64 * 1024)
+                : request.getInputStream()) {
+            return ResponseEntity.ok(messageImportService.importStream(body));
+        }
+    }
+
+
+
+    @GetMapping
+    @Operation(summary = "List recent imports", description = "Progress and rows per second of running and recently finished imports")
+    public ResponseEntity<List<ImportProgress>> findAll() {
+        return ResponseEntity.ok(messageImportService.findAll());
+    }
+
+
+
+    @GetMapping("/{jobId}")
+    @Operation(summary = "Progress of an import")
+    public ResponseEntity<ImportProgress> findById(@PathVariable final UUID jobId) {
+        return ResponseEntity.ok(messageImportService.findById(jobId));
+    }
+
+}
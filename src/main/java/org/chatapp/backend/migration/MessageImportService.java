@@ -0,0 +1,326 @@
+package org.chatapp.backend.migration;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.messagecontent.MessageContentBatchWriter;
+import org.chatapp.backend.messagecontent.MessageContentDTO;
+import org.chatapp.backend.messagecontent.MessageType;
+import org.chatapp.backend.messageroom.MessageRoomKeys;
+import org.chatapp.backend.messageroom.MessageRoomRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Streams an NDJSON export of rooms and messages into the database in constant memory.
+ *
+ * Records are buffered up to batch-size and written with JDBC batches (messages through
+ * {@link MessageContentBatchWriter}, so room summaries and unread counters stay consistent).
+ * Users and rooms are resolved with one IN-query per batch for names not yet in the job's bounded
+ * lookup caches. Direct rooms whose members already have a room are merged into it; those mappings
+ * exist nowhere in the database, so the job keeps them all rather than in an evicting cache.
+ * Imported members start with last_seen = import time, so history does not count as unread.
+ */
+@Slf4j
+@Service
+public class MessageImportService {
+
+    private static final int RECENT_JOBS = 20;
+
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageContentBatchWriter batchWriter;
+    private final MessageRoomRepository messageRoomRepository;
+    private final int batchSize;
+    private final long lookupCacheSize;
+
+    private final Map<UUID, ImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<UUID, ImportJob> eldest) {
+            return size() > RECENT_JOBS && !eldest.getValue().isRunning();
+        }
+    });
+
+    public MessageImportService(final ObjectMapper objectMapper,
+                                final JdbcTemplate jdbcTemplate,
+                                final TransactionTemplate transactionTemplate,
+                                final MessageContentBatchWriter batchWriter,
+                                final MessageRoomRepository messageRoomRepository,
+                                @Value("${app.import.batch-size:2000}") final int batchSize,
+                                @Value("${app.import.lookup-cache-size:200000}") final long lookupCacheSize) {
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.batchWriter = batchWriter;
+        this.messageRoomRepository = messageRoomRepository;
+        this.batchSize = Math.max(batchSize, 1);
+        this.lookupCacheSize = lookupCacheSize;
+    }
+
+
+
+    public ImportProgress importStream(final InputStream in) {
+        final ImportJob job = new ImportJob();
+        jobs.put(job.id, job);
+        final Batch batch = new Batch(job);
+        log.info("Import {} started", job.id);
+
+        try (MappingIterator<ImportRecord> records = objectMapper.readerFor(ImportRecord.class).readValues(in)) {
+            while (records.hasNextValue()) {
+                final ImportRecord record = records.nextValue();
+                job.lines.incrementAndGet();
+                batch.add(record);
+            }
+            batch.flush();
+            job.finish("COMPLETED");
+        } catch (IOException | RuntimeJsonMappingException e) {
+            // Keep what was valid so far; records with ids can be re-sent safely
+            batch.flush();
+            job.finish("FAILED");
+            throw new IllegalArgumentException("Malformed NDJSON after line " + job.lines.get() + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            job.finish("FAILED");
+            throw e;
+        }
+        final ImportProgress progress = job.snapshot();
+        log.info("Import {} finished: {} rooms, {} messages, {} skipped, {} rows/s",
+                job.id, progress.getRoomsImported(), progress.getMessagesImported(), progress.getSkipped(), progress.getRowsPerSecond());
+        return progress;
+    }
+
+
+
+    public List<ImportProgress> findAll() {
+        synchronized (jobs) {
+            return jobs.values().stream().map(ImportJob::snapshot).toList();
+        }
+    }
+
+
+
+    public ImportProgress findById(final UUID jobId) {
+        final ImportJob job = jobs.get(jobId);
+        if (job == null) throw new jakarta.persistence.EntityNotFoundException("Import job not found");
+        return job.snapshot();
+    }
+
+
+
+    // Buffers of one job plus its lookup caches (import room id -> stored room id, known usernames).
+    // Ids stored as-is can be re-read from the database once evicted; merged ids cannot
+    private final class Batch {
+
+        private final ImportJob job;
+        private final List<ImportRecord> rooms = new ArrayList<>();
+        private final List<ImportRecord> messages = new ArrayList<>();
+        private final Cache<String, Boolean> users = Caffeine.newBuilder().maximumSize(lookupCacheSize).build();
+        private final Cache<UUID, UUID> roomIds = Caffeine.newBuilder().maximumSize(lookupCacheSize).build();
+        private final Map<UUID, UUID> mergedRooms = new HashMap<>();
+
+        private Batch(final ImportJob job) {
+            this.job = job;
+        }
+
+        void add(final ImportRecord record) {
+            final String type = record.getType() == null ? "" : record.getType();
+            switch (type) {
+                case "room" -> rooms.add(record);
+                case "message" -> messages.add(record);
+                default -> job.skip("unknown record type '" + type + "'");
+            }
+            if (rooms.size() + messages.size() >= batchSize) flush();
+        }
+
+        void flush() {
+            // Rooms first: messages in the same batch may reference them
+            if (!rooms.isEmpty()) flushRooms();
+            if (!messages.isEmpty()) flushMessages();
+        }
+
+        private void flushRooms() {
+            final Set<String> usernames = new HashSet<>();
+            rooms.forEach(r -> {
+                if (r.getCreatedBy() != null) usernames.add(r.getCreatedBy());
+                if (r.getMembers() != null) usernames.addAll(r.getMembers());
+            });
+            final Set<String> knownUsers = resolveUsers(usernames);
+            final Set<UUID> existingRooms = existing("SELECT id FROM message_room WHERE id IN (:ids)",
+                    rooms.stream().map(ImportRecord::getId).filter(Objects::nonNull).toList());
+
+            final List<ImportRecord> candidates = new ArrayList<>();
+            // Identity maps: records are value-equal @Data beans
+            final Map<ImportRecord, List<String>> membersOf = new IdentityHashMap<>();
+            final Map<ImportRecord, String> keyOf = new IdentityHashMap<>();
+            for (final ImportRecord room : rooms) {
+                if (room.getId() == null) room.setId(UUID.randomUUID());
+                if (existingRooms.contains(room.getId())) {
+                    roomIds.put(room.getId(), room.getId());
+                    continue;
+                }
+                if (room.getCreatedBy() == null || !knownUsers.contains(room.getCreatedBy())) {
+                    job.skip("room " + room.getId() + " has unknown creator " + room.getCreatedBy());
+                    continue;
+                }
+                final List<String> members = (room.getMembers() == null ? List.<String>of() : room.getMembers()).stream()
+                        .filter(knownUsers::contains)
+                        .distinct()
+                        .toList();
+                if (members.isEmpty()) {
+                    job.skip("room " + room.getId() + " has no known members");
+                    continue;
+                }
+                final boolean isGroup = room.getIsGroup() != null ? room.getIsGroup() : !MessageRoomKeys.isDirect(members);
+                room.setIsGroup(isGroup);
+                if (!isGroup) MessageRoomKeys.directKey(members).ifPresent(key -> keyOf.put(room, key));
+                membersOf.put(room, members);
+                candidates.add(room);
+            }
+
+            // A direct room whose members already have one (stored, or earlier in this batch) is merged into it
+            final Map<String, UUID> roomByKey = new HashMap<>();
+            if (!keyOf.isEmpty()) {
+                messageRoomRepository.findIdsByMemberKeyIn(new HashSet<>(keyOf.values()))
+                        .forEach(row -> roomByKey.put((String) row[0], (UUID) row[1]));
+            }
+            final List<ImportRecord> toInsert = new ArrayList<>();
+            for (final ImportRecord room : candidates) {
+                final String key = keyOf.get(room);
+                final UUID sameMembers = key == null ? null : roomByKey.putIfAbsent(key, room.getId());
+                if (sameMembers != null) {
+                    mergedRooms.put(room.getId(), sameMembers);
+                } else {
+                    toInsert.add(room);
+                }
+            }
+
+            if (!toInsert.isEmpty()) {
+                final LocalDateTime now = LocalDateTime.now();
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate("""
+                            INSERT INTO message_room (id, name, is_group, created_date, created_by, message_count, member_key)
+                            VALUES (?, ?, ?, ?, ?, 0, ?)
+                            """, toInsert, toInsert.size(), (ps, room) -> {
+                        ps.setObject(1, room.getId());
+                        ps.setString(2, room.getName());
+                        ps.setBoolean(3, room.getIsGroup());
+                        ps.setObject(4, room.getCreatedDate() == null ? now : room.getCreatedDate());
+                        ps.setString(5, room.getCreatedBy());
+                        ps.setString(6, keyOf.get(room));
+                    });
+                    final List<Object[]> memberRows = new ArrayList<>();
+                    toInsert.forEach(room -> membersOf.get(room).forEach(username ->
+                            memberRows.add(new Object[]{room.getId(), username, username.equals(room.getCreatedBy()), now})));
+                    jdbcTemplate.batchUpdate("""
+                            INSERT INTO message_room_member (message_room_id, username, is_admin, last_seen, unread_count)
+                            VALUES (?, ?, ?, ?, 0)
+                            """, memberRows);
+                });
+                toInsert.forEach(room -> roomIds.put(room.getId(), room.getId()));
+                job.rooms.addAndGet(toInsert.size());
+            }
+            rooms.clear();
+        }
+
+        private void flushMessages() {
+            // Resolved for this batch here, so cache evictions in between can't drop a lookup
+            final Map<UUID, UUID> batchRooms = new HashMap<>();
+            final Set<UUID> unresolvedRooms = new HashSet<>();
+            final Set<String> senders = new HashSet<>();
+            messages.forEach(m -> {
+                if (m.getRoomId() != null && !batchRooms.containsKey(m.getRoomId())) {
+                    final UUID stored = storedRoomId(m.getRoomId());
+                    if (stored != null) batchRooms.put(m.getRoomId(), stored);
+                    else unresolvedRooms.add(m.getRoomId());
+                }
+                if (m.getSender() != null) senders.add(m.getSender());
+            });
+            existing("SELECT id FROM message_room WHERE id IN (:ids)", unresolvedRooms).forEach(id -> {
+                roomIds.put(id, id);
+                batchRooms.put(id, id);
+            });
+            final Set<String> knownUsers = resolveUsers(senders);
+            final Set<UUID> alreadyImported = existing("SELECT id FROM message_content WHERE id IN (:ids)",
+                    messages.stream().map(ImportRecord::getId).filter(Objects::nonNull).toList());
+
+            final List<MessageContentDTO> rows = new ArrayList<>(messages.size());
+            final Set<UUID> batchIds = new HashSet<>();
+            for (final ImportRecord m : messages) {
+                final UUID roomId = m.getRoomId() == null ? null : batchRooms.get(m.getRoomId());
+                if (roomId == null) {
+                    job.skip("message " + m.getId() + " references unknown room " + m.getRoomId());
+                } else if (m.getSender() == null || !knownUsers.contains(m.getSender())) {
+                    job.skip("message " + m.getId() + " has unknown sender " + m.getSender());
+                } else if (m.getDateSent() == null) {
+                    job.skip("message " + m.getId() + " has no dateSent");
+                } else if (m.getId() != null && (alreadyImported.contains(m.getId()) || !batchIds.add(m.getId()))) {
+                    job.skip("message " + m.getId() + " already imported");
+                } else {
+                    final MessageContentDTO row = new MessageContentDTO();
+                    row.setId(m.getId() == null ? UUID.randomUUID() : m.getId());
+                    row.setContent(m.getContent());
+                    row.setDateSent(m.getDateSent());
+                    row.setMessageType(m.getMessageType() == null ? MessageType.TEXT : m.getMessageType());
+                    row.setMessageRoomId(roomId);
+                    row.setSender(m.getSender());
+                    rows.add(row);
+                }
+            }
+            batchWriter.write(rows);
+            job.messages.addAndGet(rows.size());
+            messages.clear();
+        }
+
+        private UUID storedRoomId(final UUID importId) {
+            final UUID merged = mergedRooms.get(importId);
+            return merged != null ? merged : roomIds.getIfPresent(importId);
+        }
+
+        private Set<String> resolveUsers(final Collection<String> usernames) {
+            final Set<String> known = new HashSet<>();
+            final List<String> missing = new ArrayList<>();
+            usernames.forEach(u -> {
+                if (users.getIfPresent(u) != null) known.add(u);
+                else missing.add(u);
+            });
+            if (!missing.isEmpty()) {
+                namedJdbcTemplate.queryForList("SELECT username FROM app_user WHERE username IN (:names)",
+                                Map.of("names", missing), String.class)
+                        .forEach(u -> {
+                            users.put(u, Boolean.TRUE);
+                            known.add(u);
+                        });
+            }
+            return known;
+        }
+    }
+
+    private Set<UUID> existing(final String sql, final Collection<UUID> ids) {
+        if (ids.isEmpty()) return Set.of();
+        return new HashSet<>(namedJdbcTemplate.queryForList(sql, Map.of("ids", ids), UUID.class));
+    }
+}
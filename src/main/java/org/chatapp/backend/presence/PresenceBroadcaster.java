@@ -0,0 +1,85 @@
+package org.chatapp.backend.presence;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.delivery.MessageFanout;
+import org.chatapp.backend.messageroommember.ContactsCache;
+import org.chatapp.backend.user.UserStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Sends presence changes only to the changed user's contacts (users sharing a room), and only to
+ * those currently online. Changes are collected for delta-interval and sent as one compact frame
+ * per recipient; recipients whose frames are identical share a single encoded message.
+ *
+ * Metrics: chat.presence.delta.recipients (recipients per batch).
+ */
+@Slf4j
+@Component
+public class PresenceBroadcaster {
+
+    public static final String PRESENCE_QUEUE = "/queue/presence";
+
+    private final PresenceRegistry presenceRegistry;
+    private final ContactsCache contactsCache;
+    private final MessageFanout messageFanout;
+    private final DistributionSummary recipientsSummary;
+
+    public PresenceBroadcaster(final PresenceRegistry presenceRegistry,
+                               final ContactsCache contactsCache,
+                               final MessageFanout messageFanout,
+                               final MeterRegistry meterRegistry) {
+        this.presenceRegistry = presenceRegistry;
+        this.contactsCache = contactsCache;
+        this.messageFanout = messageFanout;
+        this.recipientsSummary = DistributionSummary.builder("chat.presence.delta.recipients")
+                .description("Users receiving a presence frame per batch")
+                .register(meterRegistry);
+    }
+
+    public PresenceUpdate snapshotFor(final String username) {
+        final List<String> online = contactsCache.contactsOf(username).stream()
+                .filter(presenceRegistry::isOnline)
+                .sorted()
+                .toList();
+        return new PresenceUpdate(true, online, List.of());
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.delta-interval:PT0.25S}")
+    public void broadcast() {
+        final Map<String, UserStatus> changes = presenceRegistry.drainDeltas();
+        if (changes.isEmpty()) return;
+
+        // Sorted sets so equal frames compare equal below
+        final Map<String, TreeSet<String>> online = new HashMap<>();
+        final Map<String, TreeSet<String>> offline = new HashMap<>();
+        changes.forEach((username, status) -> {
+            final Map<String, TreeSet<String>> target = status == UserStatus.ONLINE ? online : offline;
+            for (final String contact : contactsCache.contactsOf(username)) {
+                if (presenceRegistry.isOnline(contact)) {
+                    target.computeIfAbsent(contact, c -> new TreeSet<>()).add(username);
+                }
+            }
+        });
+
+        final Map<PresenceUpdate, List<String>> recipientsByFrame = new HashMap<>();
+        final TreeSet<String> recipients = new TreeSet<>(online.keySet());
+        recipients.addAll(offline.keySet());
+        for (final String recipient : recipients) {
+            final PresenceUpdate frame = new PresenceUpdate(false,
+                    List.copyOf(online.getOrDefault(recipient, new TreeSet<>())),
+                    List.copyOf(offline.getOrDefault(recipient, new TreeSet<>())));
+            recipientsByFrame.computeIfAbsent(frame, f -> new ArrayList<>()).add(recipient);
+        }
+        recipientsSummary.record(recipients.size());
+        recipientsByFrame.forEach((frame, users) -> messageFanout.sendToUsers(users, PRESENCE_QUEUE, frame));
+    }
+}
@@ -0,0 +1,364 @@
+package org.chatapp.backend.presence;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.chatapp.backend.cluster.ClusterMembership;
+import org.chatapp.backend.user.UserStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Who is online on this node, driven by STOMP session events instead of client-sent connect and
+ * disconnect messages. A user is ONLINE while at least one of their sessions is open; closing the
+ * last one makes them OFFLINE and stamps lastLogin.
+ *
+ * Sessions are bound to a user by the JWT on CONNECT (see {@link StompPresenceInterceptor}) or,
+ * for older clients, by /app/user/connect. Sessions that negotiated STOMP heart-beats and stay
+ * silent for three intervals are expired by the sweeper, so a crashed tab does not stay online.
+ *
+ * Nodes share which users they hold sessions for on the cluster bus (batched every
+ * delta-interval, in full when a node joins), so online/offline is cluster-wide: a user goes
+ * OFFLINE only when no node has a session left, and a node that dies takes its users with it.
+ * Cluster-wide transitions decided here are queued for {@link PresenceBroadcaster}.
+ *
+ * status/lastLogin changes are not written per event: the latest state per user is kept and
+ * flushed as one JDBC batch every flush-interval (and on shutdown). Room rosters are not invalidated
+ * for presence changes; their lastLogin is a snapshot refreshed when the roster reloads.
+ */
+@Slf4j
+@Component
+public class PresenceRegistry implements SmartLifecycle {
+
+    private static final String ONLINE = "ONLINE";
+    private static final String OFFLINE = "OFFLINE";
+    private static final int SYNC_CHUNK = 1000;
+    private static final String UPDATE_PRESENCE =
+            "UPDATE app_user SET status = ?, last_login = COALESCE(?, last_login) WHERE username = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterBus clusterBus;
+    private final ClusterMembership clusterMembership;
+    private final long minExpiryNanos;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    // Negotiated client heart-beat per session, from CONNECT until the session is bound
+    private final Map<String, Long> heartbeats = new ConcurrentHashMap<>();
+    // Users with sessions on other nodes, and which nodes
+    private final Map<String, Set<String>> remoteNodesByUser = new ConcurrentHashMap<>();
+    // Local session-level changes not yet sent to peers (true = has sessions here)
+    private final Map<String, Boolean> peerChanges = new ConcurrentHashMap<>();
+    // Cluster-wide transitions not yet broadcast to contacts
+    private final Map<String, UserStatus> deltas = new ConcurrentHashMap<>();
+    // Cluster-wide online users in username order, for paged listing without the database
+    private final ConcurrentSkipListSet<String> onlineIndex = new ConcurrentSkipListSet<>();
+    // Users whose last local session closed while a peer still had one: we go OFFLINE when that peer says so
+    private final Set<String> deferredOffline = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+
+    public PresenceRegistry(final JdbcTemplate jdbcTemplate,
+                            final ClusterBus clusterBus,
+                            final ClusterMembership clusterMembership,
+                            final MeterRegistry meterRegistry,
+                            @Value("${app.presence.min-session-timeout:PT30S}") final Duration minSessionTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterBus = clusterBus;
+        this.clusterMembership = clusterMembership;
+        this.minExpiryNanos = minSessionTimeout.toNanos();
+        Gauge.builder("chat.presence.sessions", sessions, Map::size)
+                .description("Open STOMP sessions bound to a user on this node")
+                .register(meterRegistry);
+        Gauge.builder("chat.presence.users", sessionsByUser, Map::size)
+                .description("Users with at least one session on this node")
+                .register(meterRegistry);
+        Gauge.builder("chat.presence.pending", pending, Map::size)
+                .description("Presence changes waiting for the next flush")
+                .register(meterRegistry);
+        clusterBus.subscribe(ClusterEnvelope.Kind.PRESENCE, this::onPeerPresence);
+        clusterMembership.onJoin(node -> publishLocalUsers());
+        clusterMembership.onLeave(this::dropNode);
+    }
+
+    // Cluster-wide: a session on any live node counts
+    public boolean isOnline(final String username) {
+        return sessionsByUser.containsKey(username) || remoteNodesByUser.containsKey(username);
+    }
+
+    public Set<String> onlineUsers() {
+        return Collections.unmodifiableSet(onlineIndex);
+    }
+
+    // Online usernames after the cursor (exclusive), ascending; a live view
+    public NavigableSet<String> onlineUsersAfter(final String cursor) {
+        return Collections.unmodifiableNavigableSet(cursor == null ? onlineIndex : onlineIndex.tailSet(cursor, false));
+    }
+
+    public Optional<String> usernameOf(final String sessionId) {
+        final SessionState state = sessionId == null ? null : sessions.get(sessionId);
+        return state == null ? Optional.empty() : Optional.of(state.username);
+    }
+
+    // Transitions since the last call, latest state per user
+    public Map<String, UserStatus> drainDeltas() {
+        return drain(deltas);
+    }
+
+    @EventListener
+    public void onConnected(final SessionConnectedEvent event) {
+        if (event.getUser() != null) {
+            bind(SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()), event.getUser().getName());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(final SessionDisconnectEvent event) {
+        heartbeats.remove(event.getSessionId());
+        unbind(event.getSessionId());
+    }
+
+    /**
+     * Attaches a session to a user; re-binding a session to the same user is a no-op.
+     */
+    public void bind(final String sessionId, final String username) {
+        if (sessionId == null || username == null) return;
+        final SessionState previous = sessions.get(sessionId);
+        if (previous != null && previous.username.equals(username)) return;
+        if (previous != null) unbind(sessionId);
+
+        sessions.put(sessionId, new SessionState(username, heartbeatsFor(sessionId)));
+        sessionsByUser.compute(username, (user, ids) -> {
+            final Set<String> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            if (set.isEmpty()) {
+                peerChanges.put(user, true);
+                deferredOffline.remove(user);
+                if (!remoteNodesByUser.containsKey(user)) transition(user, UserStatus.ONLINE);
+            }
+            set.add(sessionId);
+            onlineIndex.add(user);
+            return set;
+        });
+    }
+
+    public void unbind(final String sessionId) {
+        final SessionState state = sessionId == null ? null : sessions.remove(sessionId);
+        if (state == null) return;
+        sessionsByUser.computeIfPresent(state.username, (user, ids) -> {
+            ids.remove(sessionId);
+            if (!ids.isEmpty()) return ids;
+            peerChanges.put(user, false);
+            if (remoteNodesByUser.containsKey(user)) {
+                deferredOffline.add(user);
+            } else {
+                transition(user, UserStatus.OFFLINE);
+                onlineIndex.remove(user);
+            }
+            return null;
+        });
+    }
+
+    // Called for every inbound frame, heart-beats included
+    public void touch(final String sessionId) {
+        final SessionState state = sessionId == null ? null : sessions.get(sessionId);
+        if (state != null) state.lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Client heart-beat interval from CONNECT, remembered until the session is bound.
+     */
+    public void recordHeartbeat(final String sessionId, final long clientIntervalMillis) {
+        if (sessionId != null && clientIntervalMillis > 0) {
+            heartbeats.put(sessionId, clientIntervalMillis);
+        }
+    }
+
+    private long heartbeatsFor(final String sessionId) {
+        final Long interval = heartbeats.remove(sessionId);
+        return interval == null ? 0 : interval;
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.sweep-interval:PT15S}")
+    public void sweep() {
+        final long now = System.nanoTime();
+        final List<String> expired = new ArrayList<>();
+        sessions.forEach((sessionId, state) -> {
+            // Without negotiated heart-beats silence is normal; rely on the transport closing instead
+            if (state.heartbeatMillis <= 0) return;
+            final long expiry = Math.max(Duration.ofMillis(state.heartbeatMillis * 3).toNanos(), minExpiryNanos);
+            if (now - state.lastActivity > expiry) expired.add(sessionId);
+        });
+        if (!expired.isEmpty()) {
+            log.info("Expiring {} silent sessions", expired.size());
+            expired.forEach(this::unbind);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.delta-interval:PT0.25S}")
+    public void publishPeerChanges() {
+        final Map<String, Boolean> changes = drain(peerChanges);
+        if (changes.isEmpty()) return;
+        final List<String> online = new ArrayList<>();
+        final List<String> offline = new ArrayList<>();
+        changes.forEach((username, here) -> (here ? online : offline).add(username));
+        publish(ONLINE, online);
+        publish(OFFLINE, offline);
+    }
+
+    // After a change to remoteNodesByUser. Runs under the user's sessionsByUser lock, the same one bind
+    // and unbind update the index under, so a local change can't interleave between check and update.
+    private void reindex(final String username) {
+        sessionsByUser.compute(username, (user, ids) -> {
+            if (ids != null || remoteNodesByUser.containsKey(user)) {
+                onlineIndex.add(user);
+            } else {
+                onlineIndex.remove(user);
+            }
+            return ids;
+        });
+    }
+
+    private void transition(final String username, final UserStatus status) {
+        pending.put(username, new PendingWrite(status, status == UserStatus.OFFLINE ? LocalDateTime.now() : null));
+        deltas.put(username, status);
+    }
+
+    private void onPeerPresence(final ClusterEnvelope envelope) {
+        final String node = envelope.originNode();
+        final boolean online = ONLINE.equals(envelope.destination());
+        for (final String username : envelope.usernames()) {
+            if (online) {
+                remoteNodesByUser.computeIfAbsent(username, u -> ConcurrentHashMap.newKeySet()).add(node);
+            } else {
+                remoteNodesByUser.computeIfPresent(username, (u, nodes) -> {
+                    nodes.remove(node);
+                    if (!nodes.isEmpty()) return nodes;
+                    if (deferredOffline.remove(u) && !sessionsByUser.containsKey(u)) transition(u, UserStatus.OFFLINE);
+                    return null;
+                });
+            }
+            reindex(username);
+        }
+    }
+
+    // A node that left (or died) no longer holds sessions; its users may now be offline everywhere.
+    // One survivor (lowest node id) reports those transitions so contacts are not told N times
+    private void dropNode(final String node) {
+        final boolean reporter = clusterMembership.liveNodes().stream().sorted().findFirst()
+                .map(clusterBus.nodeId()::equals).orElse(true);
+        for (final String username : List.copyOf(remoteNodesByUser.keySet())) {
+            remoteNodesByUser.computeIfPresent(username, (u, nodes) -> {
+                if (!nodes.remove(node) || !nodes.isEmpty()) return nodes;
+                if (!sessionsByUser.containsKey(u) && (reporter || deferredOffline.contains(u))) {
+                    deferredOffline.remove(u);
+                    transition(u, UserStatus.OFFLINE);
+                }
+                return null;
+            });
+            reindex(username);
+        }
+    }
+
+    // A joining node knows nothing yet; resend everything this node holds (set semantics, duplicates are harmless)
+    private void publishLocalUsers() {
+        publish(ONLINE, List.copyOf(sessionsByUser.keySet()));
+    }
+
+    private void publish(final String state, final List<String> usernames) {
+        for (int from = 0; from < usernames.size(); from += SYNC_CHUNK) {
+            final List<String> chunk = usernames.subList(from, Math.min(from + SYNC_CHUNK, usernames.size()));
+            clusterBus.publish(new ClusterEnvelope(ClusterEnvelope.Kind.PRESENCE, clusterBus.nodeId(), chunk, state, null, null));
+        }
+    }
+
+    private static <V> Map<String, V> drain(final Map<String, V> source) {
+        final Map<String, V> drained = new HashMap<>();
+        for (final String key : source.keySet()) {
+            final V value = source.remove(key);
+            if (value != null) drained.put(key, value);
+        }
+        return drained;
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval:PT2S}")
+    public void flush() {
+        if (pending.isEmpty()) return;
+        final List<Object[]> rows = new ArrayList<>();
+        for (final String username : pending.keySet()) {
+            final PendingWrite write = pending.remove(username);
+            if (write == null) continue;
+            rows.add(new Object[]{write.status.name(), write.lastLogin == null ? null : Timestamp.valueOf(write.lastLogin), username});
+        }
+        if (rows.isEmpty()) return;
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_PRESENCE, rows);
+        } catch (RuntimeException e) {
+            log.warn("Persisting {} presence changes failed, will retry: {}", rows.size(), e.getMessage());
+            // Re-queue unless a newer change arrived meanwhile
+            rows.forEach(row -> pending.putIfAbsent((String) row[2], new PendingWrite(UserStatus.valueOf((String) row[0]),
+                    row[1] == null ? null : ((Timestamp) row[1]).toLocalDateTime())));
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    // Sessions die with this node: write their users offline before the data source goes away
+    @Override
+    public void stop() {
+        running = false;
+        List.copyOf(sessions.keySet()).forEach(this::unbind);
+        publishPeerChanges();
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // After the web server and STOMP handler have closed their sessions, before the message pipeline drains
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+
+    private static final class SessionState {
+        private final String username;
+        private final long heartbeatMillis;
+        private volatile long lastActivity = System.nanoTime();
+
+        private SessionState(final String username, final long heartbeatMillis) {
+            this.username = username;
+            this.heartbeatMillis = heartbeatMillis;
+        }
+    }
+
+    private record PendingWrite(UserStatus status, LocalDateTime lastLogin) {
+    }
+}
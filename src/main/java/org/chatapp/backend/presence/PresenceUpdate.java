@@ -0,0 +1,20 @@
+package org.chatapp.backend.presence;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Frame on /user/{username}/queue/presence: contacts that came online or went offline since the
+ * previous frame. A snapshot (reply to SUBSCRIBE /app/presence) lists every online contact.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceUpdate {
+    private boolean snapshot;
+    private List<String> online;
+    private List<String> offline;
+}
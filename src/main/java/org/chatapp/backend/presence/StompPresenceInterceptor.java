@@ -0,0 +1,66 @@
+package org.chatapp.backend.presence;
+
+import io.jsonwebtoken.JwtException;
+import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.security.JwtService;
+import org.chatapp.backend.security.RevokedTokenFamilies;
+import org.chatapp.backend.security.VerifiedToken;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Inbound STOMP frames: authenticates CONNECT from an "Authorization: Bearer" native header so the
+ * session carries a Principal (and shows up in presence), and marks every frame, heart-beats
+ * included, as activity for the session. CONNECT without a token stays anonymous as before;
+ * a token that does not verify is rejected.
+ */
+@Component
+@RequiredArgsConstructor
+public class StompPresenceInterceptor implements ChannelInterceptor {
+
+    private static final String BEARER = "Bearer ";
+
+    private final JwtService jwtService;
+    private final PresenceRegistry presenceRegistry;
+    private final RevokedTokenFamilies revokedTokenFamilies;
+
+    @Override
+    public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+        final String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        final StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
+            authenticate(accessor);
+            presenceRegistry.recordHeartbeat(sessionId, accessor.getHeartbeat()[0]);
+        } else {
+            presenceRegistry.touch(sessionId);
+        }
+        return message;
+    }
+
+    private void authenticate(final StompHeaderAccessor accessor) {
+        final List<String> header = accessor.getNativeHeader("Authorization");
+        if (header == null || header.isEmpty() || !header.get(0).startsWith(BEARER)) return;
+        try {
+            final VerifiedToken token = jwtService.verify(header.get(0).substring(BEARER.length()));
+            if (!token.isAccess()) {
+                throw new MessageDeliveryException("An access token is required");
+            }
+            if (revokedTokenFamilies.isRevoked(token.family())) {
+                throw new MessageDeliveryException("Session has been logged out");
+            }
+            accessor.setUser(new UsernamePasswordAuthenticationToken(token.subject(), null, List.of()));
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new MessageDeliveryException("Invalid token");
+        }
+    }
+}
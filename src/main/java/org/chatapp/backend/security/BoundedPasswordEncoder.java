@@ -0,0 +1,91 @@
+package org.chatapp.backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.chatapp.backend.exception.TooManyRequestsException;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the delegate (BCrypt) on a small bounded pool instead of the calling request thread, so a
+ * burst of logins can use at most that pool's CPU. Work that cannot be queued, or that waited in
+ * the queue longer than max-queue-time by the time a worker picks it up, is shed with a 429
+ * rather than hashed for a client that has likely given up.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final class QueueTimeExceeded extends RuntimeException {
+        QueueTimeExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final PasswordEncoder delegate;
+    private final AsyncTaskExecutor executor;
+    private final long maxQueueNanos;
+    private final Timer queueTimer;
+    private final Counter shedCounter;
+
+    public BoundedPasswordEncoder(final PasswordEncoder delegate, final AsyncTaskExecutor executor,
+                                  final Duration maxQueueTime, final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.maxQueueNanos = maxQueueTime.toNanos();
+        this.queueTimer = Timer.builder("auth.password.queue").description("Time password hashes wait for a worker").register(meterRegistry);
+        this.shedCounter = Counter.builder("auth.password.shed").description("Password hashes rejected because the pool was saturated").register(meterRegistry);
+    }
+
+    @Override
+    public String encode(final CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(final CharSequence rawPassword, final String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(final String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(final Callable<T> work) {
+        final long queuedAt = System.nanoTime();
+        final Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                final long waited = System.nanoTime() - queuedAt;
+                queueTimer.record(waited, TimeUnit.NANOSECONDS);
+                if (waited > maxQueueNanos) throw new QueueTimeExceeded();
+                return work.call();
+            });
+        } catch (TaskRejectedException e) {
+            throw busy();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof QueueTimeExceeded) throw busy();
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw busy();
+        }
+    }
+
+    private TooManyRequestsException busy() {
+        shedCounter.increment();
+        return new TooManyRequestsException("Too many sign-in attempts in progress, please try again shortly", Duration.ofSeconds(1));
+    }
+}
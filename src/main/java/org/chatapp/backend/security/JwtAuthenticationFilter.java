@@ -8,8 +8,8 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -20,13 +20,13 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
-    private final org.chatapp.backend.user.UserRepository userRepository;
+    private final PrincipalCache principalCache;
+    private final RevokedTokenFamilies revokedTokenFamilies;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService, org.chatapp.backend.user.UserRepository userRepository) {
+    public JwtAuthenticationFilter(JwtService jwtService, PrincipalCache principalCache, RevokedTokenFamilies revokedTokenFamilies) {
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
-        this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.revokedTokenFamilies = revokedTokenFamilies;
     }
 
     @Override
@@ -40,14 +40,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         final String jwt = authHeader.substring(7);
         try {
-            final String username = jwtService.extractUsername(jwt);
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            // One parse verifies signature and expiry; the subject is taken from the result
+            final VerifiedToken token = jwtService.verify(jwt);
+            final String username = token.subject();
+            // Only access tokens authenticate requests; logged-out sessions are an in-memory lookup, no query per request
+            if (username != null && token.isAccess() && !revokedTokenFamilies.isRevoked(token.family())
+                    && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // Authorities and verification state come from the principal cache, not the database
+                final PrincipalCache.CachedPrincipal principal = principalCache.get(username).orElse(null);
                 // Ensure the account is verified before authenticating the request
-                boolean isVerified = userRepository.findById(username)
-                        .map(org.chatapp.backend.user.User::getVerified)
-                        .orElse(false);
-                if (isVerified && jwtService.isTokenValid(jwt, userDetails.getUsername())) {
+                if (principal != null && principal.verified()) {
+                    UserDetails userDetails = User.withUsername(principal.username())
+                            .password("")
+                            .authorities(principal.authorities())
+                            .build();
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
                             null,
@@ -1,16 +1,21 @@
 package org.chatapp.backend.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
+import java.time.Duration;
 import java.util.Date;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 @Service
@@ -25,6 +30,37 @@ public class JwtService {
     @Value("${app.security.jwt.refresh-expiration-ms:1209600000}") // 14 days
     private long refreshExpirationMs;
 
+    // Built once; both are immutable and thread-safe
+    private Key signInKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    void init() {
+        signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signInKey)
+                .build();
+    }
+
+    /**
+     * Verifies signature and expiry with a single parse.
+     *
+     * @throws JwtException if the token is malformed, tampered with or expired
+     * @throws IllegalArgumentException if the token is null or blank
+     */
+    public VerifiedToken verify(String token) {
+        final Claims claims = extractAllClaims(token);
+        final Object typ = claims.get("typ");
+        final Object fam = claims.get("fam");
+        return new VerifiedToken(
+                claims.getSubject(),
+                typ == null ? null : typ.toString(),
+                claims.getExpiration() == null ? null : claims.getExpiration().toInstant(),
+                claims.getIssuedAt() == null ? null : claims.getIssuedAt().toInstant(),
+                fam == null ? null : UUID.fromString(fam.toString()),
+                claims.getId() == null ? null : UUID.fromString(claims.getId()));
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -39,50 +75,47 @@ public class JwtService {
     }
 
     public String generateAccessToken(String username) {
-        return buildToken(Map.of("typ", "access"), username, accessExpirationMs);
+        return buildToken(Map.of("typ", "access"), username, null, accessExpirationMs);
     }
 
-    public String generateRefreshToken(String username) {
-        return buildToken(Map.of("typ", "refresh"), username, refreshExpirationMs);
+    // Carries the family so revoking it also rejects the family's outstanding access tokens
+    public String generateAccessToken(String username, UUID family) {
+        return buildToken(Map.of("typ", "access", "fam", family.toString()), username, null, accessExpirationMs);
     }
 
-    public boolean isTokenValid(String token, String username) {
-        final String extracted = extractUsername(token);
-        return (extracted != null && extracted.equals(username) && !isTokenExpired(token));
+    // tokenId (jti) identifies this link of the family's rotation chain
+    public String generateRefreshToken(String username, UUID family, UUID tokenId) {
+        return buildToken(Map.of("typ", "refresh", "fam", family.toString()), username, tokenId, refreshExpirationMs);
     }
 
-    public boolean isRefreshToken(String token) {
-        Claims claims = extractAllClaims(token);
-        Object typ = claims.get("typ");
-        return typ != null && "refresh".equals(typ.toString());
+    public Duration getRefreshExpiration() {
+        return Duration.ofMillis(refreshExpirationMs);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public boolean isTokenValid(String token, String username) {
+        // The parser rejects expired tokens, so one successful parse is enough
+        final String extracted = verify(token).subject();
+        return extracted != null && extracted.equals(username);
     }
 
-    private String buildToken(Map<String, Object> extraClaims, String username, long expirationMs) {
+    public boolean isRefreshToken(String token) {
+        return verify(token).isRefresh();
+    }
+
+    private String buildToken(Map<String, Object> extraClaims, String username, UUID tokenId, long expirationMs) {
         Date now = new Date();
         Date expiry = new Date(now.getTime() + expirationMs);
         return Jwts.builder()
                 .setClaims(extraClaims)
+                .setId(tokenId == null ? null : tokenId.toString())
                 .setSubject(username)
                 .setIssuedAt(now)
                 .setExpiration(expiry)
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signInKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-    }
-
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secret);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return parser.parseClaimsJws(token).getBody();
     }
 }
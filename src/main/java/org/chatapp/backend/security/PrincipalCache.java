@@ -0,0 +1,64 @@
+package org.chatapp.backend.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.chatapp.backend.user.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded, TTL-based cache of what request authentication needs about a user: authorities and
+ * whether the account is verified. Loaded with a single lookup on a miss; callers that change
+ * either must {@link #invalidate(String)}. Hit/miss/eviction metrics are published as cache "principals".
+ */
+@Component
+public class PrincipalCache {
+
+    public record CachedPrincipal(String username, List<GrantedAuthority> authorities, boolean verified) {
+    }
+
+    private static final List<GrantedAuthority> USER_AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+    private static final List<GrantedAuthority> ADMIN_AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+    private final UserRepository userRepository;
+    private final Set<String> adminUsernames;
+    private final Cache<String, CachedPrincipal> cache;
+
+    public PrincipalCache(final UserRepository userRepository,
+                          final MeterRegistry meterRegistry,
+                          @Value("${app.security.principal-cache.ttl:PT5M}") final Duration ttl,
+                          @Value("${app.security.principal-cache.max-size:10000}") final long maxSize,
+                          @Value("${app.security.admin-usernames:}") final List<String> adminUsernames) {
+        this.userRepository = userRepository;
+        this.adminUsernames = adminUsernames.stream().map(String::trim).filter(u -> !u.isEmpty()).collect(Collectors.toSet());
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+    }
+
+    // Unknown users are not cached, so a later registration is seen immediately
+    public Optional<CachedPrincipal> get(final String username) {
+        return Optional.ofNullable(cache.get(username, u -> userRepository.findById(u)
+                .map(user -> new CachedPrincipal(user.getUsername(),
+                        adminUsernames.contains(user.getUsername()) ? ADMIN_AUTHORITIES : USER_AUTHORITIES,
+                        Boolean.TRUE.equals(user.getVerified())))
+                .orElse(null)));
+    }
+
+    public void invalidate(final String username) {
+        cache.invalidate(username);
+    }
+}
@@ -0,0 +1,51 @@
+package org.chatapp.backend.security;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One login session (device): the chain of refresh tokens rotated from a single login. Only the
+ * newest token (currentTokenId) may be redeemed; presenting an older one means the chain was
+ * copied, and the whole family is revoked.
+ */
+@Entity
+@Table(name = "refresh_token_family", indexes = {
+        @Index(name = "idx_refresh_token_family_username", columnList = "username"),
+        @Index(name = "idx_refresh_token_family_revoked_at", columnList = "revoked_at"),
+        @Index(name = "idx_refresh_token_family_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RefreshTokenFamily {
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(nullable = false)
+    private UUID currentTokenId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime rotatedAt;
+
+    // Expiry of the newest refresh token; nothing from the family is valid after this
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    private LocalDateTime revokedAt;
+
+    // logout, logout_all, reuse
+    @Column(length = 32)
+    private String revokeReason;
+}
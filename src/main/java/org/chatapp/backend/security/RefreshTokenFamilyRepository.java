@@ -0,0 +1,43 @@
+package org.chatapp.backend.security;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface RefreshTokenFamilyRepository extends JpaRepository<RefreshTokenFamily, UUID> {
+
+    interface RevokedFamily {
+        UUID getId();
+        LocalDateTime getExpiresAt();
+    }
+
+    // Moves the family to its next token only if the presented one is still the newest
+    @Modifying
+    @Query("""
+        UPDATE RefreshTokenFamily f SET f.currentTokenId = :next, f.rotatedAt = :now, f.expiresAt = :expiresAt
+        WHERE f.id = :id AND f.currentTokenId = :current AND f.revokedAt IS NULL
+        """)
+    int rotate(@Param("id") UUID id, @Param("current") UUID current, @Param("next") UUID next,
+               @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE RefreshTokenFamily f SET f.revokedAt = :now, f.revokeReason = :reason WHERE f.id IN :ids AND f.revokedAt IS NULL")
+    int revoke(@Param("ids") List<UUID> ids, @Param("now") LocalDateTime now, @Param("reason") String reason);
+
+    @Query("SELECT f.id FROM RefreshTokenFamily f WHERE f.username = :username AND f.revokedAt IS NULL AND f.expiresAt > :now")
+    List<UUID> findActiveIds(@Param("username") String username, @Param("now") LocalDateTime now);
+
+    @Query("SELECT f.id AS id, f.expiresAt AS expiresAt FROM RefreshTokenFamily f WHERE f.revokedAt >= :since AND f.expiresAt > :now")
+    List<RevokedFamily> findRevokedSince(@Param("since") LocalDateTime since, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM RefreshTokenFamily f WHERE f.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,87 @@
+package org.chatapp.backend.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revoked refresh-token families that still have live tokens, held in memory so the
+ * authentication filter and STOMP CONNECT check revocation with a hash lookup, not a query.
+ * Loaded at startup, updated by revocations on any node (cluster bus), and re-read from the
+ * database every sync-interval in case a bus message was missed. Entries leave once the family's
+ * tokens have expired, so the set only holds recent revocations.
+ */
+@Slf4j
+@Component
+public class RevokedTokenFamilies implements ApplicationRunner {
+
+    private final RefreshTokenFamilyRepository refreshTokenFamilyRepository;
+    private final Optional<ClusterBus> clusterBus;
+    private final Duration refreshExpiration;
+    private final Duration syncOverlap;
+    // Family id -> when its last token expires
+    private final Map<UUID, LocalDateTime> revoked = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime syncedAt = LocalDateTime.MIN;
+
+    public RevokedTokenFamilies(final RefreshTokenFamilyRepository refreshTokenFamilyRepository,
+                                final Optional<ClusterBus> clusterBus,
+                                final JwtService jwtService,
+                                @Value("${app.security.revocation.sync-overlap:PT1M}") final Duration syncOverlap) {
+        this.refreshTokenFamilyRepository = refreshTokenFamilyRepository;
+        this.clusterBus = clusterBus;
+        this.refreshExpiration = jwtService.getRefreshExpiration();
+        this.syncOverlap = syncOverlap;
+        // Peers do not send expiry; the full refresh lifetime is an upper bound
+        clusterBus.ifPresent(bus -> bus.subscribe(ClusterEnvelope.Kind.TOKEN_FAMILY_REVOKED, envelope -> {
+            final LocalDateTime expiresAt = LocalDateTime.now().plus(refreshExpiration);
+            envelope.tokenFamilies().forEach(family -> revoked.put(family, expiresAt));
+        }));
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        sync();
+        log.info("Loaded {} revoked refresh-token families", revoked.size());
+    }
+
+    public boolean isRevoked(final UUID family) {
+        return family != null && revoked.containsKey(family);
+    }
+
+    // Called after the revocation commits
+    public void revoked(final Collection<UUID> families, final LocalDateTime expiresAt) {
+        if (families.isEmpty()) return;
+        families.forEach(family -> revoked.put(family, expiresAt));
+        clusterBus.ifPresent(bus -> bus.publish(ClusterEnvelope.tokenFamiliesRevoked(bus.nodeId(), families)));
+    }
+
+    // Rows revoked since the last sync (with overlap for clock skew and in-flight commits), then drop expired entries
+    @Scheduled(fixedDelayString = "${app.security.revocation.sync-interval:PT30S}")
+    public void sync() {
+        final LocalDateTime now = LocalDateTime.now();
+        final LocalDateTime since = syncedAt.equals(LocalDateTime.MIN) ? LocalDateTime.of(1970, 1, 1, 0, 0) : syncedAt.minus(syncOverlap);
+        final List<RefreshTokenFamilyRepository.RevokedFamily> families = refreshTokenFamilyRepository.findRevokedSince(since, now);
+        families.forEach(family -> revoked.merge(family.getId(), family.getExpiresAt(), (a, b) -> a.isAfter(b) ? a : b));
+        revoked.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+        syncedAt = now;
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+}
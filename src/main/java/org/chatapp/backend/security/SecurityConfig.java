@@ -1,9 +1,13 @@
 package org.chatapp.backend.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -17,6 +21,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.time.Duration;
+
 @Configuration
 @EnableMethodSecurity
 @RequiredArgsConstructor
@@ -44,6 +50,8 @@ public class SecurityConfig {
                         .requestMatchers("/api/v1/auth/**").permitAll()
                         // Swagger/OpenAPI endpoints
                         .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
+                        // Admin endpoints (bulk import)
+                        .requestMatchers("/api/v1/admin/**").hasRole("ADMIN")
                         // Websocket endpoints
                         .requestMatchers("/api/ws/**", "/topic/**", "/app/**", "/user/**").permitAll()
                         // Static resources (if any)
@@ -56,8 +64,10 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Qualifier("passwordHashExecutor") ThreadPoolTaskExecutor passwordHashExecutor,
+                                           MeterRegistry meterRegistry,
+                                           @Value("${app.auth.bcrypt.max-queue-time:PT1S}") Duration maxQueueTime) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), passwordHashExecutor, maxQueueTime, meterRegistry);
     }
 
     @Bean
@@ -0,0 +1,123 @@
+package org.chatapp.backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.utils.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Issues and rotates refresh tokens as families. Each login starts a family; each refresh
+ * replaces the family's current token id (jti) with a new one. A refresh with any older token of
+ * the family is treated as theft: the family is revoked, which also ends its access tokens via
+ * {@link RevokedTokenFamilies}.
+ */
+@Slf4j
+@Service
+public class TokenFamilyService {
+
+    public record IssuedTokens(String accessToken, String refreshToken) {
+    }
+
+    private final RefreshTokenFamilyRepository refreshTokenFamilyRepository;
+    private final RevokedTokenFamilies revokedTokenFamilies;
+    private final JwtService jwtService;
+    private final Duration retention;
+    private final Counter reuseCounter;
+
+    public TokenFamilyService(final RefreshTokenFamilyRepository refreshTokenFamilyRepository,
+                              final RevokedTokenFamilies revokedTokenFamilies,
+                              final JwtService jwtService,
+                              final MeterRegistry meterRegistry,
+                              @Value("${app.security.revocation.retention:P1D}") final Duration retention) {
+        this.refreshTokenFamilyRepository = refreshTokenFamilyRepository;
+        this.revokedTokenFamilies = revokedTokenFamilies;
+        this.jwtService = jwtService;
+        this.retention = retention;
+        this.reuseCounter = Counter.builder("auth.refresh.reuse").description("Refresh tokens redeemed twice; their family was revoked").register(meterRegistry);
+    }
+
+    @Transactional
+    public IssuedTokens start(final String username) {
+        final LocalDateTime now = LocalDateTime.now();
+        final UUID family = UUID.randomUUID();
+        final UUID tokenId = UUID.randomUUID();
+        refreshTokenFamilyRepository.save(RefreshTokenFamily.builder()
+                .id(family)
+                .username(username)
+                .currentTokenId(tokenId)
+                .createdAt(now)
+                .expiresAt(now.plus(jwtService.getRefreshExpiration()))
+                .build());
+        return issue(username, family, tokenId);
+    }
+
+    /**
+     * Exchanges a verified refresh token for the family's next pair.
+     *
+     * @throws BadCredentialsException if the family is revoked or unknown, or the token was already used
+     */
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public IssuedTokens rotate(final VerifiedToken token) {
+        // Issued before families existed: move it into a family of its own
+        if (token.family() == null || token.tokenId() == null) return start(token.subject());
+        if (revokedTokenFamilies.isRevoked(token.family())) throw new BadCredentialsException("Refresh token revoked");
+        final RefreshTokenFamily family = refreshTokenFamilyRepository.findById(token.family())
+                .filter(f -> f.getUsername().equals(token.subject()))
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+        if (family.getRevokedAt() != null) throw new BadCredentialsException("Refresh token revoked");
+        final LocalDateTime now = LocalDateTime.now();
+        final UUID next = UUID.randomUUID();
+        if (refreshTokenFamilyRepository.rotate(family.getId(), token.tokenId(), next, now, now.plus(jwtService.getRefreshExpiration())) == 0) {
+            // An older link of the chain: someone else holds (or held) a copy of this session
+            reuseCounter.increment();
+            log.warn("Refresh token reuse for {} in family {}; revoking the family", family.getUsername(), family.getId());
+            revoke(List.of(family.getId()), "reuse");
+            throw new BadCredentialsException("Refresh token already used; please log in again");
+        }
+        return issue(family.getUsername(), family.getId(), next);
+    }
+
+    // Logout of one device; a token that does not belong to username is ignored
+    @Transactional
+    public void logout(final VerifiedToken token) {
+        if (token.family() == null) return;
+        refreshTokenFamilyRepository.findById(token.family())
+                .filter(family -> family.getUsername().equals(token.subject()))
+                .ifPresent(family -> revoke(List.of(family.getId()), "logout"));
+    }
+
+    @Transactional
+    public void logoutAll(final String username) {
+        revoke(refreshTokenFamilyRepository.findActiveIds(username, LocalDateTime.now()), "logout_all");
+    }
+
+    // Rows are kept a while after expiry so a late reuse is still reported as revoked
+    @Scheduled(cron = "${app.security.revocation.purge-cron:0 45 3 * * *}")
+    @Transactional
+    public void purgeExpired() {
+        final int deleted = refreshTokenFamilyRepository.deleteExpiredBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) log.info("Purged {} expired refresh-token families", deleted);
+    }
+
+    private void revoke(final List<UUID> families, final String reason) {
+        if (families.isEmpty()) return;
+        refreshTokenFamilyRepository.revoke(families, LocalDateTime.now(), reason);
+        // Upper bound for every family's newest token
+        final LocalDateTime expiresAt = LocalDateTime.now().plus(jwtService.getRefreshExpiration());
+        TransactionCallbacks.afterCommitOrNow(() -> revokedTokenFamilies.revoked(families, expiresAt));
+    }
+
+    private IssuedTokens issue(final String username, final UUID family, final UUID tokenId) {
+        return new IssuedTokens(jwtService.generateAccessToken(username, family), jwtService.generateRefreshToken(username, family, tokenId));
+    }
+}
@@ -0,0 +1,19 @@
+package org.chatapp.backend.security;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Result of verifying a JWT once: signature and expiry already checked by {@link JwtService#verify(String)}.
+ * family and tokenId are null on tokens issued before refresh-token families.
+ */
+public record VerifiedToken(String subject, String type, Instant expiresAt, Instant issuedAt, UUID family, UUID tokenId) {
+
+    public boolean isRefresh() {
+        return "refresh".equals(type);
+    }
+
+    public boolean isAccess() {
+        return "access".equals(type);
+    }
+}
@@ -0,0 +1,49 @@
+package org.chatapp.backend.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.media.AvatarProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes content-addressed avatars no user points at any more. A key is shared by everyone who
+ * uploaded the same picture, so it is not deleted when one user moves away from it: keys that no
+ * upload claimed for the grace period and that no user references are removed here instead.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AvatarSweeper {
+
+    private static final int CHUNK = 1000;
+
+    private final UserRepository userRepository;
+    private final AvatarProcessor avatarProcessor;
+
+    @Value("${app.avatars.orphan-grace:PT1H}")
+    private Duration grace;
+
+    @Scheduled(cron = "${app.avatars.sweep-cron:0 30 4 * * *}")
+    public void sweep() {
+        final Instant cutoff = Instant.now().minus(grace);
+        final List<String> idle = List.copyOf(avatarProcessor.keysIdleSince(cutoff));
+        int deleted = 0;
+        for (int from = 0; from < idle.size(); from += CHUNK) {
+            final List<String> chunk = idle.subList(from, Math.min(from + CHUNK, idle.size()));
+            final Set<String> referenced = new HashSet<>(userRepository.findAvatarUrlsIn(chunk));
+            for (final String key : chunk) {
+                // Re-checked under the processor's claim lock: an upload of the same picture since the query keeps it
+                if (!referenced.contains(key) && avatarProcessor.deleteIfIdleSince(key, cutoff)) deleted++;
+            }
+        }
+        if (deleted > 0) log.info("Deleted {} unreferenced avatars", deleted);
+    }
+}
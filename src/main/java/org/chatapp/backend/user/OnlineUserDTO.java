@@ -0,0 +1,13 @@
+package org.chatapp.backend.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Entry of GET /users/online: no entity load, so only what the presence index knows
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OnlineUserDTO {
+    private String username;
+}
@@ -0,0 +1,14 @@
+package org.chatapp.backend.user;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class OnlineUserPageDTO {
+    // Online users in username order
+    private List<OnlineUserDTO> items;
+    // Pass as ?cursor= for the next page; null on the last page
+    private String next;
+    private boolean hasMore;
+}
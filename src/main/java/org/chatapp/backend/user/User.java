@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.chatapp.backend.media.AvatarSize;
 import org.chatapp.backend.messagecontent.MessageContent;
 import org.chatapp.backend.messageroom.MessageRoom;
 import org.chatapp.backend.messageroommember.MessageRoomMember;
@@ -52,8 +53,12 @@ public class User {
     private List<MessageContent> messageContents;
 
     public String getAvatarUrl() {
+        return getAvatarUrl(AvatarSize.LARGE);
+    }
+
+    public String getAvatarUrl(final AvatarSize size) {
         if(avatarUrl == null) return null;
-        return FileUtils.getAvatarUrl(avatarUrl);
+        return FileUtils.getAvatarUrl(avatarUrl, size);
     }
 
     public String getAvatarShortUrl() {
@@ -5,10 +5,13 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.chatapp.backend.presence.PresenceUpdate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -23,34 +26,45 @@ public class UserController {
 
 
     @MessageMapping("/user/connect") // Receives message from clients sending to /app/user/connect
-    @SendTo("/topic/active") // Send the response to all clients subscribe to /topic/active
-    @Operation(summary = "WebSocket: user connects", description = "Marks a user as online and notifies subscribers at /topic/active")
-    public UserDTO connect(@RequestBody UserDTO userDTO) {
-        return userService.connect(userDTO);
+    @Operation(summary = "WebSocket: user connects", description = "Binds this session to the user for presence (not needed when CONNECT carried a JWT). Contacts are told through /user/queue/presence")
+    public void connect(@RequestBody UserDTO userDTO, SimpMessageHeaderAccessor headerAccessor) {
+        userService.connect(userDTO, headerAccessor.getSessionId());
     }
 
 
 
     @MessageMapping("/user/disconnect") // Receives message from clients sending to /app/user/disconnect
-    @SendTo("/topic/active") // Send the response to all clients subscribe to /topic/active
-    @Operation(summary = "WebSocket: user disconnects", description = "Marks a user as offline and notifies subscribers at /topic/active")
-    public UserDTO disconnect(@RequestBody UserDTO userDTO) {
-        return userService.logout(userDTO.getUsername());
+    @Operation(summary = "WebSocket: user disconnects", description = "Ends this session's presence (closing the socket does the same). Contacts are told through /user/queue/presence")
+    public void disconnect(@RequestBody UserDTO userDTO, SimpMessageHeaderAccessor headerAccessor) {
+        userService.logout(userDTO.getUsername(), headerAccessor.getSessionId());
+    }
+
+
+
+    @SubscribeMapping("/presence") // Clients subscribe to /app/presence once, then follow /user/{username}/queue/presence
+    @Operation(summary = "WebSocket: presence snapshot", description = "Replies once with the caller's online contacts. Later changes arrive as batched deltas on /user/{username}/queue/presence")
+    public PresenceUpdate presenceSnapshot(SimpMessageHeaderAccessor headerAccessor) {
+        return userService.presenceSnapshot(headerAccessor);
     }
 
 
     @GetMapping("/online")
-    @Operation(summary = "List online users")
-    public ResponseEntity<List<UserDTO>> getOnlineUsers() {
-        return ResponseEntity.ok(userService.getOnlineUsers());
+    @Operation(summary = "List online users", description = "Paged in username order from the in-memory presence index. Pass the returned 'next' as ?cursor=; contactsOnly limits the list to users sharing a room with the caller")
+    public ResponseEntity<OnlineUserPageDTO> getOnlineUsers(@RequestParam(required = false) final String cursor,
+                                                            @RequestParam(required = false) final Integer limit,
+                                                            @RequestParam(defaultValue = "false") final boolean contactsOnly,
+                                                            final Principal principal) {
+        return ResponseEntity.ok(userService.getOnlineUsers(cursor, limit, contactsOnly, principal == null ? null : principal.getName()));
     }
 
 
 
     @GetMapping("/search/{username}")
-    @Operation(summary = "Search users by username")
-    public ResponseEntity<List<UserDTO>> searchUsersByUsername(@PathVariable final String username) {
-        return ResponseEntity.ok(userService.searchUsersByUsername(username));
+    @Operation(summary = "Search users by username", description = "Typeahead: exact match, then prefix, then contains (3+ characters), with the caller's contacts first in each group. At most 'limit' results")
+    public ResponseEntity<List<UserDTO>> searchUsersByUsername(@PathVariable final String username,
+                                                               @RequestParam(required = false) final Integer limit,
+                                                               final Principal principal) {
+        return ResponseEntity.ok(userService.searchUsersByUsername(username, limit, principal == null ? null : principal.getName()));
     }
 
 
@@ -2,10 +2,14 @@ package org.chatapp.backend.user;
 
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 public class UserDTO {
     private String username;
     private String password;
     private UserStatus status;
     private String avatarUrl;
+    // Thumbnail URL per size in pixels
+    private Map<Integer, String> avatarUrls;
 }
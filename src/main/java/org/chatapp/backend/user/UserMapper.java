@@ -1,8 +1,13 @@
 package org.chatapp.backend.user;
 
 import lombok.RequiredArgsConstructor;
+import org.chatapp.backend.media.AvatarSize;
+import org.chatapp.backend.utils.FileUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @Component
 @RequiredArgsConstructor
 public class UserMapper {
@@ -11,16 +16,30 @@ public class UserMapper {
         userDTO.setUsername(user.getUsername());
         userDTO.setPassword(user.getPassword());
         userDTO.setStatus(user.getStatus());
-        userDTO.setAvatarUrl(user.getAvatarUrl());
+        setAvatar(userDTO, user.getAvatarShortUrl());
         return userDTO;
     }
 
 
+    public void setAvatar(final UserDTO userDTO, final String avatarKey) {
+        if (avatarKey == null) {
+            userDTO.setAvatarUrl(null);
+            userDTO.setAvatarUrls(null);
+            return;
+        }
+        final Map<Integer, String> urls = new LinkedHashMap<>();
+        for (final AvatarSize size : AvatarSize.values()) {
+            urls.put(size.pixels(), FileUtils.getAvatarUrl(avatarKey, size));
+        }
+        userDTO.setAvatarUrl(urls.get(AvatarSize.LARGE.pixels()));
+        userDTO.setAvatarUrls(urls);
+    }
+
+
     public User toEntity(final UserDTO userDTO, final User user) {
         user.setUsername(userDTO.getUsername());
         user.setPassword(userDTO.getPassword());
         user.setStatus(userDTO.getStatus());
-        user.setAvatarUrl(userDTO.getAvatarUrl());
         return user;
     }
 
@@ -1,15 +1,27 @@
 package org.chatapp.backend.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, String> {
-    List<User> findAllByStatus(UserStatus status);
-    List<User> findAllByUsernameContainingIgnoreCase(String username);
     List<User> findAllByUsernameIn(List<String> usernames);
     Optional<User> findByEmail(String email);
+    boolean existsByAvatarUrl(String avatarUrl);
+
+    @Query("SELECT appUser.avatarUrl FROM User appUser WHERE appUser.avatarUrl IN :avatarUrls")
+    List<String> findAvatarUrlsIn(@Param("avatarUrls") Collection<String> avatarUrls);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE User appUser SET appUser.avatarUrl = :avatarUrl WHERE appUser.username = :username")
+    int updateAvatarUrl(@Param("username") String username, @Param("avatarUrl") String avatarUrl);
 }
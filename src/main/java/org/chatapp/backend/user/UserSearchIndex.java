@@ -0,0 +1,59 @@
+package org.chatapp.backend.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.cluster.ClusterBus;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.chatapp.backend.messageroommember.ContactsCache;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Typeahead over all usernames, backed by {@link UsernameIndex}. Loaded from app_user at startup
+ * and kept current by registrations on any node (published on the cluster bus). Contacts of the
+ * caller are ranked ahead of other users in each tier.
+ */
+@Slf4j
+@Component
+public class UserSearchIndex implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContactsCache contactsCache;
+    private final Optional<ClusterBus> clusterBus;
+    private final UsernameIndex index = new UsernameIndex();
+
+    public UserSearchIndex(final JdbcTemplate jdbcTemplate, final ContactsCache contactsCache, final Optional<ClusterBus> clusterBus) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.contactsCache = contactsCache;
+        this.clusterBus = clusterBus;
+        clusterBus.ifPresent(bus -> bus.subscribe(ClusterEnvelope.Kind.USER_REGISTERED, envelope -> index.addAll(envelope.usernames())));
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        final long start = System.currentTimeMillis();
+        // Own template so the shared one keeps its default fetch size
+        final JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(10_000);
+        streaming.query("SELECT username FROM app_user", rs -> {
+            index.add(rs.getString(1));
+        });
+        log.info("Indexed {} usernames for search in {} ms", index.size(), System.currentTimeMillis() - start);
+    }
+
+    // Called after a user row is created; a rolled-back registration only leaves a name that search results then skip
+    public void registered(final String username) {
+        index.add(username);
+        clusterBus.ifPresent(bus -> bus.publish(new ClusterEnvelope(ClusterEnvelope.Kind.USER_REGISTERED, bus.nodeId(), List.of(username), "", null, null)));
+    }
+
+    public List<String> search(final String query, final int limit, final String caller) {
+        final Set<String> contacts = caller == null ? Set.of() : contactsCache.contactsOf(caller);
+        return index.search(query, limit, contacts);
+    }
+}
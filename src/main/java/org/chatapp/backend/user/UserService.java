@@ -1,21 +1,60 @@
 package org.chatapp.backend.user;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.chatapp.backend.media.AvatarProcessor;
+import org.chatapp.backend.messageroommember.ContactsCache;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.presence.PresenceBroadcaster;
+import org.chatapp.backend.presence.PresenceRegistry;
+import org.chatapp.backend.presence.PresenceUpdate;
+import org.chatapp.backend.security.PrincipalCache;
 import org.chatapp.backend.utils.FileUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.swing.text.html.Option;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final PrincipalCache principalCache;
+    private final RoomRosterCache roomRosterCache;
+    private final PresenceRegistry presenceRegistry;
+    private final PresenceBroadcaster presenceBroadcaster;
+    private final ContactsCache contactsCache;
+    private final UserSearchIndex userSearchIndex;
+    private final AvatarProcessor avatarProcessor;
+    // Latest upload per user still being processed
+    private final Map<String, String> pendingAvatars = new ConcurrentHashMap<>();
+
+    @Value("${app.users.online.default-page-size:50}")
+    private int defaultOnlinePageSize;
+
+    @Value("${app.users.online.max-page-size:200}")
+    private int maxOnlinePageSize;
+
+    @Value("${app.users.search.default-limit:20}")
+    private int defaultSearchLimit;
+
+    @Value("${app.users.search.max-limit:50}")
+    private int maxSearchLimit;
 
 
     public UserDTO login(final UserDTO userDTO) {
@@ -42,72 +81,134 @@ public class UserService {
                 .status(UserStatus.ONLINE)
                 .lastLogin(LocalDateTime.now())
                 .build();
-        return userRepository.save(user);
+        // Status and avatar updates leave the cached principal untouched; account (re)creation does not
+        final User saved = userRepository.save(user);
+        principalCache.invalidate(saved.getUsername());
+        userSearchIndex.registered(saved.getUsername());
+        return saved;
     }
 
 
-    public UserDTO connect(UserDTO userDTO) {
-        Optional<User> user = userRepository.findById(userDTO.getUsername());
-        if (user.isEmpty()) {
-            throw new jakarta.persistence.EntityNotFoundException("User not found");
-        }
-        user.ifPresent(u -> {
-            u.setStatus(UserStatus.ONLINE);
-            userRepository.save(u);
-        });
-        return user.map(u -> userMapper.toDTO(u, new UserDTO())).orElse(null);
+    // Binds an anonymous STOMP session to the user; status is persisted by the presence registry's next flush
+    public UserDTO connect(final UserDTO userDTO, final String sessionId) {
+        final User user = userRepository.findById(userDTO.getUsername())
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("User not found"));
+        presenceRegistry.bind(sessionId, user.getUsername());
+        final UserDTO connected = userMapper.toDTO(user, new UserDTO());
+        connected.setStatus(UserStatus.ONLINE);
+        return connected;
     }
 
 
 
-    public List<UserDTO> getOnlineUsers() {
-        return userRepository.findAllByStatus(UserStatus.ONLINE)
-                .stream()
-                .map(u -> userMapper.toDTO(u, new UserDTO()))
-                .toList();
+    // The session's user comes from its JWT principal or an earlier /app/user/connect
+    public PresenceUpdate presenceSnapshot(final SimpMessageHeaderAccessor headerAccessor) {
+        final Optional<String> username = headerAccessor.getUser() != null
+                ? Optional.of(headerAccessor.getUser().getName())
+                : presenceRegistry.usernameOf(headerAccessor.getSessionId());
+        return username.map(presenceBroadcaster::snapshotFor)
+                .orElseGet(() -> new PresenceUpdate(true, List.of(), List.of()));
     }
 
 
 
-    public UserDTO logout(final String username) {
-        Optional<User> user = userRepository.findById(username);
-        if (user.isEmpty()) {
-            throw new jakarta.persistence.EntityNotFoundException("User not found");
+    // Served from the in-memory presence index; contactsOnly walks the caller's contacts instead
+    public OnlineUserPageDTO getOnlineUsers(final String cursor, final Integer limit, final boolean contactsOnly, final String caller) {
+        final int pageSize = limit == null ? defaultOnlinePageSize : Math.min(Math.max(limit, 1), maxOnlinePageSize);
+        final Iterable<String> candidates;
+        if (contactsOnly) {
+            if (caller == null) {
+                throw new IllegalArgumentException("contactsOnly requires an authenticated user");
+            }
+            final TreeSet<String> contacts = new TreeSet<>(contactsCache.contactsOf(caller));
+            candidates = cursor == null ? contacts : contacts.tailSet(cursor, false);
+        } else {
+            candidates = presenceRegistry.onlineUsersAfter(cursor);
         }
-        user.ifPresent(u -> {
-            u.setStatus(UserStatus.OFFLINE);
-            u.setLastLogin(LocalDateTime.now());
-            userRepository.save(u);
-        });
-        return user.map(u -> userMapper.toDTO(u, new UserDTO())).orElse(null);
+        final List<OnlineUserDTO> items = new ArrayList<>(pageSize);
+        boolean hasMore = false;
+        for (final String username : candidates) {
+            if (contactsOnly && !presenceRegistry.isOnline(username)) continue;
+            if (items.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            items.add(new OnlineUserDTO(username));
+        }
+
+        final OnlineUserPageDTO page = new OnlineUserPageDTO();
+        page.setItems(items);
+        page.setHasMore(hasMore);
+        page.setNext(hasMore ? items.get(items.size() - 1).getUsername() : null);
+        return page;
     }
 
 
 
-    public List<UserDTO> searchUsersByUsername(final String username) {
-        return userRepository.findAllByUsernameContainingIgnoreCase(username)
-                .stream()
+    // Ends this session's presence; the user stays online while another of their sessions is open
+    public UserDTO logout(final String username, final String sessionId) {
+        final User user = userRepository.findById(username)
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("User not found"));
+        presenceRegistry.unbind(sessionId);
+        final UserDTO disconnected = userMapper.toDTO(user, new UserDTO());
+        disconnected.setStatus(presenceRegistry.isOnline(username) ? UserStatus.ONLINE : UserStatus.OFFLINE);
+        return disconnected;
+    }
+
+
+
+    // Ranked matches from the in-memory index; only the returned page is loaded, by primary key
+    public List<UserDTO> searchUsersByUsername(final String username, final Integer limit, final String caller) {
+        final int size = limit == null ? defaultSearchLimit : Math.min(Math.max(limit, 1), maxSearchLimit);
+        final List<String> ranked = userSearchIndex.search(username, size, caller);
+        if (ranked.isEmpty()) return List.of();
+        final Map<String, User> users = userRepository.findAllByUsernameIn(ranked).stream()
+                .collect(Collectors.toMap(User::getUsername, Function.identity()));
+        return ranked.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
                 .map(u -> userMapper.toDTO(u, new UserDTO()))
                 .toList();
     }
 
 
 
+    // The upload is hashed here and thumbnailed in the background; the user switches to it once every size exists.
+    // URLs are content-addressed, so the ones returned are final as soon as processing completes.
     public UserDTO uploadAvatar(final MultipartFile file, final String username) {
-        final Optional<User> user = userRepository.findById(username);
+        final User user = userRepository.findById(username)
+                .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("User not found"));
+
+        final AvatarProcessor.Upload upload = avatarProcessor.store(file);
+        pendingAvatars.put(username, upload.key());
+        upload.ready().whenComplete((ignored, error) -> {
+            if (error != null) {
+                pendingAvatars.remove(username, upload.key());
+                log.warn("Avatar {} for {} could not be processed: {}", upload.key(), username, error.getMessage());
+                return;
+            }
+            applyAvatar(username, upload.key());
+        });
 
-        if(user.isEmpty())  {
-            throw new jakarta.persistence.EntityNotFoundException("User not found");
-        }
-        if(user.get().getAvatarUrl() != null) {
-            // delete
-            FileUtils.deleteFile("/" + FileUtils.FOLDER_AVATAR + "/" + user.get().getAvatarShortUrl());
+        final UserDTO userDTO = userMapper.toDTO(user, new UserDTO());
+        userMapper.setAvatar(userDTO, upload.key());
+        return userDTO;
+    }
+
+
+
+    private void applyAvatar(final String username, final String key) {
+        // A newer upload finished first or is still pending: this one is already stale
+        if (!pendingAvatars.remove(username, key)) return;
+        final String previous = userRepository.findById(username).map(User::getAvatarShortUrl).orElse(null);
+        if (key.equals(previous) || userRepository.updateAvatarUrl(username, key) == 0) return;
+        roomRosterCache.invalidateUser(username);
+
+        // Content-addressed files may be shared by users who uploaded the same picture: AvatarSweeper
+        // removes them once unreferenced. Older per-upload file names belong to this user alone
+        if (previous != null && !AvatarProcessor.isContentKey(previous) && !userRepository.existsByAvatarUrl(previous)) {
+            FileUtils.deleteFile("/" + FileUtils.FOLDER_AVATAR + "/" + previous);
         }
-        // upload
-        String avatarUrl = FileUtils.storeFile(file, FileUtils.FOLDER_AVATAR);
-        user.get().setAvatarUrl(avatarUrl);
-        userRepository.save(user.get());
-        return user.map(u -> userMapper.toDTO(u, new UserDTO())).orElse(null);
     }
 
 }
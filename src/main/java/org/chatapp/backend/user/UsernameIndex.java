@@ -0,0 +1,189 @@
+package org.chatapp.backend.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory username search. A sorted map of lower-cased names answers exact and prefix lookups;
+ * trigram posting lists (ids in insertion order, so each list is sorted) answer "contains" for
+ * queries of three or more characters. Results are ranked exact, then prefix, then contains;
+ * within each tier boosted names (the caller's contacts) come first.
+ *
+ * Thread-safe; registrations take a write lock, searches a read lock.
+ */
+public class UsernameIndex {
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Lower-cased name + separator + name, so case variants of one name stay distinct
+    private final TreeMap<String, Integer> byKey = new TreeMap<>();
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> lowerNames = new ArrayList<>();
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+
+    public void add(final String username) {
+        if (username == null || username.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            if (idsByName.containsKey(username)) return;
+            final int id = names.size();
+            final String lower = lower(username);
+            names.add(username);
+            lowerNames.add(lower);
+            idsByName.put(username, id);
+            byKey.put(lower + KEY_SEPARATOR + username, id);
+            for (final long trigram : trigramsOf(lower)) {
+                trigrams.computeIfAbsent(trigram, t -> new Postings()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(final Collection<String> usernames) {
+        usernames.forEach(this::add);
+    }
+
+    // Leaves the id in the posting lists as a tombstone; searches skip it
+    public void remove(final String username) {
+        lock.writeLock().lock();
+        try {
+            final Integer id = idsByName.remove(username);
+            if (id == null) return;
+            byKey.remove(lowerNames.get(id) + KEY_SEPARATOR + username);
+            names.set(id, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idsByName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> search(final String query, final int limit, final Set<String> boosted) {
+        final String q = query == null ? "" : lower(query.trim());
+        if (q.isEmpty() || limit <= 0) return List.of();
+
+        lock.readLock().lock();
+        try {
+            final LinkedHashSet<String> results = new LinkedHashSet<>();
+            final Map<Integer, List<String>> boostedByTier = rankBoosted(q, boosted);
+
+            // Exact
+            addAll(results, boostedByTier.get(0), limit);
+            for (final Integer id : byKey.subMap(q + KEY_SEPARATOR, q + (char) (KEY_SEPARATOR + 1)).values()) {
+                if (!add(results, names.get(id), limit)) return List.copyOf(results);
+            }
+            // Prefix, in name order
+            addAll(results, boostedByTier.get(1), limit);
+            for (final Integer id : byKey.subMap(q, q + Character.MAX_VALUE).values()) {
+                if (!add(results, names.get(id), limit)) return List.copyOf(results);
+            }
+            // Contains, in registration order
+            addAll(results, boostedByTier.get(2), limit);
+            if (q.length() >= 3 && results.size() < limit) {
+                containing(q, results, limit);
+            }
+            return List.copyOf(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Tier 0 exact, 1 prefix, 2 contains (3+ characters only, like the index)
+    private Map<Integer, List<String>> rankBoosted(final String q, final Set<String> boosted) {
+        final Map<Integer, List<String>> tiers = new HashMap<>();
+        for (final String name : boosted) {
+            if (!idsByName.containsKey(name)) continue;
+            final String lower = lower(name);
+            final int tier = lower.equals(q) ? 0 : lower.startsWith(q) ? 1 : q.length() >= 3 && lower.contains(q) ? 2 : -1;
+            if (tier >= 0) tiers.computeIfAbsent(tier, t -> new ArrayList<>()).add(name);
+        }
+        tiers.values().forEach(list -> list.sort(Comparator.naturalOrder()));
+        return tiers;
+    }
+
+    private void containing(final String q, final LinkedHashSet<String> results, final int limit) {
+        final long[] grams = trigramsOf(q);
+        final Postings[] lists = new Postings[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = trigrams.get(grams[i]);
+            if (lists[i] == null) return;
+        }
+        // Walk the rarest trigram, probe the others
+        Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+        final Postings rarest = lists[0];
+        candidates:
+        for (int i = 0; i < rarest.size; i++) {
+            final int id = rarest.ids[i];
+            for (int j = 1; j < lists.length; j++) {
+                if (!lists[j].contains(id)) continue candidates;
+            }
+            final String name = names.get(id);
+            // Trigrams can all occur without the query being contiguous
+            if (name == null || !lowerNames.get(id).contains(q)) continue;
+            if (!add(results, name, limit)) return;
+        }
+    }
+
+    private static void addAll(final LinkedHashSet<String> results, final List<String> names, final int limit) {
+        if (names == null) return;
+        for (final String name : names) {
+            if (!add(results, name, limit)) return;
+        }
+    }
+
+    // false once the result set is full
+    private static boolean add(final LinkedHashSet<String> results, final String name, final int limit) {
+        if (results.size() >= limit) return false;
+        if (name != null) results.add(name);
+        return results.size() < limit;
+    }
+
+    // Distinct trigrams, each packed as three 16-bit chars
+    private static long[] trigramsOf(final String lower) {
+        if (lower.length() < 3) return new long[0];
+        return IntStream.rangeClosed(0, lower.length() - 3)
+                .mapToLong(i -> ((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16) | lower.charAt(i + 2))
+                .distinct()
+                .toArray();
+    }
+
+    private static String lower(final String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(final int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        boolean contains(final int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.chatapp.backend.utils;
 
+import org.chatapp.backend.media.AvatarProcessor;
+import org.chatapp.backend.media.AvatarSize;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
@@ -21,6 +23,7 @@ public class FileUtils {
 
     public final static String FOLDER_UPLOAD = "uploads";
     public final static String FOLDER_AVATAR = "avatars";
+    public final static String FOLDER_ATTACHMENT = "attachments";
 
 
     public static String storeFile(final MultipartFile file, final String folderName) {
@@ -64,8 +67,16 @@ public class FileUtils {
 
 
 
-    public static String getAvatarUrl(final String fileName) {
+    // Content keys have one file per size; older avatars are a single file served at every size
+    public static String getAvatarUrl(final String avatarKey, final AvatarSize size) {
+        final String fileName = AvatarProcessor.isContentKey(avatarKey) ? AvatarProcessor.fileName(avatarKey, size) : avatarKey;
         return BACKEND_URL + "/images/" + FOLDER_AVATAR + "/" + fileName;
     }
 
+
+
+    public static String getAttachmentUrl(final String fileName) {
+        return BACKEND_URL + "/images/" + FOLDER_ATTACHMENT + "/" + fileName;
+    }
+
 }
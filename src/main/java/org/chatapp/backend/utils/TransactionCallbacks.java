@@ -0,0 +1,35 @@
+package org.chatapp.backend.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs work once the surrounding transaction has committed, for cache invalidation, cluster
+ * notifications and wake-ups that must not be seen before the data they describe.
+ */
+public final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    // After commit inside a transaction; at once outside one
+    public static void afterCommitOrNow(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            afterCommit(action);
+        } else {
+            action.run();
+        }
+    }
+
+    // After commit inside a transaction; nothing outside one (for a second pass after an immediate one)
+    public static void afterCommit(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.chatapp.backend.attachment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.cluster.ClusterConfig;
+import org.chatapp.backend.delivery.MessageFanout;
+import org.chatapp.backend.exception.GlobalExceptionHandler;
+import org.chatapp.backend.exception.TooManyRequestsException;
+import org.chatapp.backend.media.ImageService;
+import org.chatapp.backend.messagecontent.MessageContentMapper;
+import org.chatapp.backend.messagecontent.MessageContentService;
+import org.chatapp.backend.messagecontent.MessageSendService;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Resumable upload end to end on H2: a chunk cut off mid-stream keeps what arrived, the client
+ * resumes from the reported offset, completion verifies the checksum and posts an IMAGE message.
+ * Stored files are served to room members only, and non-images as downloads.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080",
+        "app.cluster.in-jvm.group=attachment-test",
+        "app.attachments.max-uploads-per-user=2",
+        "app.attachments.max-chunk-size=64KB"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({AttachmentService.class, MessageSendService.class, MessageContentService.class, MessageContentMapper.class,
+        MessageFanout.class, RoomRosterCache.class, ImageService.class, ClusterConfig.class, SimpleMeterRegistry.class,
+        FileUtils.class, AttachmentServiceTest.CapturedFrames.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AttachmentServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @TempDir
+    static Path storage;
+
+    @DynamicPropertySource
+    static void directories(final DynamicPropertyRegistry registry) {
+        registry.add("app.attachments.dir", () -> storage.resolve("attachments").toString());
+        registry.add("app.attachments.partial-dir", () -> storage.resolve("parts").toString());
+    }
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private RoomRosterCache roomRosterCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private List<Message<?>> frames;
+
+    private UUID roomId;
+
+    @BeforeEach
+    void setUp() {
+        roomId = UUID.randomUUID();
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, TRUE)",
+                    username, T0);
+        }
+        jdbcTemplate.update("INSERT INTO message_room (id, is_group, created_by, message_count) VALUES (?, FALSE, 'alice', 0)", roomId);
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO message_room_member (message_room_id, username, is_admin, last_seen, unread_count) VALUES (?, ?, FALSE, ?, 0)",
+                    roomId, username, T0);
+        }
+        frames.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM attachment_upload");
+        jdbcTemplate.update("DELETE FROM message_room_member");
+        jdbcTemplate.update("UPDATE message_room SET last_message_id = NULL");
+        jdbcTemplate.update("DELETE FROM message_content");
+        jdbcTemplate.update("DELETE FROM message_room");
+        jdbcTemplate.update("DELETE FROM app_user");
+    }
+
+    @Test
+    void resumesAnInterruptedChunkAndPostsTheMessage() throws Exception {
+        final byte[] file = new byte[100_000];
+        new Random(3).nextBytes(file);
+        final AttachmentUploadDTO upload = attachmentService.create(request("holiday photo.JPG", file), "alice");
+        assertThat(upload.getContentType()).isEqualTo("image/jpeg");
+
+        attachmentService.writeChunk(upload.getId(), 0, new ByteArrayInputStream(file, 0, 40_000), "alice");
+        // Connection dropped after 25 000 bytes of the second chunk
+        assertThatThrownBy(() -> attachmentService.writeChunk(upload.getId(), 40_000, failingAfter(file, 40_000, 25_000), "alice"))
+                .isInstanceOf(UncheckedIOException.class);
+        final long resumeAt = attachmentService.getStatus(upload.getId(), "alice").getReceived();
+        assertThat(resumeAt).isEqualTo(65_000);
+
+        assertThatThrownBy(() -> attachmentService.writeChunk(upload.getId(), 40_000, new ByteArrayInputStream(file, 40_000, 10), "alice"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Chunk must start at offset 65000");
+        attachmentService.writeChunk(upload.getId(), resumeAt, new ByteArrayInputStream(file, (int) resumeAt, file.length - (int) resumeAt), "alice");
+
+        final AttachmentUploadDTO completed = attachmentService.complete(upload.getId(), "alice");
+        assertThat(completed.getStatus()).isEqualTo(AttachmentUploadStatus.COMPLETED);
+        assertThat(completed.getUrl()).isEqualTo("http://localhost:8080/images/attachments/" + upload.getId() + "-holiday_photo.JPG");
+        assertThat(Files.readAllBytes(storage.resolve("attachments").resolve(upload.getId() + "-holiday_photo.JPG"))).isEqualTo(file);
+        assertThat(jdbcTemplate.queryForObject("SELECT message_type FROM message_content WHERE message_room_id = ?", String.class, roomId))
+                .isEqualTo("IMAGE");
+        assertThat(frames).hasSize(2);
+    }
+
+    @Test
+    void checksumMismatchRestartsTheUpload() throws Exception {
+        final byte[] file = "report contents".getBytes();
+        final AttachmentUploadRequest request = request("report.pdf", file);
+        request.setSha256("0".repeat(64));
+        final AttachmentUploadDTO upload = attachmentService.create(request, "bob");
+        attachmentService.writeChunk(upload.getId(), 0, new ByteArrayInputStream(file), "bob");
+
+        assertThatThrownBy(() -> attachmentService.complete(upload.getId(), "bob"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Checksum mismatch");
+        assertThat(attachmentService.getStatus(upload.getId(), "bob").getReceived()).isZero();
+        assertThat(frames).isEmpty();
+    }
+
+    @Test
+    void enforcesSizesMembershipAndTheOpenUploadCap() throws Exception {
+        final byte[] file = new byte[10];
+        final AttachmentUploadDTO first = attachmentService.create(request("a.txt", file), "alice");
+        attachmentService.create(request("b.txt", file), "alice");
+        assertThatThrownBy(() -> attachmentService.create(request("c.txt", file), "alice"))
+                .isInstanceOf(TooManyRequestsException.class);
+
+        assertThatThrownBy(() -> attachmentService.writeChunk(first.getId(), 0, new ByteArrayInputStream(new byte[11]), "alice"))
+                .hasMessage("Chunk goes past the declared file size");
+        assertThat(attachmentService.getStatus(first.getId(), "alice").getReceived()).isZero();
+        assertThatThrownBy(() -> attachmentService.getStatus(first.getId(), "bob"))
+                .isInstanceOf(jakarta.persistence.EntityNotFoundException.class);
+
+        attachmentService.cancel(first.getId(), "alice");
+        jdbcTemplate.update("DELETE FROM message_room_member WHERE username = 'bob'");
+        assertThatThrownBy(() -> attachmentService.create(request("d.txt", file), "carol"))
+                .isInstanceOf(jakarta.persistence.EntityNotFoundException.class);
+    }
+
+    @Test
+    void servesFilesToRoomMembersOnlyAndNonImagesAsDownloads() throws Exception {
+        final byte[] page = "<html><script>alert(1)</script></html>".getBytes();
+        final AttachmentUploadDTO upload = attachmentService.create(request("page.html", page), "alice");
+        attachmentService.writeChunk(upload.getId(), 0, new ByteArrayInputStream(page), "alice");
+        final String storedName = upload.getId() + "-page.html";
+        assertThat(attachmentService.complete(upload.getId(), "alice").getUrl()).endsWith("/images/attachments/" + storedName);
+
+        final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AttachmentFileController(attachmentService, imageService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+        mockMvc.perform(get("/images/attachments/{file}", storedName).principal(() -> "bob"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"page.html\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, no-cache"))
+                .andExpect(content().bytes(page));
+
+        jdbcTemplate.update("DELETE FROM message_room_member WHERE username = 'bob'");
+        roomRosterCache.invalidate(roomId);
+        mockMvc.perform(get("/images/attachments/{file}", storedName).principal(() -> "bob"))
+                .andExpect(status().isNotFound());
+        assertThatThrownBy(() -> attachmentService.findFile(UUID.randomUUID() + "-page.html", "alice"))
+                .isInstanceOf(jakarta.persistence.EntityNotFoundException.class);
+    }
+
+    private AttachmentUploadRequest request(final String fileName, final byte[] content) throws Exception {
+        final AttachmentUploadRequest request = new AttachmentUploadRequest();
+        request.setMessageRoomId(roomId);
+        request.setFileName(fileName);
+        request.setSize((long) content.length);
+        request.setSha256(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)));
+        return request;
+    }
+
+    private static InputStream failingAfter(final byte[] file, final int from, final int bytes) {
+        final InputStream data = new ByteArrayInputStream(Arrays.copyOfRange(file, from, from + bytes));
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final int b = data.read();
+                if (b < 0) throw new IOException("Connection reset");
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                final int n = data.read(buffer, offset, length);
+                if (n < 0) throw new IOException("Connection reset");
+                return n;
+            }
+        };
+    }
+
+    // Frames sent to users' queues, in place of the STOMP broker
+    @TestConfiguration
+    static class CapturedFrames {
+
+        private final List<Message<?>> frames = new CopyOnWriteArrayList<>();
+
+        @Bean
+        List<Message<?>> frames() {
+            return frames;
+        }
+
+        @Bean
+        SimpMessagingTemplate simpMessagingTemplate() {
+            return new SimpMessagingTemplate((message, timeout) -> frames.add(message));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.chatapp.backend.auth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.exception.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class AuthRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final AuthRateLimiter limiter = new AuthRateLimiter(new SimpleMeterRegistry(), true,
+            "5/PT1M", "3/PT1M", "2/PT10M", "10/PT10M", "1/PT10M", 1_000, now::get);
+
+    @Test
+    void accountLimitAppliesAcrossIpsAndCaseVariants() {
+        limiter.checkLogin("10.0.0.1", "alice");
+        limiter.checkLogin("10.0.0.2", "Alice");
+        limiter.checkLogin("10.0.0.3", " ALICE ");
+
+        assertThatThrownBy(() -> limiter.checkLogin("10.0.0.4", "alice"))
+                .isInstanceOf(TooManyRequestsException.class);
+        assertThatCode(() -> limiter.checkLogin("10.0.0.4", "bob")).doesNotThrowAnyException();
+    }
+
+    @Test
+    void ipLimitAppliesAcrossAccounts() {
+        for (int i = 0; i < 5; i++) {
+            limiter.checkLogin("10.0.0.9", "user" + i);
+        }
+
+        assertThatThrownBy(() -> limiter.checkLogin("10.0.0.9", "someone-else"))
+                .isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    void bucketRefillsOverThePeriodAndReportsRetryAfter() {
+        limiter.checkRegister("10.0.0.5");
+        limiter.checkRegister("10.0.0.5");
+
+        // 2 per 10 minutes: the next token is 5 minutes away
+        final TooManyRequestsException rejected = catchThrowableOfType(() -> limiter.checkRegister("10.0.0.5"), TooManyRequestsException.class);
+        assertThat(rejected.getRetryAfter()).isBetween(Duration.ofMinutes(5).minusSeconds(1), Duration.ofMinutes(5));
+
+        now.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertThatCode(() -> limiter.checkRegister("10.0.0.5")).doesNotThrowAnyException();
+        assertThatThrownBy(() -> limiter.checkRegister("10.0.0.5")).isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    void rejectsMalformedLimits() {
+        assertThatThrownBy(() -> new AuthRateLimiter(new SimpleMeterRegistry(), true,
+                "5 per minute", "3/PT1M", "2/PT10M", "10/PT10M", "1/PT10M", 1_000, now::get))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
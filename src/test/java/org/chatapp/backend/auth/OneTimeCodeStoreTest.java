@@ -0,0 +1,150 @@
+package org.chatapp.backend.auth;
+
+import org.chatapp.backend.auth.OneTimeCodeStore.Result;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Both stores against the same expectations; the database one on H2.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(DatabaseOneTimeCodeStore.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OneTimeCodeStoreTest {
+
+    @Autowired
+    private DatabaseOneTimeCodeStore databaseStore;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final InMemoryOneTimeCodeStore memoryStore = new InMemoryOneTimeCodeStore();
+
+    @Test
+    void checksCountAttemptsAndConsume() {
+        checksCountAttemptsAndConsume(memoryStore);
+        checksCountAttemptsAndConsume(databaseStore);
+    }
+
+    @Test
+    void concurrentWrongGuessesNeverExceedTheLimit() throws Exception {
+        concurrentWrongGuessesNeverExceedTheLimit(memoryStore);
+        concurrentWrongGuessesNeverExceedTheLimit(databaseStore);
+    }
+
+    @Test
+    void concurrentIssuesForOneSubjectLeaveOneLiveCode() throws Exception {
+        concurrentIssuesForOneSubjectLeaveOneLiveCode(memoryStore, Runnable::run);
+        // AuthService issues inside its own transaction
+        concurrentIssuesForOneSubjectLeaveOneLiveCode(databaseStore, issue -> transactionTemplate.executeWithoutResult(status -> issue.run()));
+    }
+
+    @Test
+    void purgeRemovesOnlyExpiredCodes() throws Exception {
+        purgeRemovesOnlyExpiredCodes(memoryStore);
+        purgeRemovesOnlyExpiredCodes(databaseStore);
+    }
+
+    private static void checksCountAttemptsAndConsume(final OneTimeCodeStore store) {
+        final OneTimeCodePurpose purpose = OneTimeCodePurpose.PASSWORD_RESET;
+        assertThat(store.check(purpose, "alice", "12345", 3, false)).isEqualTo(Result.MISSING);
+
+        store.issue(purpose, "alice", "11111", Duration.ofMinutes(10));
+        // A new code replaces the previous one
+        store.issue(purpose, "alice", "12345", Duration.ofMinutes(10));
+        assertThat(store.issuedAt(purpose, "alice")).isPresent();
+        assertThat(store.check(purpose, "alice", "11111", 3, false)).isEqualTo(Result.MISMATCH);
+        // Correct guesses do not use up attempts
+        assertThat(store.check(purpose, "alice", "12345", 3, false)).isEqualTo(Result.OK);
+        assertThat(store.check(purpose, "alice", "12345", 3, false)).isEqualTo(Result.OK);
+        assertThat(store.check(purpose, "alice", "12345", 3, true)).isEqualTo(Result.OK);
+        assertThat(store.check(purpose, "alice", "12345", 3, true)).isEqualTo(Result.USED);
+
+        store.issue(purpose, "bob", "22222", Duration.ofMinutes(10));
+        assertThat(store.check(purpose, "bob", "0", 2, false)).isEqualTo(Result.MISMATCH);
+        assertThat(store.check(purpose, "bob", "0", 2, false)).isEqualTo(Result.MISMATCH);
+        assertThat(store.check(purpose, "bob", "22222", 2, true)).isEqualTo(Result.TOO_MANY_ATTEMPTS);
+
+        store.issue(OneTimeCodePurpose.VERIFY_EMAIL, "bob", "33333", Duration.ofMillis(-1));
+        assertThat(store.check(OneTimeCodePurpose.VERIFY_EMAIL, "bob", "33333", 2, true)).isEqualTo(Result.EXPIRED);
+        store.invalidate(OneTimeCodePurpose.VERIFY_EMAIL, "bob");
+        assertThat(store.check(OneTimeCodePurpose.VERIFY_EMAIL, "bob", "33333", 2, true)).isEqualTo(Result.MISSING);
+    }
+
+    private static void concurrentWrongGuessesNeverExceedTheLimit(final OneTimeCodeStore store) throws Exception {
+        store.issue(OneTimeCodePurpose.VERIFY_EMAIL, "carol", "424242", Duration.ofMinutes(10));
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<Result>> guesses = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final String guess = String.valueOf(i);
+                guesses.add(() -> store.check(OneTimeCodePurpose.VERIFY_EMAIL, "carol", guess, 5, false));
+            }
+            int mismatches = 0;
+            for (final Future<Result> result : executor.invokeAll(guesses)) {
+                if (result.get() == Result.MISMATCH) mismatches++;
+            }
+            assertThat(mismatches).isEqualTo(5);
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(store.check(OneTimeCodePurpose.VERIFY_EMAIL, "carol", "424242", 5, false)).isEqualTo(Result.TOO_MANY_ATTEMPTS);
+    }
+
+    // Two forgot-password or register requests at once must both succeed, not fail on the unique index
+    private static void concurrentIssuesForOneSubjectLeaveOneLiveCode(final OneTimeCodeStore store,
+                                                                      final Consumer<Runnable> caller) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<Void>> issues = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final String code = "code-" + i;
+                issues.add(() -> {
+                    caller.accept(() -> store.issue(OneTimeCodePurpose.PASSWORD_RESET, "grace", code, Duration.ofMinutes(10)));
+                    return null;
+                });
+            }
+            for (final Future<Void> issued : executor.invokeAll(issues)) {
+                issued.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        int live = 0;
+        for (int i = 0; i < 40; i++) {
+            if (store.check(OneTimeCodePurpose.PASSWORD_RESET, "grace", "code-" + i, 100, false) == Result.OK) live++;
+        }
+        assertThat(live).isEqualTo(1);
+    }
+
+    private static void purgeRemovesOnlyExpiredCodes(final OneTimeCodeStore store) throws Exception {
+        store.issue(OneTimeCodePurpose.PASSWORD_RESET, "dave", "1", Duration.ofMillis(1));
+        store.issue(OneTimeCodePurpose.PASSWORD_RESET, "erin", "2", Duration.ofMinutes(10));
+        // Reissued with a longer TTL: the first code's expiry must not remove the new one
+        store.issue(OneTimeCodePurpose.VERIFY_EMAIL, "frank", "3", Duration.ofMillis(1));
+        store.issue(OneTimeCodePurpose.VERIFY_EMAIL, "frank", "4", Duration.ofMinutes(10));
+        Thread.sleep(20);
+
+        store.purgeExpired();
+
+        assertThat(store.issuedAt(OneTimeCodePurpose.PASSWORD_RESET, "dave")).isEmpty();
+        assertThat(store.issuedAt(OneTimeCodePurpose.PASSWORD_RESET, "erin")).isPresent();
+        assertThat(store.check(OneTimeCodePurpose.VERIFY_EMAIL, "frank", "4", 5, false)).isEqualTo(Result.OK);
+    }
+}
@@ -0,0 +1,193 @@
+package org.chatapp.backend.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.delivery.MessageFanout;
+import org.chatapp.backend.messagecontent.MessageContentBatchWriter;
+import org.chatapp.backend.messagecontent.MessageContentDTO;
+import org.chatapp.backend.messagecontent.MessageContentMapper;
+import org.chatapp.backend.messagecontent.MessageContentService;
+import org.chatapp.backend.messagecontent.MessagePersistencePipeline;
+import org.chatapp.backend.messagecontent.MessageSendService;
+import org.chatapp.backend.messagecontent.MessageType;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.utils.FileUtils;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One node of {@link ClusterThroughputTest}, run in its own JVM:
+ * {@code ClusterLoadNode <nodeId> <port> <peer,peer,...> <expectedNodes> <durationMillis>}.
+ *
+ * Boots the real send path: {@link MessageSendService} over the TCP bus, with room workers, the
+ * roster cache, fan-out and the write-behind pipeline, on a private in-memory H2 seeded with the
+ * same rooms on every node. The broker discards frames. Sender threads call send() for random
+ * rooms, so each call is handled here or forwarded to the room's owner and confirmed.
+ * Prints "PROCESSED <count>" with the number of sends that completed for this node's senders.
+ */
+public final class ClusterLoadNode {
+
+    private static final int ROOMS = 2_000;
+    private static final int USERS = 500;
+    private static final int SENDER_THREADS = 16;
+    private static final String SECRET = "cluster-load-test-secret-0123456789";
+    // message_content.content is a VARCHAR(255)
+    private static final String BODY = "x".repeat(200);
+
+    private ClusterLoadNode() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final String nodeId = args[0];
+        final String port = args[1];
+        final String peers = args.length > 2 ? args[2] : "";
+        final int expectedNodes = Integer.parseInt(args[3]);
+        final long durationMillis = Long.parseLong(args[4]);
+
+        // DevTools is on the test classpath; its restart would run main() again with the Spring arguments
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        final ConfigurableApplicationContext context = new SpringApplication(LoadNodeApplication.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:" + nodeId + ";DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--app.messages.pipeline.enabled=true",
+                // Small queues, so senders are held to the rate the writers sustain
+                "--app.messages.pipeline.queue-capacity=500",
+                "--app.cluster.mode=tcp",
+                "--app.cluster.node-id=" + nodeId,
+                "--app.cluster.tcp.port=" + port,
+                "--app.cluster.tcp.peers=" + peers,
+                "--app.cluster.tcp.secret=" + SECRET,
+                "--app.cluster.heartbeat-interval=PT0.2S",
+                "--app.cluster.failure-detection-heartbeats=5");
+        seed(context.getBean(JdbcTemplate.class));
+        // Measure a warm node: active rooms' rosters are cached in a running server
+        final RoomRosterCache roomRosterCache = context.getBean(RoomRosterCache.class);
+        for (int room = 0; room < ROOMS; room++) {
+            roomRosterCache.get(new UUID(0, room));
+        }
+        final MessageSendService messageSendService = context.getBean(MessageSendService.class);
+        final ClusterMembership membership = context.getBean(ClusterMembership.class);
+
+        // Heart-beats are @Scheduled in the application; no scheduler here
+        final Thread heartbeats = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                membership.tick();
+                LockSupport.parkNanos(200_000_000L);
+            }
+        });
+        heartbeats.setDaemon(true);
+        heartbeats.start();
+
+        final long joinDeadline = System.nanoTime() + 30_000_000_000L;
+        while (membership.liveNodes().size() < expectedNodes && System.nanoTime() < joinDeadline) {
+            Thread.sleep(50);
+        }
+        // Let every node see the full ring before measuring
+        Thread.sleep(1_000);
+
+        final AtomicLong processed = new AtomicLong();
+        final long end = System.nanoTime() + durationMillis * 1_000_000L;
+        final List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < SENDER_THREADS; i++) {
+            final Thread sender = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    final int room = ThreadLocalRandom.current().nextInt(ROOMS);
+                    try {
+                        messageSendService.send(message(room));
+                        processed.incrementAndGet();
+                    } catch (IllegalStateException busy) {
+                        // A full room worker or pipeline queue pushes back; try again shortly
+                        LockSupport.parkNanos(100_000);
+                    }
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        for (final Thread sender : senders) {
+            sender.join();
+        }
+        final long counted = processed.get();
+        System.out.println("PROCESSED " + counted);
+        System.out.flush();
+        // Stay up briefly so peers' last forwards are still answered
+        Thread.sleep(1_000);
+        System.exit(0);
+    }
+
+    // Same rooms on every node: room i is new UUID(0, i) with two members, the first one sends
+    private static void seed(final JdbcTemplate jdbcTemplate) {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<Object[]> users = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            users.add(new Object[]{user(u), now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, TRUE)", users);
+        final List<Object[]> rooms = new ArrayList<>();
+        final List<Object[]> members = new ArrayList<>();
+        for (int r = 0; r < ROOMS; r++) {
+            rooms.add(new Object[]{new UUID(0, r), user(r)});
+            members.add(new Object[]{new UUID(0, r), user(r), now});
+            members.add(new Object[]{new UUID(0, r), user(r + 1), now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO message_room (id, is_group, created_by, message_count) VALUES (?, FALSE, ?, 0)", rooms);
+        jdbcTemplate.batchUpdate("INSERT INTO message_room_member (message_room_id, username, is_admin, last_seen, unread_count) VALUES (?, ?, FALSE, ?, 0)", members);
+    }
+
+    private static MessageContentDTO message(final int room) {
+        final MessageContentDTO message = new MessageContentDTO();
+        message.setMessageRoomId(new UUID(0, room));
+        message.setSender(user(room));
+        message.setContent(BODY);
+        message.setMessageType(MessageType.TEXT);
+        return message;
+    }
+
+    private static String user(final int index) {
+        return "user-" + Math.floorMod(index, USERS);
+    }
+
+    // Deliberately not a @Configuration, so component scans over test classes do not pick it up
+    @AutoConfigureDataJpa
+    @AutoConfigurationPackage(basePackages = "org.chatapp.backend")
+    @EnableJpaAuditing
+    @ImportAutoConfiguration(JacksonAutoConfiguration.class)
+    @Import({MessageSendService.class, MessageContentService.class, MessageContentMapper.class, MessageContentBatchWriter.class,
+            MessagePersistencePipeline.class, MessageFanout.class, RoomRosterCache.class, ClusterConfig.class, FileUtils.class})
+    static class LoadNodeApplication {
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        // Sessions live in browsers; on a load node there is nobody to deliver to
+        @Bean
+        SimpMessagingTemplate simpMessagingTemplate() {
+            return new SimpMessagingTemplate((message, timeout) -> true);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.chatapp.backend.cluster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts 1..N {@link ClusterLoadNode} JVMs on localhost and reports completed
+ * {@code MessageSendService.send} calls per second for each cluster size. Slow and machine-dependent, so only runs with -Dcluster.loadtest=true, e.g.
+ * {@code mvn test -Dtest=ClusterThroughputTest -Dcluster.loadtest=true -Dcluster.loadtest.max-nodes=4}.
+ */
+@EnabledIfSystemProperty(named = "cluster.loadtest", matches = "true")
+class ClusterThroughputTest {
+
+    private static final long DURATION_MILLIS = Long.getLong("cluster.loadtest.duration-ms", 5_000);
+
+    @Test
+    void throughputAsNodesAreAdded() throws Exception {
+        final int maxNodes = Integer.getInteger("cluster.loadtest.max-nodes", 3);
+        for (int nodes = 1; nodes <= maxNodes; nodes++) {
+            final long processed = run(nodes);
+            System.out.printf("cluster throughput: %d node(s) -> %,d msg/s%n", nodes, processed * 1000 / DURATION_MILLIS);
+            assertThat(processed).isPositive();
+        }
+    }
+
+    private static long run(final int nodes) throws Exception {
+        final int[] ports = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            ports[i] = freePort();
+        }
+        final List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < nodes; i++) {
+                final List<String> peers = new ArrayList<>();
+                for (int j = 0; j < nodes; j++) {
+                    if (j != i) peers.add("localhost:" + ports[j]);
+                }
+                processes.add(new ProcessBuilder(
+                        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp", System.getProperty("java.class.path"),
+                        ClusterLoadNode.class.getName(),
+                        "node-" + i, String.valueOf(ports[i]), String.join(",", peers),
+                        String.valueOf(nodes), String.valueOf(DURATION_MILLIS))
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start());
+            }
+            long total = 0;
+            for (final Process process : processes) {
+                total += readProcessed(process);
+                assertThat(process.waitFor(30, TimeUnit.SECONDS)).isTrue();
+            }
+            return total;
+        } finally {
+            processes.forEach(Process::destroyForcibly);
+        }
+    }
+
+    private static long readProcessed(final Process process) throws IOException {
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.startsWith("PROCESSED ")) {
+                    return Long.parseLong(line.substring("PROCESSED ".length()).trim());
+                }
+            }
+        }
+        throw new IllegalStateException("Load node exited without reporting");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.chatapp.backend.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rooms spread roughly evenly, every node computes the same owner, and adding a node only moves
+ * rooms onto the new node.
+ */
+class ConsistentHashRingTest {
+
+    private static final List<UUID> ROOMS = IntStream.range(0, 20_000).mapToObj(i -> UUID.randomUUID()).toList();
+
+    @Test
+    void addingANodeOnlyMovesRoomsToIt() {
+        final ConsistentHashRing three = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        final ConsistentHashRing four = new ConsistentHashRing(List.of("d", "c", "b", "a"), 128);
+
+        final Map<String, Integer> load = new HashMap<>();
+        int moved = 0;
+        for (final UUID room : ROOMS) {
+            final String before = three.ownerOf(room);
+            final String after = four.ownerOf(room);
+            assertThat(new ConsistentHashRing(List.of("c", "a", "b"), 128).ownerOf(room)).isEqualTo(before);
+            if (!before.equals(after)) {
+                assertThat(after).isEqualTo("d");
+                moved++;
+            }
+            load.merge(after, 1, Integer::sum);
+        }
+        assertThat(moved).isBetween(ROOMS.size() / 8, ROOMS.size() * 3 / 8);
+        assertThat(load.values()).allSatisfy(count -> assertThat(count).isBetween(ROOMS.size() / 6, ROOMS.size() / 3));
+    }
+}
@@ -0,0 +1,113 @@
+package org.chatapp.backend.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Three nodes on localhost in a full mesh: a publish reaches every other node exactly once and is
+ * never echoed back to the publisher, including frames queued before the peers were listening.
+ * A node without the shared secret neither receives nor injects frames.
+ */
+class TcpClusterBusTest {
+
+    private static final byte[] SECRET = "test-cluster-secret-0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private final List<TcpClusterBus> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(TcpClusterBus::stop);
+    }
+
+    @Test
+    void publishReachesEveryPeerOnce() throws Exception {
+        final int[] ports = {freePort(), freePort(), freePort()};
+        final List<List<ClusterEnvelope>> received = new ArrayList<>();
+        for (int i = 0; i < ports.length; i++) {
+            final List<InetSocketAddress> peers = new ArrayList<>();
+            for (int j = 0; j < ports.length; j++) {
+                if (j != i) peers.add(InetSocketAddress.createUnresolved("localhost", ports[j]));
+            }
+            final TcpClusterBus node = new TcpClusterBus("node-" + i, new InetSocketAddress("localhost", ports[i]), peers, 100, SECRET);
+            final List<ClusterEnvelope> inbox = new CopyOnWriteArrayList<>();
+            node.subscribe(ClusterEnvelope.Kind.DELIVER, inbox::add);
+            nodes.add(node);
+            received.add(inbox);
+        }
+        // Node 0 publishes before its peers listen: the frame waits in the queue until they connect
+        nodes.get(0).start();
+        nodes.get(0).publish(envelope("node-0", "early"));
+        nodes.get(1).start();
+        nodes.get(2).start();
+        nodes.get(0).publish(envelope("node-0", "late"));
+
+        awaitSize(received.get(1), 2);
+        awaitSize(received.get(2), 2);
+        assertThat(received.get(0)).isEmpty();
+        final ClusterEnvelope first = received.get(1).get(0);
+        assertThat(first.originNode()).isEqualTo("node-0");
+        assertThat(first.usernames()).containsExactly("alice", "bob");
+        assertThat(first.destination()).isEqualTo("/queue/messages");
+        assertThat(first.contentType()).isEqualTo("application/json");
+        assertThat(received.get(2)).extracting(e -> new String(e.payload(), StandardCharsets.UTF_8))
+                .containsExactly("{\"content\":\"early\"}", "{\"content\":\"late\"}");
+    }
+
+    @Test
+    void nodeWithoutTheSecretIsShutOut() throws Exception {
+        final int[] ports = {freePort(), freePort(), freePort()};
+        final byte[][] secrets = {SECRET, "some-other-secret-0123456789abcdef".getBytes(StandardCharsets.UTF_8), SECRET};
+        final List<List<ClusterEnvelope>> received = new ArrayList<>();
+        for (int i = 0; i < ports.length; i++) {
+            final List<InetSocketAddress> peers = new ArrayList<>();
+            for (int j = 0; j < ports.length; j++) {
+                if (j != i) peers.add(InetSocketAddress.createUnresolved("localhost", ports[j]));
+            }
+            final TcpClusterBus node = new TcpClusterBus("node-" + i, new InetSocketAddress("localhost", ports[i]), peers, 100, secrets[i]);
+            final List<ClusterEnvelope> inbox = new CopyOnWriteArrayList<>();
+            node.subscribe(ClusterEnvelope.Kind.DELIVER, inbox::add);
+            node.start();
+            nodes.add(node);
+            received.add(inbox);
+        }
+        nodes.get(1).publish(envelope("node-1", "intruder"));
+        nodes.get(0).publish(envelope("node-0", "members only"));
+
+        awaitSize(received.get(2), 1);
+        // Give the rejected links time to retry; nothing crosses them
+        Thread.sleep(500);
+        assertThat(received.get(0)).isEmpty();
+        assertThat(received.get(1)).isEmpty();
+        assertThat(received.get(2)).extracting(ClusterEnvelope::originNode).containsExactly("node-0");
+    }
+
+    private static ClusterEnvelope envelope(final String origin, final String content) {
+        return ClusterEnvelope.deliver(origin, List.of("alice", "bob"), "/queue/messages", "application/json",
+                ("{\"content\":\"" + content + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void awaitSize(final List<?> list, final int size) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (list.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(list).hasSize(size);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
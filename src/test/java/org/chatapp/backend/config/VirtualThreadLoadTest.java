@@ -0,0 +1,143 @@
+package org.chatapp.backend.config;
+
+import jakarta.servlet.ServletRegistration;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput and p99 latency of embedded Tomcat on its platform thread pool against virtual
+ * threads, with 5k concurrent clients and a handler that blocks the way our JDBC and HTTP calls
+ * do. Needs Java 21 and enough file descriptors for 2x clients sockets, and is machine-dependent,
+ * so only runs with -Dthreads.loadtest=true, e.g.
+ * {@code mvn test -Dtest=VirtualThreadLoadTest -Dthreads.loadtest=true -Dthreads.loadtest.clients=5000}.
+ */
+@EnabledIfSystemProperty(named = "threads.loadtest", matches = "true")
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadLoadTest {
+
+    private static final long DURATION_MILLIS = Long.getLong("threads.loadtest.duration-ms", 10_000);
+    private static final long WARMUP_MILLIS = Long.getLong("threads.loadtest.warmup-ms", 3_000);
+    private static final int CLIENTS = Integer.getInteger("threads.loadtest.clients", 5_000);
+    // Time a request spends waiting on the database or a provider
+    private static final long BLOCKING_MILLIS = Long.getLong("threads.loadtest.blocking-ms", 50);
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        final Result platform = run(false);
+        final Result virtual = run(true);
+        report("platform", platform);
+        report("virtual ", virtual);
+        assertThat(platform.requests()).isPositive();
+        assertThat(virtual.requests()).isPositive();
+    }
+
+    private record Result(long requests, long errors, long p50Millis, long p99Millis) {
+    }
+
+    private static void report(final String label, final Result result) {
+        System.out.printf("tomcat %s threads, %,d clients: %,d req/s, p50 %d ms, p99 %d ms, %,d errors%n",
+                label, CLIENTS, result.requests() * 1000 / DURATION_MILLIS, result.p50Millis(), result.p99Millis(), result.errors());
+    }
+
+    private static Result run(final boolean virtualThreads) throws Exception {
+        final TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        // Same connector limits in both modes; only the request executor differs
+        factory.addConnectorCustomizers(connector -> {
+            connector.setProperty("maxConnections", String.valueOf(CLIENTS * 2));
+            connector.setProperty("acceptCount", String.valueOf(CLIENTS));
+        });
+        if (virtualThreads) {
+            // What spring.threads.virtual.enabled does for the application's Tomcat
+            factory.addProtocolHandlerCustomizers(handler -> handler.setExecutor(new VirtualThreadTaskExecutor("tomcat-handler-")));
+        }
+        final WebServer server = factory.getWebServer(servletContext -> {
+            final ServletRegistration.Dynamic servlet = servletContext.addServlet("blocking", new BlockingServlet());
+            servlet.addMapping("/");
+        });
+        server.start();
+        try {
+            final URI uri = URI.create("http://localhost:" + server.getPort() + "/");
+            drive(uri, WARMUP_MILLIS);
+            return drive(uri, DURATION_MILLIS);
+        } finally {
+            server.stop();
+        }
+    }
+
+    // CLIENTS requests in flight at all times: each completion immediately issues the next request
+    private static Result drive(final URI uri, final long millis) throws InterruptedException {
+        final HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(new VirtualThreadTaskExecutor("client-"))
+                .build();
+        final HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).build();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            send(client, request, running, latencies, errors);
+        }
+        Thread.sleep(millis);
+        running.set(false);
+        final long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        if (sorted.length == 0) return new Result(0, errors.size(), 0, 0);
+        return new Result(sorted.length, errors.size(),
+                sorted[(int) (sorted.length * 0.50)] / 1_000_000,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1_000_000);
+    }
+
+    private static void send(final HttpClient client, final HttpRequest request, final AtomicBoolean running,
+                             final ConcurrentLinkedQueue<Long> latencies, final ConcurrentLinkedQueue<Throwable> errors) {
+        final long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (!running.get()) return;
+            if (error != null || response.statusCode() != 200) {
+                errors.add(error != null ? error : new IllegalStateException("HTTP " + response.statusCode()));
+            } else {
+                latencies.add(System.nanoTime() - start);
+            }
+            send(client, request, running, latencies, errors);
+        });
+    }
+
+    static final class BlockingServlet extends HttpServlet {
+
+        private static final byte[] BODY = new byte[256];
+
+        static {
+            Arrays.fill(BODY, (byte) 'x');
+        }
+
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            try {
+                Thread.sleep(BLOCKING_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setContentType("text/plain");
+            response.setContentLength(BODY.length);
+            response.getOutputStream().write(BODY);
+        }
+    }
+}
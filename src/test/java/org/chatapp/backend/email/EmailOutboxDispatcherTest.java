@@ -0,0 +1,214 @@
+package org.chatapp.backend.email;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.auth.EmailService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Outbox delivery on H2 against a stub Resend API: queued emails go out as one batch, a 500 is
+ * retried, and a rejected batch is split so only the bad recipient fails.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.mail.enabled=true",
+        "app.mail.provider=resend",
+        "app.mail.resend.api-key=test-key",
+        "app.mail.outbox.poll-interval=PT0.1S",
+        "app.mail.outbox.backoff-base=PT0.05S",
+        "app.mail.outbox.max-attempts=3"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({EmailService.class, EmailOutboxDispatcher.class, ResendClient.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailOutboxDispatcherTest {
+
+    private record Call(String path, String idempotencyKey, JsonNode body) {
+    }
+
+    private record Reply(int status, String body) {
+    }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final List<Call> calls = new CopyOnWriteArrayList<>();
+    private static volatile Function<Call, Reply> responder;
+    private static final HttpServer server;
+
+    static {
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        server.createContext("/", EmailOutboxDispatcherTest::handle);
+        server.start();
+    }
+
+    @DynamicPropertySource
+    static void resend(final DynamicPropertyRegistry registry) {
+        registry.add("app.mail.resend.base-url", () -> "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void reset() {
+        responder = EmailOutboxDispatcherTest::accept;
+        calls.clear();
+        emailOutboxRepository.deleteAll();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void queuedEmailsAreSentAsOneBatch() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            emailService.sendHtml("a@example.com", "Your MoChat verification code", "123456");
+            emailService.sendHtml("b@example.com", "Password reset code", emailService.buildResetCodeEmail("b", "54321"));
+            emailService.sendHtml("c@example.com", "Welcome", "<p>Hi &amp; welcome</p>");
+        });
+
+        awaitAll(EmailOutboxStatus.SENT, 3);
+
+        final Call batch = calls.stream().filter(call -> call.path().endsWith("/emails/batch")).findFirst().orElseThrow();
+        assertThat(batch.body()).hasSize(3);
+        assertThat(batch.idempotencyKey()).isNotBlank();
+        final Map<String, JsonNode> byRecipient = emailsSent().stream()
+                .collect(Collectors.toMap(node -> node.path("to").get(0).asText(), node -> node, (a, b) -> a));
+        assertThat(byRecipient.get("a@example.com").path("html").asText()).isEqualTo("123456");
+        assertThat(byRecipient.get("b@example.com").path("tags").get(0).path("value").asText()).isEqualTo("password_reset");
+        assertThat(byRecipient.get("b@example.com").path("html").asText()).contains(">54321</div>");
+        assertThat(byRecipient.get("c@example.com").path("text").asText()).isEqualTo("Hi & welcome");
+        assertThat(emailOutboxRepository.findAll()).allSatisfy(email -> {
+            assertThat(email.getProviderId()).startsWith("re_");
+            assertThat(email.getSentAt()).isNotNull();
+        });
+    }
+
+    @Test
+    void serverErrorIsRetried() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        responder = call -> requests.incrementAndGet() == 1 ? new Reply(500, "{\"message\":\"boom\"}") : accept(call);
+
+        emailService.sendHtml("retry@example.com", "Password reset code", "<p>1</p>");
+
+        awaitAll(EmailOutboxStatus.SENT, 1);
+        final EmailOutbox email = emailOutboxRepository.findAll().get(0);
+        assertThat(email.getAttempts()).isEqualTo(2);
+        assertThat(email.getLastError()).contains("HTTP 500");
+        // The retry reuses the same key, so the provider can drop a duplicate
+        assertThat(calls).extracting(Call::idempotencyKey).containsOnly(email.getId().toString());
+    }
+
+    @Test
+    void rejectedRecipientFailsAlone() throws Exception {
+        responder = call -> call.body().toString().contains("bad-address")
+                ? new Reply(422, "{\"message\":\"Invalid `to` field\"}")
+                : accept(call);
+        transactionTemplate.executeWithoutResult(status -> {
+            emailService.sendHtml("ok1@example.com", "Welcome", "<p>1</p>");
+            emailService.sendHtml("bad-address", "Welcome", "<p>2</p>");
+            emailService.sendHtml("ok2@example.com", "Welcome", "<p>3</p>");
+        });
+
+        awaitSettled(3);
+
+        final Map<String, EmailOutbox> byRecipient = emailOutboxRepository.findAll().stream()
+                .collect(Collectors.toMap(EmailOutbox::getRecipient, email -> email));
+        assertThat(byRecipient.get("ok1@example.com").getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+        assertThat(byRecipient.get("ok2@example.com").getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+        assertThat(byRecipient.get("bad-address").getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(byRecipient.get("bad-address").getLastError()).contains("HTTP 422");
+        assertThat(calls).extracting(Call::path).filteredOn(path -> path.endsWith("/emails/batch")).hasSize(1);
+    }
+
+    private List<JsonNode> emailsSent() {
+        return calls.stream()
+                .flatMap(call -> call.body().isArray()
+                        ? StreamSupport.stream(call.body().spliterator(), false)
+                        : Stream.of(call.body()))
+                .toList();
+    }
+
+    private void awaitAll(final EmailOutboxStatus status, final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            final List<EmailOutbox> emails = emailOutboxRepository.findAll();
+            if (emails.size() == count && emails.stream().allMatch(email -> email.getStatus() == status)) return;
+            Thread.sleep(20);
+        }
+        assertThat(emailOutboxRepository.findAll()).extracting(EmailOutbox::getStatus).containsOnly(status);
+    }
+
+    private void awaitSettled(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            final List<EmailOutbox> emails = emailOutboxRepository.findAll();
+            if (emails.size() == count && emails.stream().allMatch(email ->
+                    email.getStatus() == EmailOutboxStatus.SENT || email.getStatus() == EmailOutboxStatus.FAILED)) return;
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Outbox did not settle: " + emailOutboxRepository.findAll());
+    }
+
+    private static Reply accept(final Call call) {
+        if (!call.body().isArray()) return new Reply(200, "{\"id\":\"re_" + call.idempotencyKey() + "\"}");
+        final StringBuilder data = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < call.body().size(); i++) {
+            data.append(i == 0 ? "" : ",").append("{\"id\":\"re_").append(i).append("\"}");
+        }
+        return new Reply(200, data.append("]}").toString());
+    }
+
+    private static void handle(final HttpExchange exchange) throws IOException {
+        final Call call = new Call(exchange.getRequestURI().getPath(),
+                exchange.getRequestHeaders().getFirst("Idempotency-Key"),
+                JSON.readTree(exchange.getRequestBody()));
+        final Reply reply = responder.apply(call);
+        calls.add(call);
+        final byte[] body = reply.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.status(), body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
@@ -0,0 +1,114 @@
+package org.chatapp.backend.media;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Content-addressed keys, one square JPEG per size, duplicate uploads stored once (and claiming the
+ * key against the orphan sweep), non-images rejected.
+ */
+class AvatarProcessorTest {
+
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void storesThumbnailsUnderTheContentHash() throws Exception {
+        final AvatarProcessor processor = new AvatarProcessor(directory.toString(), executor, 40_000_000L);
+        final byte[] png = png(1200, 800);
+
+        final AvatarProcessor.Upload upload = processor.store(new MockMultipartFile("file", "me.png", "image/png", png));
+        assertThat(upload.key()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png)));
+        upload.ready().get(10, TimeUnit.SECONDS);
+
+        for (final AvatarSize size : AvatarSize.values()) {
+            final BufferedImage thumbnail = ImageIO.read(directory.resolve(AvatarProcessor.fileName(upload.key(), size)).toFile());
+            assertThat(thumbnail.getWidth()).isEqualTo(size.pixels());
+            assertThat(thumbnail.getHeight()).isEqualTo(size.pixels());
+        }
+
+        // Same bytes under another name: nothing to do, and no temporary files left behind
+        final AvatarProcessor.Upload again = processor.store(new MockMultipartFile("file", "copy.png", "image/png", png));
+        assertThat(again.key()).isEqualTo(upload.key());
+        assertThat(again.ready()).isDone();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).hasSize(AvatarSize.values().length);
+        }
+    }
+
+    @Test
+    void sharedKeysAreDeletedOnlyWhenNoUploadClaimedThemRecently() throws Exception {
+        final AvatarProcessor processor = new AvatarProcessor(directory.toString(), executor, 40_000_000L);
+        final byte[] png = png(300, 300);
+        final AvatarProcessor.Upload upload = processor.store(new MockMultipartFile("file", "me.png", "image/png", png));
+        upload.ready().get(10, TimeUnit.SECONDS);
+        final Instant cutoff = Instant.now().minus(Duration.ofHours(1));
+        for (final AvatarSize size : AvatarSize.values()) {
+            Files.setLastModifiedTime(directory.resolve(AvatarProcessor.fileName(upload.key(), size)), FileTime.from(cutoff.minusSeconds(60)));
+        }
+        assertThat(processor.keysIdleSince(cutoff)).containsExactly(upload.key());
+
+        // Someone uploads the same picture: the key is claimed and survives the sweep
+        processor.store(new MockMultipartFile("file", "copy.png", "image/png", png));
+        assertThat(processor.keysIdleSince(cutoff)).isEmpty();
+        assertThat(processor.deleteIfIdleSince(upload.key(), cutoff)).isFalse();
+        assertThat(processor.isProcessed(upload.key())).isTrue();
+
+        assertThat(processor.deleteIfIdleSince(upload.key(), Instant.now().plusSeconds(60))).isTrue();
+        assertThat(processor.isProcessed(upload.key())).isFalse();
+    }
+
+    @Test
+    void rejectsFilesThatAreNotImagesOrTooLarge() throws Exception {
+        final AvatarProcessor processor = new AvatarProcessor(directory.toString(), executor, 10_000L);
+
+        assertThatThrownBy(() -> processor.store(new MockMultipartFile("file", "a.png", "image/png", "not an image".getBytes())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> processor.store(new MockMultipartFile("file", "big.png", "image/png", png(200, 200))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Image is too large");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private static byte[] png(final int width, final int height) throws IOException {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | (x < 10 ? 0 : 0xff000000));
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
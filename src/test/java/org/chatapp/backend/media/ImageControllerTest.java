@@ -0,0 +1,108 @@
+package org.chatapp.backend.media;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.exception.GlobalExceptionHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Cache headers, conditional requests and byte ranges, for a cached small file and a streamed large one.
+ */
+class ImageControllerTest {
+
+    private static final String HASH = "ab".repeat(32);
+
+    @TempDir
+    Path root;
+
+    private MockMvc mockMvc;
+    private byte[] thumbnail;
+    private byte[] photo;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final Random random = new Random(7);
+        thumbnail = new byte[2_000];
+        photo = new byte[300_000];
+        random.nextBytes(thumbnail);
+        random.nextBytes(photo);
+        Files.createDirectories(root.resolve("avatars"));
+        Files.write(root.resolve("avatars").resolve(HASH + "-40.jpg"), thumbnail);
+        Files.write(root.resolve("avatars").resolve("legacy.png"), photo);
+
+        final ImageService imageService = new ImageService(new SimpleMeterRegistry(), root.toString(),
+                DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), Duration.ofMinutes(10), DataSize.ofKilobytes(48));
+        mockMvc = MockMvcBuilders.standaloneSetup(new ImageController(imageService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void contentAddressedFilesAreImmutable() throws Exception {
+        mockMvc.perform(get("/images/avatars/{file}", HASH + "-40.jpg"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "-40\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable"))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                .andExpect(content().bytes(thumbnail));
+
+        mockMvc.perform(get("/images/avatars/{file}", HASH + "-40.jpg").header(HttpHeaders.IF_NONE_MATCH, "\"" + HASH + "-40\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void otherFilesAreRevalidated() throws Exception {
+        final String etag = mockMvc.perform(get("/images/avatars/legacy.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().bytes(photo))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/images/avatars/legacy.png").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void servesSingleByteRanges() throws Exception {
+        mockMvc.perform(get("/images/avatars/legacy.png").header(HttpHeaders.RANGE, "bytes=100000-100009"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 100000-100009/300000"))
+                .andExpect(content().bytes(Arrays.copyOfRange(photo, 100_000, 100_010)));
+
+        mockMvc.perform(get("/images/avatars/{file}", HASH + "-40.jpg").header(HttpHeaders.RANGE, "bytes=-500"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(thumbnail, 1_500, 2_000)));
+
+        mockMvc.perform(get("/images/avatars/legacy.png").header(HttpHeaders.RANGE, "bytes=300000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */300000"));
+
+        // A stale If-Range validator means the client's partial copy is outdated: full file
+        mockMvc.perform(get("/images/avatars/legacy.png").header(HttpHeaders.RANGE, "bytes=0-9").header(HttpHeaders.IF_RANGE, "\"old\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(photo));
+    }
+
+    @Test
+    void rejectsMissingFilesAndPathsOutsideTheRoot() throws Exception {
+        mockMvc.perform(get("/images/avatars/missing.jpg")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/images/avatars/..hidden")).andExpect(status().isBadRequest());
+    }
+}
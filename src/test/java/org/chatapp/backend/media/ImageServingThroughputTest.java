@@ -0,0 +1,141 @@
+package org.chatapp.backend.media;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletRegistration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Requests per second for the previous /images/** resource handler against {@link ImageController},
+ * on embedded Tomcat over loopback, for a 4 KB thumbnail, a 1 MB photo and a revalidated thumbnail.
+ * Machine-dependent, so only runs with -Dimages.loadtest=true, e.g.
+ * {@code mvn test -Dtest=ImageServingThroughputTest -Dimages.loadtest=true -Dimages.loadtest.clients=16}.
+ */
+@EnabledIfSystemProperty(named = "images.loadtest", matches = "true")
+class ImageServingThroughputTest {
+
+    private static final long DURATION_MILLIS = Long.getLong("images.loadtest.duration-ms", 5_000);
+    private static final int CLIENTS = Integer.getInteger("images.loadtest.clients", 8);
+    private static final String THUMBNAIL = "cd".repeat(32) + "-96.jpg";
+
+    private static Path root;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void requestsPerSecond() throws Exception {
+        root = directory;
+        final Random random = new Random(1);
+        final byte[] thumbnail = new byte[4 * 1024];
+        final byte[] photo = new byte[1024 * 1024];
+        random.nextBytes(thumbnail);
+        random.nextBytes(photo);
+        Files.createDirectories(directory.resolve("avatars"));
+        Files.write(directory.resolve("avatars").resolve(THUMBNAIL), thumbnail);
+        Files.write(directory.resolve("avatars").resolve("photo.jpg"), photo);
+
+        final TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        final WebServer server = factory.getWebServer(servletContext -> {
+            final AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+            context.register(Handlers.class);
+            final ServletRegistration.Dynamic dispatcher = servletContext.addServlet("dispatcher", new DispatcherServlet(context));
+            dispatcher.setLoadOnStartup(1);
+            dispatcher.addMapping("/");
+        });
+        server.start();
+        try {
+            final String base = "http://localhost:" + server.getPort();
+            final String etag = HttpClient.newHttpClient()
+                    .send(HttpRequest.newBuilder(URI.create(base + "/images/avatars/" + THUMBNAIL)).build(), HttpResponse.BodyHandlers.discarding())
+                    .headers().firstValue("ETag").orElseThrow();
+
+            report("thumbnail  legacy ", run(base + "/legacy/avatars/" + THUMBNAIL, null));
+            report("thumbnail  images ", run(base + "/images/avatars/" + THUMBNAIL, null));
+            report("photo 1MB  legacy ", run(base + "/legacy/avatars/photo.jpg", null));
+            report("photo 1MB  images ", run(base + "/images/avatars/photo.jpg", null));
+            report("revalidate images ", run(base + "/images/avatars/" + THUMBNAIL, etag));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void report(final String label, final long requests) {
+        System.out.printf("image serving: %s -> %,d req/s%n", label, requests * 1000 / DURATION_MILLIS);
+        assertThat(requests).isPositive();
+    }
+
+    private static long run(final String url, final String ifNoneMatch) throws InterruptedException {
+        final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url));
+        if (ifNoneMatch != null) builder.header("If-None-Match", ifNoneMatch);
+        final HttpRequest request = builder.build();
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder completed = new LongAdder();
+        final List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            final Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        final int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status == 200 || status == 304) completed.increment();
+                    } catch (Exception e) {
+                        return;
+                    }
+                }
+            });
+            thread.start();
+            clients.add(thread);
+        }
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+        for (final Thread thread : clients) {
+            thread.join();
+        }
+        return completed.sum();
+    }
+
+    // The previous ResourcesConfig under /legacy, next to the new controller under /images
+    @Configuration
+    @EnableWebMvc
+    static class Handlers implements WebMvcConfigurer {
+
+        @Override
+        public void addResourceHandlers(final ResourceHandlerRegistry registry) {
+            registry.addResourceHandler("/legacy/**").addResourceLocations(root.toUri().toString());
+        }
+
+        @Bean
+        ImageController imageController() {
+            return new ImageController(new ImageService(new SimpleMeterRegistry(), root.toString(),
+                    DataSize.ofMegabytes(32), DataSize.ofKilobytes(64), Duration.ofMinutes(10), DataSize.ofKilobytes(48)));
+        }
+    }
+}
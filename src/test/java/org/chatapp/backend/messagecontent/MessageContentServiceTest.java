@@ -0,0 +1,140 @@
+package org.chatapp.backend.messagecontent;
+
+import org.chatapp.backend.utils.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Keyset history: paging in either direction visits every message once, in (dateSent, id) order,
+ * including messages that share a timestamp, and the cursors say where the room ends.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080"
+})
+@Import({MessageContentService.class, MessageContentMapper.class, FileUtils.class})
+class MessageContentServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private MessageContentService messageContentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final UUID roomId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES ('alice', 'x', 'OFFLINE', ?, TRUE)", T0);
+        jdbcTemplate.update("INSERT INTO message_room (id, is_group, created_by, message_count) VALUES (?, FALSE, 'alice', 0)", roomId);
+        // Three timestamps shared by several messages, so page boundaries fall inside a tie
+        for (int i = 0; i < 8; i++) {
+            message(T0.plusMinutes(i / 3));
+        }
+    }
+
+    @Test
+    void pagingBackFromTheLatestVisitsEveryMessageOnce() {
+        MessageContentPageDTO page = messageContentService.getMessageHistory(roomId, null, null, 3);
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(page.getAfter()).isEqualTo(MessageCursor.of(last(page)).encode());
+
+        final List<UUID> seen = new ArrayList<>(ids(page));
+        while (page.isHasMore()) {
+            page = messageContentService.getMessageHistory(roomId, page.getBefore(), null, 3);
+            seen.addAll(0, ids(page));
+        }
+
+        assertThat(seen).containsExactlyElementsOf(storedOrder());
+        // The start of the room
+        assertThat(page.getBefore()).isNull();
+    }
+
+    @Test
+    void pagingForwardFromTheOldestVisitsEveryMessageOnce() {
+        final List<UUID> stored = storedOrder();
+        MessageContentPageDTO page = messageContentService.getMessageHistory(roomId, null, null, stored.size());
+        final String oldest = MessageCursor.of(page.getItems().get(0)).encode();
+
+        page = messageContentService.getMessageHistory(roomId, null, oldest, 3);
+        final List<UUID> seen = new ArrayList<>(List.of(stored.get(0)));
+        seen.addAll(ids(page));
+        while (page.isHasMore()) {
+            // Pages after a cursor always have older messages behind them
+            assertThat(page.getBefore()).isEqualTo(MessageCursor.of(page.getItems().get(0)).encode());
+            page = messageContentService.getMessageHistory(roomId, null, page.getAfter(), 3);
+            seen.addAll(ids(page));
+        }
+
+        assertThat(seen).containsExactlyElementsOf(stored);
+    }
+
+    @Test
+    void pollingAfterTheNewestReturnsAnEmptyPageUntilSomethingArrives() {
+        final MessageContentPageDTO latest = messageContentService.getMessageHistory(roomId, null, null, 3);
+
+        final MessageContentPageDTO empty = messageContentService.getMessageHistory(roomId, null, latest.getAfter(), 3);
+        assertThat(empty.getItems()).isEmpty();
+        assertThat(empty.isHasMore()).isFalse();
+        // The same cursor is handed back, so the client keeps polling from it
+        assertThat(empty.getAfter()).isEqualTo(latest.getAfter());
+
+        // Same timestamp as the newest message: only the (highest possible) id orders it after the cursor
+        final UUID arrived = new UUID(-1L, -1L);
+        message(arrived, last(latest).getDateSent());
+        final MessageContentPageDTO next = messageContentService.getMessageHistory(roomId, null, latest.getAfter(), 3);
+        assertThat(ids(next)).containsExactly(arrived);
+        assertThat(next.isHasMore()).isFalse();
+    }
+
+    @Test
+    void cursorRoundTripsAndMalformedOnesAreRejected() {
+        final MessageCursor cursor = new MessageCursor(T0.plusNanos(123_000), UUID.randomUUID());
+        assertThat(MessageCursor.decode(cursor.encode())).isEqualTo(cursor);
+
+        for (final String malformed : List.of("not base64!", "bm8tc2VwYXJhdG9y", new MessageCursor(T0, UUID.randomUUID()).encode().substring(4))) {
+            assertThatThrownBy(() -> messageContentService.getMessageHistory(roomId, malformed, null, 3))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid cursor");
+        }
+        final String valid = cursor.encode();
+        assertThatThrownBy(() -> messageContentService.getMessageHistory(roomId, valid, valid, 3))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void message(final LocalDateTime dateSent) {
+        message(UUID.randomUUID(), dateSent);
+    }
+
+    private void message(final UUID id, final LocalDateTime dateSent) {
+        jdbcTemplate.update("INSERT INTO message_content (id, content, date_sent, message_type, message_room_id, username) VALUES (?, 'hi', ?, 'TEXT', ?, 'alice')",
+                id, dateSent, roomId);
+    }
+
+    // The database's own (dateSent, id) order, which the cursors must follow
+    private List<UUID> storedOrder() {
+        return jdbcTemplate.queryForList("SELECT id FROM message_content WHERE message_room_id = ? ORDER BY date_sent, id", UUID.class, roomId);
+    }
+
+    private static List<UUID> ids(final MessageContentPageDTO page) {
+        return page.getItems().stream().map(MessageContentDTO::getId).toList();
+    }
+
+    private static MessageContentDTO last(final MessageContentPageDTO page) {
+        return page.getItems().get(page.getItems().size() - 1);
+    }
+}
@@ -0,0 +1,132 @@
+package org.chatapp.backend.messagecontent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.messageroom.MessageRoom;
+import org.chatapp.backend.messageroom.MessageRoomRepository;
+import org.chatapp.backend.messageroommember.MessageRoomMemberRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Write-behind persistence: everything queued before stop() is written, in per-room order, with
+ * the room summary and unread counters maintained as the synchronous path does; a row the
+ * database rejects is parked without holding back the rest of its batch.
+ * Runs without a test transaction so the writer threads see the seeded rows.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080"
+})
+@Import(MessageContentBatchWriter.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessagePersistencePipelineTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private MessageContentBatchWriter batchWriter;
+
+    @Autowired
+    private MessageRoomRepository messageRoomRepository;
+
+    @Autowired
+    private MessageRoomMemberRepository messageRoomMemberRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private UUID roomId;
+
+    @BeforeEach
+    void setUp() {
+        // Seeded with plain SQL: entity saves would cascade into already-persisted users
+        roomId = UUID.randomUUID();
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, TRUE)",
+                    username, T0);
+        }
+        jdbcTemplate.update("INSERT INTO message_room (id, is_group, created_by, message_count) VALUES (?, FALSE, 'alice', 0)", roomId);
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO message_room_member (message_room_id, username, is_admin, last_seen, unread_count) VALUES (?, ?, FALSE, ?, 0)",
+                    roomId, username, T0);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM message_dead_letter");
+        jdbcTemplate.update("DELETE FROM message_room_member");
+        jdbcTemplate.update("UPDATE message_room SET last_message_id = NULL");
+        jdbcTemplate.update("DELETE FROM message_content");
+        jdbcTemplate.update("DELETE FROM message_room");
+        jdbcTemplate.update("DELETE FROM app_user");
+    }
+
+    @Test
+    void stopDrainsEveryQueuedMessage() {
+        // Small queue and batch so senders hit backpressure and writers flush several batches
+        final MessagePersistencePipeline pipeline = new MessagePersistencePipeline(batchWriter, new SimpleMeterRegistry(),
+                2, 4, 3, Duration.ofMillis(20), Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofMillis(200));
+        pipeline.start();
+
+        final List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            final MessageContentDTO message = message(roomId, i % 5 == 0 ? "bob" : "alice", i);
+            pipeline.enqueue(message);
+            ids.add(message.getId());
+        }
+        pipeline.stop();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_content", Long.class)).isEqualTo(25L);
+        final MessageRoom summarized = messageRoomRepository.findById(roomId).orElseThrow();
+        assertThat(summarized.getMessageCount()).isEqualTo(25L);
+        assertThat(summarized.getLastMessageId()).isEqualTo(ids.get(24));
+        assertThat(summarized.getLastActivityAt()).isEqualTo(T0.plusSeconds(25));
+        assertThat(messageRoomMemberRepository.findUnreadCount(roomId, "bob")).contains(20L);
+        assertThat(messageRoomMemberRepository.findUnreadCount(roomId, "alice")).contains(5L);
+    }
+
+    @Test
+    void rejectedMessageIsParkedAndTheRestOfItsBatchIsStored() {
+        // One shard and a batch big enough for all three, so the bad row lands in the middle of a batch
+        final MessagePersistencePipeline pipeline = new MessagePersistencePipeline(batchWriter, new SimpleMeterRegistry(),
+                1, 10, 10, Duration.ofMillis(200), Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofMillis(200));
+        pipeline.start();
+
+        final MessageContentDTO orphan = message(UUID.randomUUID(), "alice", 1);
+        pipeline.enqueue(message(roomId, "alice", 0));
+        pipeline.enqueue(orphan);
+        pipeline.enqueue(message(roomId, "bob", 2));
+        pipeline.stop();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_content", Long.class)).isEqualTo(2L);
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM message_dead_letter", UUID.class)).containsExactly(orphan.getId());
+        assertThat(messageRoomRepository.findById(roomId).orElseThrow().getMessageCount()).isEqualTo(2L);
+    }
+
+    private static MessageContentDTO message(final UUID roomId, final String sender, final int i) {
+        final MessageContentDTO message = new MessageContentDTO();
+        message.setId(UUID.randomUUID());
+        message.setContent("m" + i);
+        message.setDateSent(T0.plusSeconds(i + 1));
+        message.setMessageType(MessageType.TEXT);
+        message.setMessageRoomId(roomId);
+        message.setSender(sender);
+        return message;
+    }
+}
@@ -0,0 +1,183 @@
+package org.chatapp.backend.messagecontent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import org.chatapp.backend.cluster.ClusterConfig;
+import org.chatapp.backend.cluster.ClusterMembership;
+import org.chatapp.backend.cluster.InJvmClusterBus;
+import org.chatapp.backend.cluster.RoomAffinityExecutor;
+import org.chatapp.backend.delivery.MessageFanout;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Two nodes on one in-JVM bus: a send for a room owned by the other node returns only once the
+ * owner has handled it, the owner's rejection reaches the sender, and an unreachable owner makes
+ * the receiving node handle the send itself.
+ * Runs without a test transaction so the room workers see the seeded rows.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080",
+        "app.cluster.node-id=here",
+        "app.cluster.in-jvm.group=send-test"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({MessageSendService.class, MessageContentService.class, MessageContentMapper.class, MessageFanout.class,
+        RoomRosterCache.class, ClusterConfig.class, SimpleMeterRegistry.class, FileUtils.class, MessageSendServiceTest.CapturedFrames.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageSendServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private MessageSendService messageSendService;
+
+    @Autowired
+    private MessageContentService messageContentService;
+
+    @Autowired
+    private RoomRosterCache roomRosterCache;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private List<Message<?>> frames;
+
+    private final List<Message<?>> ownerFrames = new CopyOnWriteArrayList<>();
+    private InJvmClusterBus ownerBus;
+    private ClusterMembership ownerMembership;
+    private RoomAffinityExecutor ownerExecutor;
+    private UUID roomId;
+
+    @BeforeEach
+    void setUp() {
+        // The owner node: same database, its own bus, membership, room workers and broker
+        ownerBus = new InJvmClusterBus("owner", "send-test");
+        ownerMembership = new ClusterMembership(ownerBus, Duration.ofSeconds(1), 3, 16);
+        ownerExecutor = new RoomAffinityExecutor("owner-send", 2, 100);
+        final MessageSendService owner = new MessageSendService(messageContentService, roomRosterCache,
+                new MessageFanout(new SimpMessagingTemplate((message, timeout) -> ownerFrames.add(message)), ownerBus, new SimpleMeterRegistry()),
+                Optional.empty(), ownerBus, ownerMembership, ownerExecutor, objectMapper);
+        ReflectionTestUtils.setField(owner, "forwardTimeout", Duration.ofSeconds(5));
+        owner.subscribeForwardedSends();
+        ownerMembership.start();
+        clusterMembership.tick();
+
+        do {
+            roomId = UUID.randomUUID();
+        } while (!clusterMembership.ownerOf(roomId).equals("owner"));
+
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, TRUE)",
+                    username, T0);
+        }
+        jdbcTemplate.update("INSERT INTO message_room (id, is_group, created_by, message_count) VALUES (?, FALSE, 'alice', 0)", roomId);
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO message_room_member (message_room_id, username, is_admin, last_seen, unread_count) VALUES (?, ?, FALSE, ?, 0)",
+                    roomId, username, T0);
+        }
+        frames.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ownerMembership.stop();
+        ownerBus.close();
+        ownerExecutor.shutdown(Duration.ofSeconds(5));
+        jdbcTemplate.update("DELETE FROM message_room_member");
+        jdbcTemplate.update("UPDATE message_room SET last_message_id = NULL");
+        jdbcTemplate.update("DELETE FROM message_content");
+        jdbcTemplate.update("DELETE FROM message_room");
+        jdbcTemplate.update("DELETE FROM app_user");
+    }
+
+    @Test
+    void forwardedSendReturnsOnceTheOwnerHandledIt() {
+        messageSendService.send(message("alice", "hello"));
+
+        // Delivered by the owner's broker before send() returned
+        assertThat(ownerFrames).hasSize(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_content WHERE message_room_id = ?", Long.class, roomId))
+                .isEqualTo(1L);
+    }
+
+    @Test
+    void ownerRejectionReachesTheSender() {
+        assertThatThrownBy(() -> messageSendService.send(message("mallory", "let me in")))
+                .isInstanceOf(EntityNotFoundException.class);
+        assertThat(ownerFrames).isEmpty();
+    }
+
+    @Test
+    void unreachableOwnerMakesThisNodeHandleTheSend() {
+        ownerBus.close();
+
+        messageSendService.send(message("alice", "still here"));
+
+        assertThat(ownerFrames).isEmpty();
+        assertThat(frames).hasSize(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_content WHERE message_room_id = ?", Long.class, roomId))
+                .isEqualTo(1L);
+    }
+
+    private MessageContentDTO message(final String sender, final String content) {
+        final MessageContentDTO message = new MessageContentDTO();
+        message.setMessageRoomId(roomId);
+        message.setSender(sender);
+        message.setContent(content);
+        message.setMessageType(MessageType.TEXT);
+        return message;
+    }
+
+    // Frames sent to users' queues on this node, in place of the STOMP broker
+    @TestConfiguration
+    static class CapturedFrames {
+
+        private final List<Message<?>> frames = new CopyOnWriteArrayList<>();
+
+        @Bean
+        List<Message<?>> frames() {
+            return frames;
+        }
+
+        @Bean
+        SimpMessagingTemplate simpMessagingTemplate() {
+            return new SimpMessagingTemplate((message, timeout) -> frames.add(message));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.chatapp.backend.messageroom;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityNotFoundException;
+import org.chatapp.backend.messagecontent.MessageContent;
+import org.chatapp.backend.messagecontent.MessageType;
+import org.chatapp.backend.messageroommember.MessageRoomMember;
+import org.chatapp.backend.messageroommember.MessageRoomMemberMapper;
+import org.chatapp.backend.messageroommember.MessageRoomMemberRepository;
+import org.chatapp.backend.messageroommember.MessageRoomMemberService;
+import org.chatapp.backend.messageroommember.ContactsCache;
+import org.chatapp.backend.messageroommember.RoomRoster;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.user.User;
+import org.chatapp.backend.user.UserStatus;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Guards the inbox read path against N+1 regressions: the number of statements issued by
+ * {@link MessageRoomService#findMessageRoomAtLeastOneContent} must not depend on the number of rooms.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "backend.url=http://localhost:8080"
+})
+@Import({MessageRoomService.class, MessageRoomMapper.class, MessageRoomMemberService.class, MessageRoomMemberMapper.class,
+        RoomRosterCache.class, ContactsCache.class, SimpleMeterRegistry.class})
+class MessageRoomInboxQueryCountTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MessageRoomService messageRoomService;
+
+    @Autowired
+    private MessageRoomRepository messageRoomRepository;
+
+    @Autowired
+    private MessageRoomMemberRepository messageRoomMemberRepository;
+
+    @Autowired
+    private RoomRosterCache roomRosterCache;
+
+    @BeforeEach
+    void setUp() {
+        user("alice", "alice.png");
+    }
+
+    @Test
+    void inboxStatementCountDoesNotGrowWithRooms() {
+        seedRooms(3, 0);
+        final long few = countStatements(() -> messageRoomService.findMessageRoomAtLeastOneContent("alice", null, null, null));
+
+        seedRooms(12, 3);
+        final long many = countStatements(() -> assertThat(messageRoomService.findMessageRoomAtLeastOneContent("alice", null, null, null)).hasSize(15));
+
+        assertThat(few).isLessThanOrEqualTo(2);
+        assertThat(many).isEqualTo(few);
+    }
+
+    @Test
+    void inboxCarriesLastMessageUnseenCountAndAvatars() {
+        final User alice = em.find(User.class, "alice");
+        final User bob = user("bob", "bob.png");
+        final MessageRoom direct = room(false, alice);
+        member(direct, alice, T0.plusMinutes(1));
+        member(direct, bob, T0);
+        message(direct, alice, "hi", T0);
+        message(direct, bob, "seen", T0.plusSeconds(30));
+        message(direct, bob, "unseen 1", T0.plusMinutes(2));
+        message(direct, bob, "unseen 2", T0.plusMinutes(3));
+
+        final MessageRoom quiet = room(true, alice);
+        member(quiet, alice, T0);
+        message(quiet, alice, "old", T0.minusDays(1));
+
+        final MessageRoom empty = room(true, alice);
+        member(empty, alice, T0);
+        summarize();
+
+        final List<MessageRoomDTO> inbox = messageRoomService.findMessageRoomAtLeastOneContent("alice", null, null, null);
+
+        assertThat(inbox).extracting(MessageRoomDTO::getId).containsExactly(direct.getId(), quiet.getId());
+        final MessageRoomDTO first = inbox.get(0);
+        assertThat(first.getUnseenCount()).isEqualTo(2L);
+        assertThat(first.getLastMessage().getContent()).isEqualTo("unseen 2");
+        assertThat(first.getLastMessage().getSender()).isEqualTo("bob");
+        assertThat(first.getLastMessage().getMessageType()).isEqualTo(MessageType.TEXT);
+        assertThat(first.getLastMessage().getAvatarUrl()).endsWith("bob.png");
+        assertThat(first.getAvatarUrl()).endsWith("bob.png");
+        assertThat(first.getMembers()).hasSize(2);
+        assertThat(first.getCreatedById()).isEqualTo("alice");
+        assertThat(inbox.get(1).getUnseenCount()).isZero();
+    }
+
+    @Test
+    void inboxPagesByLastActivity() {
+        seedRooms(5, 0);
+        summarize();
+
+        final List<MessageRoomDTO> firstPage = messageRoomService.findMessageRoomAtLeastOneContent("alice", null, null, 2);
+        assertThat(firstPage).extracting(room -> room.getLastMessage().getContent()).containsExactly("reply 4", "reply 3");
+
+        final LocalDateTime before = firstPage.get(1).getLastMessage().getDateSent();
+        final List<MessageRoomDTO> secondPage = messageRoomService.findMessageRoomAtLeastOneContent("alice", before, firstPage.get(1).getId(), 2);
+        assertThat(secondPage).extracting(room -> room.getLastMessage().getContent()).containsExactly("reply 2", "reply 1");
+    }
+
+    @Test
+    void inboxPagingKeepsRoomsSharingTheBoundaryTimestamp() {
+        final User alice = em.find(User.class, "alice");
+        for (int i = 0; i < 3; i++) {
+            final MessageRoom room = room(true, alice);
+            member(room, alice, T0);
+            message(room, alice, "same " + i, T0);
+        }
+        summarize();
+
+        final List<MessageRoomDTO> firstPage = messageRoomService.findMessageRoomAtLeastOneContent("alice", null, null, 2);
+        final MessageRoomDTO last = firstPage.get(1);
+        final List<MessageRoomDTO> secondPage = messageRoomService.findMessageRoomAtLeastOneContent(
+                "alice", last.getLastMessage().getDateSent(), last.getId(), 2);
+
+        assertThat(secondPage).hasSize(1);
+        assertThat(firstPage).extracting(MessageRoomDTO::getId).doesNotContain(secondPage.get(0).getId());
+    }
+
+    @Test
+    void invalidatingAUserDropsOnlyTheRostersTheyAppearIn() {
+        final User alice = em.find(User.class, "alice");
+        final User bob = user("bob", "bob.png");
+        final MessageRoom withBob = room(false, alice);
+        member(withBob, alice, T0);
+        member(withBob, bob, T0);
+        final MessageRoom withoutBob = room(true, alice);
+        member(withoutBob, alice, T0);
+        summarize();
+
+        final RoomRoster cachedWithBob = roomRosterCache.get(withBob.getId());
+        final RoomRoster cachedWithoutBob = roomRosterCache.get(withoutBob.getId());
+        roomRosterCache.invalidateUser("bob");
+
+        assertThat(roomRosterCache.get(withBob.getId())).isNotSameAs(cachedWithBob);
+        assertThat(roomRosterCache.get(withoutBob.getId())).isSameAs(cachedWithoutBob);
+    }
+
+    @Test
+    void directRoomIsCreatedOnceAndFoundByMemberKey() {
+        user("bob", "bob.png");
+
+        final MessageRoomDTO created = messageRoomService.create(List.of("alice", "bob"), "alice");
+        final MessageRoomDTO again = messageRoomService.create(List.of("bob", "alice"), "bob");
+        assertThat(again.getId()).isEqualTo(created.getId());
+        assertThat(created.getIsGroup()).isFalse();
+
+        em.clear();
+        assertThat(messageRoomRepository.findById(created.getId())).get()
+                .extracting(MessageRoom::getMemberKey).isNotNull();
+        assertThat(messageRoomService.findMessageRoomByMembers(List.of("bob", "alice")).getId()).isEqualTo(created.getId());
+    }
+
+    @Test
+    void createRejectsUnknownMembersInsteadOfKeyingTheRoomByThem() {
+        final long rooms = messageRoomRepository.count();
+
+        assertThatThrownBy(() -> messageRoomService.create(List.of("alice", "typo"), "alice"))
+                .isInstanceOf(EntityNotFoundException.class)
+                .hasMessageContaining("typo");
+        assertThat(messageRoomRepository.count()).isEqualTo(rooms);
+
+        // Once the user exists, the direct room is created with the real pair's key
+        user("typo", null);
+        final MessageRoomDTO created = messageRoomService.create(List.of("alice", "typo"), "alice");
+        assertThat(created.getIsGroup()).isFalse();
+        assertThat(created.getMembers()).hasSize(2);
+    }
+
+    private long countStatements(final Runnable action) {
+        summarize();
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    // Rooms are seeded directly, so derive summaries and unread counters the way the startup backfills do
+    private void summarize() {
+        em.flush();
+        messageRoomRepository.backfillActivitySummary();
+        messageRoomMemberRepository.backfillUnreadCounts();
+        em.clear();
+    }
+
+    private void seedRooms(final int count, final int offset) {
+        final User alice = em.find(User.class, "alice");
+        for (int i = 0; i < count; i++) {
+            final User other = user("user" + (offset + i), (offset + i) % 2 == 0 ? null : "avatar" + i + ".png");
+            final MessageRoom room = room(false, alice);
+            member(room, alice, T0);
+            member(room, other, T0);
+            message(room, other, "hello " + i, T0.plusMinutes(offset + i));
+            message(room, alice, "reply " + i, T0.plusMinutes(offset + i).plusSeconds(1));
+        }
+    }
+
+    private User user(final String username, final String avatar) {
+        return em.persist(User.builder()
+                .username(username)
+                .password("x")
+                .status(UserStatus.OFFLINE)
+                .lastLogin(T0)
+                .avatarUrl(avatar)
+                .verified(true)
+                .build());
+    }
+
+    private MessageRoom room(final boolean isGroup, final User createdBy) {
+        return em.persist(MessageRoom.builder()
+                .isGroup(isGroup)
+                .createdBy(createdBy)
+                .members(new ArrayList<>())
+                .build());
+    }
+
+    private void member(final MessageRoom room, final User user, final LocalDateTime lastSeen) {
+        em.persist(MessageRoomMember.builder()
+                .messageRoom(room)
+                .user(user)
+                .isAdmin(false)
+                .lastSeen(lastSeen)
+                .build());
+    }
+
+    private void message(final MessageRoom room, final User sender, final String content, final LocalDateTime dateSent) {
+        final MessageContent message = em.persist(MessageContent.builder()
+                .content(content)
+                .messageType(MessageType.TEXT)
+                .messageRoom(room)
+                .user(sender)
+                .build());
+        // @CreatedDate stamps "now" on persist; pin the timestamp the scenario needs
+        em.flush();
+        em.getEntityManager()
+                .createQuery("UPDATE MessageContent m SET m.dateSent = :dateSent WHERE m.id = :id")
+                .setParameter("dateSent", dateSent)
+                .setParameter("id", message.getId())
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,140 @@
+package org.chatapp.backend.messageroommember;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Marking a room read must not lose unread increments for messages sent after the read instant,
+ * whether they were counted before the mark or while it was running.
+ * Runs without a test transaction so the sender thread commits on its own.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080"
+})
+@Import({MessageRoomMemberService.class, MessageRoomMemberMapper.class, RoomRosterCache.class, ContactsCache.class,
+        SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageRoomMemberServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private MessageRoomMemberService messageRoomMemberService;
+
+    @Autowired
+    private MessageRoomMemberRepository messageRoomMemberRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final UUID roomId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, TRUE)",
+                    username, T0);
+        }
+        jdbcTemplate.update("INSERT INTO message_room (id, is_group, created_by, message_count) VALUES (?, FALSE, 'alice', 0)", roomId);
+        for (final String username : List.of("alice", "bob")) {
+            jdbcTemplate.update("INSERT INTO message_room_member (message_room_id, username, is_admin, last_seen, unread_count) VALUES (?, ?, FALSE, ?, 0)",
+                    roomId, username, T0);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM message_room_member");
+        jdbcTemplate.update("DELETE FROM message_content");
+        jdbcTemplate.update("DELETE FROM message_room");
+        jdbcTemplate.update("DELETE FROM app_user");
+    }
+
+    @Test
+    void markingReadClearsOlderMessagesAndKeepsLaterOnes() {
+        send("read now", T0.plusMinutes(1));
+        send("sent after the read", LocalDateTime.now().plusHours(1));
+
+        final MessageRoomMemberDTO member = messageRoomMemberService.updateLastSeen(roomId, "alice");
+
+        assertThat(member.getLastSeen()).isAfter(T0);
+        assertThat(unread("alice")).isEqualTo(1L);
+    }
+
+    @Test
+    void sendCommittingDuringMarkAsReadIsNotLost() throws Exception {
+        final CountDownLatch counted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // The send holds alice's row lock from its increment until it commits
+        final Thread sender = new Thread(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            send("sent after the read", LocalDateTime.now().plusHours(1));
+            counted.countDown();
+            await(release);
+        }));
+        sender.start();
+        assertThat(counted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        final CompletableFuture<MessageRoomMemberDTO> read = CompletableFuture.supplyAsync(
+                () -> messageRoomMemberService.updateLastSeen(roomId, "alice"));
+        Thread.sleep(300);
+        assertThat(read).isNotDone();
+        release.countDown();
+        sender.join();
+
+        assertThat(read.get(5, TimeUnit.SECONDS).getLastSeen()).isAfter(T0);
+        assertThat(unread("alice")).isEqualTo(1L);
+    }
+
+    @Test
+    void olderMarkDoesNotMoveLastSeenBack() {
+        final LocalDateTime later = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.SECONDS);
+        jdbcTemplate.update("UPDATE message_room_member SET last_seen = ? WHERE username = 'alice'", later);
+
+        assertThat(messageRoomMemberService.updateLastSeen(roomId, "alice").getLastSeen()).isEqualTo(later);
+    }
+
+    // The synchronous send path: insert, then count it for everyone but the sender
+    private void send(final String content, final LocalDateTime dateSent) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO message_content (id, content, date_sent, message_type, message_room_id, username) VALUES (?, ?, ?, 'TEXT', ?, 'bob')",
+                    UUID.randomUUID(), content, dateSent, roomId);
+            messageRoomMemberRepository.incrementUnread(roomId, "bob", 1);
+        });
+    }
+
+    private long unread(final String username) {
+        return messageRoomMemberRepository.findUnreadCount(roomId, username).orElseThrow();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
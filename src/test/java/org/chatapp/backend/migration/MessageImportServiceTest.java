@@ -0,0 +1,102 @@
+package org.chatapp.backend.migration;
+
+import org.chatapp.backend.messagecontent.MessageContentBatchWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * NDJSON import end to end on H2: rooms before messages, lookups across batches (batch size 2,
+ * lookup caches that keep nothing, so merged rooms must not depend on them), unknown references
+ * skipped, and re-sending the same file imports nothing twice.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080",
+        "app.import.batch-size=2",
+        "app.import.lookup-cache-size=0"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({MessageImportService.class, MessageContentBatchWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageImportServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private static final UUID ROOM = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID DUPLICATE_ROOM = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @Autowired
+    private MessageImportService messageImportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (final String username : new String[]{"alice", "bob"}) {
+            jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, TRUE)",
+                    username, T0);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM message_room_member");
+        jdbcTemplate.update("UPDATE message_room SET last_message_id = NULL");
+        jdbcTemplate.update("DELETE FROM message_content");
+        jdbcTemplate.update("DELETE FROM message_room");
+        jdbcTemplate.update("DELETE FROM app_user");
+    }
+
+    @Test
+    void importsRoomsAndMessagesOnce() {
+        final String ndjson = String.join("\n",
+                "{\"type\":\"room\",\"id\":\"" + ROOM + "\",\"createdBy\":\"alice\",\"members\":[\"alice\",\"bob\"]}",
+                "{\"type\":\"room\",\"id\":\"" + DUPLICATE_ROOM + "\",\"createdBy\":\"bob\",\"members\":[\"bob\",\"alice\"]}",
+                message("00000000-0000-0000-0000-00000000000a", ROOM, "alice", "hi", T0),
+                message("00000000-0000-0000-0000-00000000000b", DUPLICATE_ROOM, "bob", "hello", T0.plusMinutes(1)),
+                message("00000000-0000-0000-0000-00000000000c", ROOM, "carol", "who?", T0.plusMinutes(2)),
+                message("00000000-0000-0000-0000-00000000000d", UUID.randomUUID(), "alice", "lost", T0.plusMinutes(3)));
+
+        final ImportProgress first = messageImportService.importStream(stream(ndjson));
+
+        assertThat(first.getStatus()).isEqualTo("COMPLETED");
+        assertThat(first.getLines()).isEqualTo(6);
+        assertThat(first.getRoomsImported()).isEqualTo(1);
+        assertThat(first.getMessagesImported()).isEqualTo(2);
+        assertThat(first.getSkipped()).isEqualTo(2);
+        // The second direct room with the same members was merged into the first
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_content WHERE message_room_id = ?", Long.class, ROOM)).isEqualTo(2L);
+        assertThat(jdbcTemplate.queryForObject("SELECT message_count FROM message_room WHERE id = ?", Long.class, ROOM)).isEqualTo(2L);
+
+        final ImportProgress again = messageImportService.importStream(stream(ndjson));
+        assertThat(again.getRoomsImported()).isZero();
+        assertThat(again.getMessagesImported()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_content", Long.class)).isEqualTo(2L);
+        assertThat(messageImportService.findById(first.getJobId()).getStatus()).isEqualTo("COMPLETED");
+    }
+
+    private static String message(final String id, final UUID roomId, final String sender, final String content, final LocalDateTime dateSent) {
+        return "{\"type\":\"message\",\"id\":\"" + id + "\",\"roomId\":\"" + roomId + "\",\"sender\":\"" + sender
+                + "\",\"content\":\"" + content + "\",\"dateSent\":\"" + dateSent + "\",\"messageType\":\"TEXT\"}";
+    }
+
+    private static ByteArrayInputStream stream(final String ndjson) {
+        return new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,156 @@
+package org.chatapp.backend.presence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.cluster.ClusterConfig;
+import org.chatapp.backend.cluster.ClusterMembership;
+import org.chatapp.backend.cluster.InJvmClusterBus;
+import org.chatapp.backend.user.UserStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A user stays ONLINE while any session is open (on any node), silent heart-beating sessions
+ * expire, and status changes reach app_user only on flush, coalesced to the latest state.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080",
+        "app.presence.min-session-timeout=PT0.05S",
+        "app.cluster.in-jvm.group=presence-test"
+})
+@Import({PresenceRegistry.class, ClusterConfig.class, SimpleMeterRegistry.class})
+class PresenceRegistryTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES ('alice', 'x', 'OFFLINE', ?, TRUE)", T0);
+    }
+
+    // The registry is a context singleton: close whatever a test left open
+    @AfterEach
+    void tearDown() {
+        presenceRegistry.stop();
+        presenceRegistry.drainDeltas();
+    }
+
+    @Test
+    void userIsOnlineUntilTheLastSessionCloses() {
+        presenceRegistry.bind("s1", "alice");
+        presenceRegistry.bind("s2", "alice");
+        assertThat(status()).isEqualTo("OFFLINE");
+
+        presenceRegistry.flush();
+        assertThat(status()).isEqualTo("ONLINE");
+
+        presenceRegistry.unbind("s1");
+        assertThat(presenceRegistry.isOnline("alice")).isTrue();
+        presenceRegistry.unbind("s2");
+        // Online and offline again before a flush: only the latest state is written
+        presenceRegistry.bind("s3", "alice");
+        presenceRegistry.unbind("s3");
+        presenceRegistry.flush();
+
+        assertThat(status()).isEqualTo("OFFLINE");
+        assertThat(jdbcTemplate.queryForObject("SELECT last_login FROM app_user WHERE username = 'alice'", LocalDateTime.class)).isAfter(T0);
+    }
+
+    @Test
+    void onlineIndexPagesInUsernameOrder() {
+        presenceRegistry.bind("s1", "carol");
+        presenceRegistry.bind("s2", "alice");
+        presenceRegistry.bind("s3", "bob");
+        presenceRegistry.bind("s4", "alice");
+        presenceRegistry.unbind("s1");
+
+        assertThat(presenceRegistry.onlineUsersAfter(null)).containsExactly("alice", "bob");
+        assertThat(presenceRegistry.onlineUsersAfter("alice")).containsExactly("bob");
+    }
+
+    @Test
+    void onlineIndexMatchesSessionsUnderConcurrentChurn() throws InterruptedException {
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final String session = "churn-" + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    presenceRegistry.bind(session, "alice");
+                    presenceRegistry.unbind(session);
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) thread.join();
+        assertThat(presenceRegistry.onlineUsers()).doesNotContain("alice");
+
+        presenceRegistry.bind("last", "alice");
+        assertThat(presenceRegistry.onlineUsers()).contains("alice");
+    }
+
+    @Test
+    void silentSessionsWithHeartbeatsExpire() throws InterruptedException {
+        presenceRegistry.recordHeartbeat("beating", 10);
+        presenceRegistry.bind("beating", "alice");
+        presenceRegistry.bind("quiet", "alice");
+
+        Thread.sleep(100);
+        presenceRegistry.sweep();
+        // Only the session that promised heart-beats is expired
+        assertThat(presenceRegistry.isOnline("alice")).isTrue();
+
+        presenceRegistry.unbind("quiet");
+        assertThat(presenceRegistry.isOnline("alice")).isFalse();
+    }
+
+    @Test
+    void userWithASessionOnAnotherNodeStaysOnline() {
+        final InJvmClusterBus peerBus = new InJvmClusterBus("peer", "presence-test");
+        final PresenceRegistry peer = new PresenceRegistry(jdbcTemplate, peerBus,
+                new ClusterMembership(peerBus, Duration.ofSeconds(1), 3, 16), new SimpleMeterRegistry(), Duration.ofSeconds(30));
+        try {
+            presenceRegistry.bind("here", "alice");
+            peer.bind("there", "alice");
+            presenceRegistry.publishPeerChanges();
+            peer.publishPeerChanges();
+            assertThat(presenceRegistry.drainDeltas()).containsEntry("alice", UserStatus.ONLINE);
+            peer.drainDeltas();
+
+            presenceRegistry.unbind("here");
+            // Still connected on the peer: no transition here, and the peer sees nothing change either
+            assertThat(presenceRegistry.isOnline("alice")).isTrue();
+            assertThat(presenceRegistry.drainDeltas()).isEmpty();
+
+            peer.unbind("there");
+            // Neither node has told the other yet; each reports OFFLINE once it hears the other is empty
+            assertThat(peer.drainDeltas()).isEmpty();
+            presenceRegistry.publishPeerChanges();
+            peer.publishPeerChanges();
+            assertThat(presenceRegistry.isOnline("alice")).isFalse();
+            assertThat(peer.isOnline("alice")).isFalse();
+            assertThat(peer.drainDeltas()).containsEntry("alice", UserStatus.OFFLINE);
+        } finally {
+            peerBus.close();
+        }
+    }
+
+    private String status() {
+        return jdbcTemplate.queryForObject("SELECT status FROM app_user WHERE username = 'alice'", String.class);
+    }
+}
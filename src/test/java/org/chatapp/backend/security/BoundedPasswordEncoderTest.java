@@ -0,0 +1,80 @@
+package org.chatapp.backend.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.exception.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedPasswordEncoderTest {
+
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void hashesOnThePool() {
+        executor.setCorePoolSize(1);
+        executor.initialize();
+        final PasswordEncoder encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), executor, Duration.ofSeconds(1), new SimpleMeterRegistry());
+
+        final String hash = encoder.encode("secret");
+
+        assertThat(encoder.matches("secret", hash)).isTrue();
+        assertThat(encoder.matches("wrong", hash)).isFalse();
+    }
+
+    @Test
+    void shedsWorkThatWaitedTooLongOrDoesNotFit() throws Exception {
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.initialize();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        // The only worker is busy until released
+        final PasswordEncoder slow = new PasswordEncoder() {
+            @Override
+            public String encode(final CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(final CharSequence rawPassword, final String encodedPassword) {
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+        final PasswordEncoder encoder = new BoundedPasswordEncoder(slow, executor, Duration.ofMillis(50), new SimpleMeterRegistry());
+        final CompletableFuture<String> busy = CompletableFuture.supplyAsync(() -> encoder.encode("a"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> encoder.matches("b", "b"));
+        Thread.sleep(100);
+
+        // Queue full: rejected straight away
+        assertThatThrownBy(() -> encoder.matches("c", "c")).isInstanceOf(TooManyRequestsException.class);
+
+        release.countDown();
+        assertThat(busy.get(5, TimeUnit.SECONDS)).isEqualTo("a");
+        // Queued past max-queue-time: skipped rather than hashed
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(TooManyRequestsException.class);
+    }
+}
@@ -0,0 +1,81 @@
+package org.chatapp.backend.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-path token validation: {@link JwtService#verify(String)} against the previous
+ * isTokenValid path (three parses, each rebuilding the parser and decoding the key).
+ * Not part of the test suite: after mvn test-compile, run main() or org.openjdk.jmh.Main on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET = "ZmFrZV9kZWFkYmVlZl9mYWtlX3NlY3JldF9kdW1teV9nZW5lcmF0ZWQ=";
+
+    private JwtService jwtService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtService, "accessExpirationMs", 900_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpirationMs", 1_209_600_000L);
+        jwtService.init();
+        token = jwtService.generateAccessToken("alice");
+    }
+
+    @Benchmark
+    public String verifyOnce() {
+        return jwtService.verify(token).subject();
+    }
+
+    @Benchmark
+    public boolean legacyIsTokenValid() {
+        final String username = legacyClaims(token).getSubject();
+        final String extracted = legacyClaims(token).getSubject();
+        return extracted != null && extracted.equals(username) && !legacyClaims(token).getExpiration().before(new Date());
+    }
+
+    // Replica of the pre-change JwtService.extractAllClaims
+    private static Claims legacyClaims(final String token) {
+        final Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtServiceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,176 @@
+package org.chatapp.backend.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.auth.AuthService;
+import org.chatapp.backend.auth.EmailService;
+import org.chatapp.backend.auth.InMemoryOneTimeCodeStore;
+import org.chatapp.backend.auth.OneTimeCodePurpose;
+import org.chatapp.backend.auth.OneTimeCodeStore;
+import org.chatapp.backend.cluster.ClusterConfig;
+import org.chatapp.backend.config.AsyncConfig;
+import org.chatapp.backend.delivery.MessageFanout;
+import org.chatapp.backend.email.EmailOutboxDispatcher;
+import org.chatapp.backend.email.ResendClient;
+import org.chatapp.backend.media.AvatarProcessor;
+import org.chatapp.backend.messageroommember.ContactsCache;
+import org.chatapp.backend.messageroommember.RoomRosterCache;
+import org.chatapp.backend.presence.PresenceBroadcaster;
+import org.chatapp.backend.presence.PresenceRegistry;
+import org.chatapp.backend.user.UserDTO;
+import org.chatapp.backend.user.UserMapper;
+import org.chatapp.backend.user.UserSearchIndex;
+import org.chatapp.backend.user.UserService;
+import org.chatapp.backend.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The principal cache serves repeat lookups without the database, publishes its hit/miss
+ * counters, and is dropped for a user by every operation that changes what it holds: email
+ * verification, password reset and account (re)creation. Each case first changes the row behind
+ * the cache's back, so a reload is the only way the new state can show.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "backend.url=http://localhost:8080",
+        "app.auth.codes.store=memory",
+        "app.cluster.node-id=principals",
+        "app.cluster.in-jvm.group=principal-cache-test"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({PrincipalCache.class, AuthService.class, UserService.class, UserMapper.class, JwtService.class,
+        TokenFamilyService.class, RevokedTokenFamilies.class, InMemoryOneTimeCodeStore.class, EmailService.class,
+        EmailOutboxDispatcher.class, ResendClient.class, UserSearchIndex.class, ContactsCache.class, RoomRosterCache.class,
+        PresenceRegistry.class, PresenceBroadcaster.class, MessageFanout.class, AvatarProcessor.class, AsyncConfig.class,
+        ClusterConfig.class, FileUtils.class, SimpleMeterRegistry.class, PrincipalCacheTest.Collaborators.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PrincipalCacheTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private OneTimeCodeStore oneTimeCodeStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM refresh_token_family");
+        jdbcTemplate.update("DELETE FROM app_user");
+    }
+
+    @Test
+    void repeatLookupsAreServedFromTheCacheAndCounted() {
+        user("alice", true);
+        // The cache and its counters are shared by the tests in this class
+        final double hits = gets("hit");
+        final double misses = gets("miss");
+
+        final PrincipalCache.CachedPrincipal first = principalCache.get("alice").orElseThrow();
+        // A change that skips invalidation is not seen, which is why the operations below must invalidate
+        jdbcTemplate.update("UPDATE app_user SET verified = FALSE WHERE username = 'alice'");
+
+        assertThat(principalCache.get("alice")).containsSame(first);
+        assertThat(first.verified()).isTrue();
+        assertThat(gets("hit")).isEqualTo(hits + 1);
+        assertThat(gets("miss")).isEqualTo(misses + 1);
+    }
+
+    @Test
+    void verifyingTheEmailReloadsThePrincipal() {
+        user("bob", false);
+        assertThat(principalCache.get("bob").orElseThrow().verified()).isFalse();
+        oneTimeCodeStore.issue(OneTimeCodePurpose.VERIFY_EMAIL, "bob", "123456", Duration.ofMinutes(10));
+
+        authService.verifyEmail("bob", "123456");
+
+        assertThat(principalCache.get("bob").orElseThrow().verified()).isTrue();
+    }
+
+    @Test
+    void resettingThePasswordReloadsThePrincipal() {
+        user("carol", true);
+        principalCache.get("carol").orElseThrow();
+        jdbcTemplate.update("UPDATE app_user SET verified = FALSE WHERE username = 'carol'");
+        oneTimeCodeStore.issue(OneTimeCodePurpose.PASSWORD_RESET, "carol", "54321", Duration.ofMinutes(10));
+
+        authService.resetPassword("carol", "54321", "new password");
+
+        assertThat(principalCache.get("carol").orElseThrow().verified()).isFalse();
+    }
+
+    @Test
+    void recreatingTheAccountReloadsThePrincipal() {
+        user("dave", true);
+        assertThat(principalCache.get("dave").orElseThrow().verified()).isTrue();
+        jdbcTemplate.update("DELETE FROM app_user WHERE username = 'dave'");
+
+        final UserDTO login = new UserDTO();
+        login.setUsername("dave");
+        login.setPassword("secret");
+        userService.login(login);
+
+        // The new account has not verified an email yet
+        assertThat(principalCache.get("dave").orElseThrow().verified()).isFalse();
+    }
+
+    private void user(final String username, final boolean verified) {
+        jdbcTemplate.update("INSERT INTO app_user (username, password, status, last_login, verified) VALUES (?, 'x', 'OFFLINE', ?, ?)",
+                username, T0, verified);
+    }
+
+    private double gets(final String result) {
+        final FunctionCounter counter = meterRegistry.find("cache.gets").tag("cache", "principals").tag("result", result).functionCounter();
+        assertThat(counter).isNotNull();
+        return counter.count();
+    }
+
+    @TestConfiguration
+    static class Collaborators {
+
+        // Cheap hashing; the real encoder runs BCrypt on the password-hash pool
+        @Bean
+        PasswordEncoder passwordEncoder() {
+            return new BCryptPasswordEncoder(4);
+        }
+
+        // Nobody is connected; presence frames go nowhere
+        @Bean
+        SimpMessagingTemplate simpMessagingTemplate() {
+            return new SimpMessagingTemplate((message, timeout) -> true);
+        }
+    }
+}
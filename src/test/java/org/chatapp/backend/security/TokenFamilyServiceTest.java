@@ -0,0 +1,114 @@
+package org.chatapp.backend.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chatapp.backend.cluster.ClusterEnvelope;
+import org.chatapp.backend.cluster.InJvmClusterBus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Rotation, reuse detection and logout on H2, and that revocations reach the in-memory set both
+ * directly and through the database sync.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import({TokenFamilyService.class, RevokedTokenFamilies.class, JwtService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TokenFamilyServiceTest {
+
+    @Autowired
+    private TokenFamilyService tokenFamilyService;
+
+    @Autowired
+    private RevokedTokenFamilies revokedTokenFamilies;
+
+    @Autowired
+    private RefreshTokenFamilyRepository refreshTokenFamilyRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Test
+    void rotationMovesTheFamilyForwardAndReuseRevokesIt() {
+        final TokenFamilyService.IssuedTokens first = tokenFamilyService.start("alice");
+        final VerifiedToken firstRefresh = jwtService.verify(first.refreshToken());
+        assertThat(jwtService.verify(first.accessToken()).family()).isEqualTo(firstRefresh.family());
+
+        final TokenFamilyService.IssuedTokens second = tokenFamilyService.rotate(firstRefresh);
+        final VerifiedToken secondRefresh = jwtService.verify(second.refreshToken());
+        assertThat(secondRefresh.family()).isEqualTo(firstRefresh.family());
+        assertThat(secondRefresh.tokenId()).isNotEqualTo(firstRefresh.tokenId());
+
+        // The first token again: a copy is in use elsewhere
+        assertThatThrownBy(() -> tokenFamilyService.rotate(firstRefresh)).isInstanceOf(BadCredentialsException.class);
+
+        assertThat(revokedTokenFamilies.isRevoked(firstRefresh.family())).isTrue();
+        // The revocation committed despite the exception
+        assertThat(refreshTokenFamilyRepository.findById(firstRefresh.family()).orElseThrow().getRevokeReason()).isEqualTo("reuse");
+        assertThatThrownBy(() -> tokenFamilyService.rotate(secondRefresh)).isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void logoutRevokesOneFamilyAndLogoutAllRevokesTheRest() {
+        final VerifiedToken phone = jwtService.verify(tokenFamilyService.start("bob").refreshToken());
+        final VerifiedToken laptop = jwtService.verify(tokenFamilyService.start("bob").refreshToken());
+        final VerifiedToken other = jwtService.verify(tokenFamilyService.start("carol").refreshToken());
+
+        tokenFamilyService.logout(phone);
+        assertThat(revokedTokenFamilies.isRevoked(phone.family())).isTrue();
+        assertThat(revokedTokenFamilies.isRevoked(laptop.family())).isFalse();
+        tokenFamilyService.rotate(laptop);
+
+        tokenFamilyService.logoutAll("bob");
+        assertThat(revokedTokenFamilies.isRevoked(laptop.family())).isTrue();
+        assertThat(revokedTokenFamilies.isRevoked(other.family())).isFalse();
+    }
+
+    @Test
+    void anotherNodeLearnsRevocationsFromTheDatabase() {
+        final VerifiedToken token = jwtService.verify(tokenFamilyService.start("dave").refreshToken());
+        tokenFamilyService.logout(token);
+
+        final RevokedTokenFamilies otherNode = new RevokedTokenFamilies(refreshTokenFamilyRepository, Optional.empty(), jwtService, Duration.ofMinutes(1));
+        assertThat(otherNode.isRevoked(token.family())).isFalse();
+        otherNode.sync();
+
+        assertThat(otherNode.isRevoked(token.family())).isTrue();
+        assertThat(otherNode.isRevoked(null)).isFalse();
+    }
+
+    @Test
+    void peersLearnRevocationsFromTheBus() throws Exception {
+        final InJvmClusterBus here = new InJvmClusterBus("here", "token-family-test");
+        final InJvmClusterBus there = new InJvmClusterBus("there", "token-family-test");
+        try {
+            final RevokedTokenFamilies local = new RevokedTokenFamilies(refreshTokenFamilyRepository, Optional.of(here), jwtService, Duration.ofMinutes(1));
+            final RevokedTokenFamilies peer = new RevokedTokenFamilies(refreshTokenFamilyRepository, Optional.of(there), jwtService, Duration.ofMinutes(1));
+            final UUID family = UUID.randomUUID();
+
+            local.revoked(List.of(family), LocalDateTime.now().plusMinutes(5));
+
+            assertThat(peer.isRevoked(family)).isTrue();
+            // The ids survive the wire encoding
+            final ClusterEnvelope frame = ClusterEnvelope.decode(ClusterEnvelope.tokenFamiliesRevoked("here", List.of(family)).encode());
+            assertThat(frame.tokenFamilies()).containsExactly(family);
+            assertThat(frame.usernames()).isEmpty();
+        } finally {
+            here.close();
+            there.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.chatapp.backend.user;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typeahead latency over a million synthetic usernames: short prefix, longer infix and a miss,
+ * with a few hundred boosted contacts.
+ * Not part of the test suite: after mvn test-compile, run main() or org.openjdk.jmh.Main on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class UsernameIndexBenchmark {
+
+    private static final List<String> SYLLABLES = List.of("al", "an", "be", "ca", "da", "el", "jo", "ka", "li", "ma",
+            "na", "ol", "ra", "sa", "th", "vi", "xe", "yo", "za", "mi");
+
+    @Param({"1000000"})
+    public int users;
+
+    private UsernameIndex index;
+    private Set<String> contacts;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        index = new UsernameIndex();
+        contacts = new HashSet<>();
+        for (int i = 0; i < users; i++) {
+            final StringBuilder name = new StringBuilder();
+            for (int s = 2 + random.nextInt(3); s > 0; s--) {
+                name.append(SYLLABLES.get(random.nextInt(SYLLABLES.size())));
+            }
+            name.append(random.nextInt(1000));
+            final String username = name.toString();
+            index.add(username);
+            if (i % 3000 == 0) contacts.add(username);
+        }
+    }
+
+    @Benchmark
+    public List<String> prefix() {
+        return index.search("ma", 20, contacts);
+    }
+
+    @Benchmark
+    public List<String> infix() {
+        return index.search("thvi", 20, contacts);
+    }
+
+    @Benchmark
+    public List<String> miss() {
+        return index.search("qqq", 20, contacts);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UsernameIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,52 @@
+package org.chatapp.backend.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ranking (exact, prefix, contains), contact boost within a tier, case-insensitivity and removal.
+ */
+class UsernameIndexTest {
+
+    @Test
+    void ranksExactThenPrefixThenContains() {
+        final UsernameIndex index = new UsernameIndex();
+        index.addAll(List.of("malice", "alice_w", "Alice", "bob", "alicent", "xalicex"));
+
+        assertThat(index.search("alice", 10, Set.of()))
+                .containsExactly("Alice", "alice_w", "alicent", "malice", "xalicex");
+        assertThat(index.search("ALI", 2, Set.of())).containsExactly("Alice", "alice_w");
+    }
+
+    @Test
+    void shortQueriesMatchPrefixOnly() {
+        final UsernameIndex index = new UsernameIndex();
+        index.addAll(List.of("bob", "abby", "bo"));
+
+        assertThat(index.search("bo", 10, Set.of())).containsExactly("bo", "bob");
+    }
+
+    @Test
+    void boostsContactsWithinEachTier() {
+        final UsernameIndex index = new UsernameIndex();
+        index.addAll(List.of("anna", "annabel", "annika", "joanna", "hannah"));
+
+        assertThat(index.search("ann", 10, Set.of("annika", "joanna")))
+                .containsExactly("annika", "anna", "annabel", "joanna", "hannah");
+    }
+
+    @Test
+    void removedNamesAreNotReturned() {
+        final UsernameIndex index = new UsernameIndex();
+        index.addAll(List.of("carol", "caroline", "mcarol"));
+        index.remove("caroline");
+        index.remove("mcarol");
+
+        assertThat(index.search("carol", 10, Set.of("mcarol"))).containsExactly("carol");
+        assertThat(index.size()).isEqualTo(1);
+    }
+}